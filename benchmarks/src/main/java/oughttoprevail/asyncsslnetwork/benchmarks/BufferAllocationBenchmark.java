@@ -0,0 +1,123 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import oughttoprevail.asyncsslnetwork.LoopbackPair;
+import oughttoprevail.asyncsslnetwork.SSLSocketBase;
+import oughttoprevail.asyncsslnetwork.SelfSignedContexts;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBufferAllocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link SSLBufferAllocation}s per cipher by encrypting then decrypting over a {@link LoopbackPair}.
+ * The payload is allocated like the engine side buffers and the input like the I/O side buffers,
+ * so each strategy is measured with the copies it would cause in a real connection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BufferAllocationBenchmark
+{
+	@Param({"HEAP", "DIRECT", "HEAP_ENGINE_DIRECT_IO"})
+	public SSLBufferAllocation allocation;
+	@Param({"AES_128_GCM", "AES_256_GCM", "CHACHA20_POLY1305"})
+	public String cipher;
+	@Param({"TLSv1.2", "TLSv1.3"})
+	public String protocol;
+	@Param({"1024", "16384"})
+	public int payloadSize;
+	/**
+	 * The provider, "default" for the JDK's or the name or class name of another provider to compare it with
+	 */
+	@Param({"default"})
+	public String provider;
+	
+	/**
+	 * The {@link SSLSocketBase} which encrypts
+	 */
+	private SSLSocketBase encryptor;
+	/**
+	 * The {@link SSLSocketBase} which decrypts
+	 */
+	private SSLSocketBase decryptor;
+	/**
+	 * The plaintext to encrypt
+	 */
+	private ByteBuffer payload;
+	/**
+	 * The ciphertext to decrypt
+	 */
+	private ByteBuffer input;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		LoopbackPair pair = new LoopbackPair(LoopbackPair.createEngineFactory(SelfSignedContexts.create("TLS", provider), protocol,
+																			  LoopbackPair.cipherSuite(protocol, cipher)), allocation);
+		pair.handshake();
+		encryptor = pair.getClient().getSSLSocketBase();
+		decryptor = pair.getServer().getSSLSocketBase();
+		byte[] bytes = new byte[payloadSize];
+		new Random(0).nextBytes(bytes);
+		payload = allocation.isApplicationDirect() ? ByteBuffer.allocateDirect(payloadSize) : ByteBuffer.allocate(payloadSize);
+		payload.put(bytes);
+		//enough for the ciphertext of the payload, every record adds less than 1KB
+		int inputSize = payloadSize + (payloadSize / 16384 + 1) * 1024;
+		input = allocation.isPacketDirect() ? ByteBuffer.allocateDirect(inputSize) : ByteBuffer.allocate(inputSize);
+	}
+	
+	@Benchmark
+	public long encryptThenDecrypt(ThroughputCounters counters)
+	{
+		payload.flip();
+		SSLBuffer encrypted = encryptor.encrypt(payload);
+		payload.limit(payload.capacity());
+		ByteBuffer encryptedByteBuffer = encrypted.getByteBuffer();
+		encryptedByteBuffer.flip();
+		input.clear();
+		input.put(encryptedByteBuffer);
+		input.flip();
+		encrypted.close();
+		long decryptedBytes = 0;
+		SSLBuffer decrypted;
+		while((decrypted = decryptor.decrypt(input)) != null)
+		{
+			decryptedBytes += decrypted.getByteBuffer().position();
+			decrypted.close();
+		}
+		counters.plaintextBytes += decryptedBytes;
+		return decryptedBytes;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import oughttoprevail.asyncsslnetwork.LoopbackPair;
+import oughttoprevail.asyncsslnetwork.SSLSocketBase;
+import oughttoprevail.asyncsslnetwork.SelfSignedContexts;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link SSLSocketBase#encrypt(ByteBuffer)} and {@link SSLSocketBase#decrypt(ByteBuffer)} over a {@link LoopbackPair}.
+ * Run with {@code -prof gc} to report the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptoBenchmark
+{
+	@Param({"64", "1024", "16384", "65536"})
+	public int payloadSize;
+	@Param({"AES_128_GCM", "AES_256_GCM", "CHACHA20_POLY1305"})
+	public String cipher;
+	@Param({"TLSv1.2", "TLSv1.3"})
+	public String protocol;
+	@Param({"heap", "direct"})
+	public String buffers;
+	/**
+	 * The provider, "default" for the JDK's or the name or class name of another provider to compare it with,
+	 * for example {@code -p provider=default,org.conscrypt.OpenSSLProvider} with the provider's jar on the class path
+	 */
+	@Param({"default"})
+	public String provider;
+	
+	/**
+	 * The {@link SSLSocketBase} which encrypts
+	 */
+	private SSLSocketBase encryptor;
+	/**
+	 * The {@link SSLSocketBase} which decrypts
+	 */
+	private SSLSocketBase decryptor;
+	/**
+	 * The plaintext to encrypt
+	 */
+	private ByteBuffer payload;
+	/**
+	 * The ciphertext to decrypt
+	 */
+	private ByteBuffer input;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		LoopbackPair pair = new LoopbackPair(SelfSignedContexts.create("TLS", provider), protocol, LoopbackPair.cipherSuite(protocol, cipher));
+		pair.handshake();
+		encryptor = pair.getClient().getSSLSocketBase();
+		decryptor = pair.getServer().getSSLSocketBase();
+		byte[] bytes = new byte[payloadSize];
+		new Random(0).nextBytes(bytes);
+		payload = allocate(payloadSize);
+		payload.put(bytes);
+		//enough for the ciphertext of the payload, every record adds less than 1KB
+		input = allocate(payloadSize + (payloadSize / 16384 + 1) * 1024);
+	}
+	
+	/**
+	 * Allocates a heap or direct {@link ByteBuffer} depending on {@link #buffers}.
+	 *
+	 * @param capacity of the {@link ByteBuffer}
+	 * @return the allocated {@link ByteBuffer}
+	 */
+	private ByteBuffer allocate(int capacity)
+	{
+		return "direct".equals(buffers) ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+	
+	@Benchmark
+	public int encrypt(ThroughputCounters counters)
+	{
+		payload.flip();
+		SSLBuffer encrypted = encryptor.encrypt(payload);
+		int encryptedBytes = encrypted.getByteBuffer().position();
+		encrypted.close();
+		payload.limit(payload.capacity());
+		counters.plaintextBytes += payloadSize;
+		return encryptedBytes;
+	}
+	
+	@Benchmark
+	public long encryptThenDecrypt(ThroughputCounters counters)
+	{
+		payload.flip();
+		SSLBuffer encrypted = encryptor.encrypt(payload);
+		payload.limit(payload.capacity());
+		ByteBuffer encryptedByteBuffer = encrypted.getByteBuffer();
+		encryptedByteBuffer.flip();
+		input.clear();
+		input.put(encryptedByteBuffer);
+		input.flip();
+		encrypted.close();
+		long decryptedBytes = 0;
+		SSLBuffer decrypted;
+		while((decrypted = decryptor.decrypt(input)) != null)
+		{
+			decryptedBytes += decrypted.getByteBuffer().position();
+			decrypted.close();
+		}
+		counters.plaintextBytes += decryptedBytes;
+		return decryptedBytes;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies at a microsecond resolution into fixed buckets so it can be recorded into by many threads without allocating,
+ * latencies above {@link #MAX_MICROS} are recorded as {@link #MAX_MICROS}.
+ */
+public class LatencyRecorder
+{
+	/**
+	 * The maximum latency (in microseconds) which can be recorded precisely
+	 */
+	public static final int MAX_MICROS = (int) TimeUnit.SECONDS.toMicros(10);
+	/**
+	 * The amount of recorded latencies of each microsecond
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(MAX_MICROS + 1);
+	
+	/**
+	 * Records the specified latency.
+	 *
+	 * @param nanos is the latency in nanoseconds
+	 */
+	public void record(long nanos)
+	{
+		buckets.incrementAndGet((int) Math.min(MAX_MICROS, TimeUnit.NANOSECONDS.toMicros(nanos)));
+	}
+	
+	/**
+	 * @return the amount of recorded latencies
+	 */
+	public long getCount()
+	{
+		long count = 0;
+		for(int i = 0; i < buckets.length(); i++)
+		{
+			count += buckets.get(i);
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the latency which the specified percentile of the recorded latencies are lower or equal to.
+	 *
+	 * @param percentile between 0 and 100
+	 * @return the latency in microseconds or {@code -1} if nothing was recorded
+	 */
+	public long getPercentile(double percentile)
+	{
+		long count = getCount();
+		if(count == 0)
+		{
+			return -1;
+		}
+		long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for(int i = 0; i < buckets.length(); i++)
+		{
+			seen += buckets.get(i);
+			if(seen >= target)
+			{
+				return i;
+			}
+		}
+		return MAX_MICROS;
+	}
+}
@@ -0,0 +1,332 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.benchmarks;
+
+import javax.net.ssl.SSLContext;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import oughttoprevail.asyncnetwork.client.ClientSocket;
+import oughttoprevail.asyncnetwork.server.ServerClientSocket;
+import oughttoprevail.asyncnetwork.util.writer.client.ClientWriter;
+import oughttoprevail.asyncnetwork.util.writer.server.ServerWriter;
+import oughttoprevail.asyncnetwork.util.writer.server.WindowsWriter;
+import oughttoprevail.asyncsslnetwork.SSLClientSocket;
+import oughttoprevail.asyncsslnetwork.SSLServerClientSocket;
+import oughttoprevail.asyncsslnetwork.SSLServerSocket;
+import oughttoprevail.asyncsslnetwork.SelfSignedContexts;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
+import oughttoprevail.asyncsslnetwork.rw.SSLReader;
+import oughttoprevail.asyncsslnetwork.rw.SSLWriter;
+
+/**
+ * A load generator which starts an echo {@link SSLServerSocket} and/or drives many concurrent {@link SSLClientSocket}s
+ * against it over localhost.
+ * Every second it reports handshakes per second, connections held and echoes per second, when finished it reports the
+ * echo round trip latency percentiles and the CPU time per handshake.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar oughttoprevail.asyncsslnetwork.benchmarks.LoadGenerator [key=value...]} with the keys:
+ * <ul>
+ * <li>role - server, client or both (default both), running the server and clients in separate processes measures the server CPU alone</li>
+ * <li>host - the host clients connect to (default localhost)</li>
+ * <li>port - the port of the server (default 6000)</li>
+ * <li>connections - the amount of concurrent clients (default 1000)</li>
+ * <li>duration - how long to run in seconds (default 30)</li>
+ * <li>payload - the size of an echo message in bytes (default 64)</li>
+ * <li>protocol - the protocol clients enable, for example TLSv1.2 (default the JDK's)</li>
+ * </ul>
+ */
+public class LoadGenerator
+{
+	/**
+	 * The parsed arguments
+	 */
+	private final Map<String, String> arguments;
+	/**
+	 * The amount of completed handshakes
+	 */
+	private final LongAdder handshakes = new LongAdder();
+	/**
+	 * The amount of connections which have completed a handshake and haven't disconnected
+	 */
+	private final AtomicInteger connectionsHeld = new AtomicInteger();
+	/**
+	 * The amount of completed echoes
+	 */
+	private final LongAdder echoes = new LongAdder();
+	/**
+	 * The echo round trip latencies
+	 */
+	private final LatencyRecorder echoLatencies = new LatencyRecorder();
+	/**
+	 * The handshake latencies, from connecting until the handshake has completed
+	 */
+	private final LatencyRecorder handshakeLatencies = new LatencyRecorder();
+	
+	public static void main(String[] args) throws Exception
+	{
+		Map<String, String> arguments = new HashMap<>();
+		for(String arg : args)
+		{
+			int separator = arg.indexOf('=');
+			if(separator == -1)
+			{
+				throw new IllegalArgumentException("Arguments should be key=value, found: '" + arg + "'!");
+			}
+			arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		new LoadGenerator(arguments).run();
+	}
+	
+	private LoadGenerator(Map<String, String> arguments)
+	{
+		this.arguments = arguments;
+	}
+	
+	/**
+	 * Runs the roles specified by the arguments and reports until the duration has passed.
+	 */
+	private void run() throws Exception
+	{
+		String role = argument("role", "both");
+		int port = Integer.parseInt(argument("port", "6000"));
+		int connections = Integer.parseInt(argument("connections", "1000"));
+		int duration = Integer.parseInt(argument("duration", "30"));
+		int payload = Integer.parseInt(argument("payload", "64"));
+		SSLContext sslContext = SelfSignedContexts.create("TLS");
+		long cpuStart = getProcessCpuTime();
+		EchoServer server = null;
+		if(!"client".equals(role))
+		{
+			server = new EchoServer(sslContext);
+			server.bind(new InetSocketAddress(port), 0);
+		}
+		if(!"server".equals(role))
+		{
+			InetSocketAddress address = new InetSocketAddress(argument("host", "localhost"), port);
+			for(int i = 0; i < connections; i++)
+			{
+				connect(sslContext, address, payload);
+			}
+		}
+		long previousHandshakes = 0;
+		long previousEchoes = 0;
+		for(int second = 1; second <= duration; second++)
+		{
+			Thread.sleep(1000);
+			long totalHandshakes = server == null ? handshakes.sum() : server.getMetrics().getFullHandshakes() + server.getMetrics().getResumedHandshakes();
+			long totalEchoes = echoes.sum();
+			System.out.printf("%4ds handshakes/s: %7d connections held: %7d echoes/s: %8d%n", second, totalHandshakes - previousHandshakes,
+					connectionsHeld.get(), totalEchoes - previousEchoes);
+			previousHandshakes = totalHandshakes;
+			previousEchoes = totalEchoes;
+		}
+		long cpuTime = getProcessCpuTime() - cpuStart;
+		System.out.println("Echo round trip (us) p50: " + echoLatencies.getPercentile(50) + " p99: " + echoLatencies.getPercentile(99) + " p999: " +
+						   echoLatencies.getPercentile(99.9));
+		System.out.println("Handshake (us) p50: " + handshakeLatencies.getPercentile(50) + " p99: " + handshakeLatencies.getPercentile(99) +
+						   " p999: " + handshakeLatencies.getPercentile(99.9));
+		if(server != null && cpuTime >= 0 && previousHandshakes > 0)
+		{
+			System.out.printf("CPU per handshake: %.3fms%s%n", cpuTime / 1e6 / previousHandshakes,
+					"both".equals(role) ? " (includes the clients, run role=server separately for the server alone)" : "");
+			server.close();
+		}
+		System.exit(0);
+	}
+	
+	/**
+	 * Connects a client which handshakes then echoes messages of the specified payload size one after the other.
+	 *
+	 * @param sslContext to create the client with
+	 * @param address to connect to
+	 * @param payload is the size of an echo message
+	 */
+	private void connect(SSLContext sslContext, InetSocketAddress address, int payload)
+	{
+		SSLWriter writer = new SSLWriter(new ClientWriter());
+		EchoClientReader reader = new EchoClientReader(writer, payload);
+		SSLClientSocket socket = new SSLClientSocket(ClientSocket.DEFAULT_BUFFER_SIZE, reader, writer, sslContext);
+		reader.socket = socket;
+		long connectTime = System.nanoTime();
+		socket.onConnect(() ->
+		{
+			String protocol = arguments.get("protocol");
+			if(protocol != null)
+			{
+				socket.getSSLEngine().setEnabledProtocols(new String[]{protocol});
+			}
+			socket.onHandshakeComplete(() ->
+			{
+				handshakeLatencies.record(System.nanoTime() - connectTime);
+				handshakes.increment();
+				connectionsHeld.incrementAndGet();
+				socket.onDisconnect(disconnectionType -> connectionsHeld.decrementAndGet());
+				reader.sendEcho();
+			});
+			socket.beginHandshake();
+		});
+		socket.onException(Throwable::printStackTrace);
+		socket.connect(address);
+	}
+	
+	/**
+	 * @param key of the argument
+	 * @param defaultValue to return if the argument wasn't specified
+	 * @return the value of the argument
+	 */
+	private String argument(String key, String defaultValue)
+	{
+		return arguments.getOrDefault(key, defaultValue);
+	}
+	
+	/**
+	 * @return the CPU time of this process in nanoseconds or {@code -1} if it is unavailable
+	 */
+	private static long getProcessCpuTime()
+	{
+		OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+		if(operatingSystem instanceof com.sun.management.OperatingSystemMXBean)
+		{
+			return ((com.sun.management.OperatingSystemMXBean) operatingSystem).getProcessCpuTime();
+		}
+		return -1;
+	}
+	
+	/**
+	 * A client reader which measures the round trip of each echo message then sends the next one.
+	 */
+	private class EchoClientReader extends SSLReader
+	{
+		/**
+		 * The writer of the socket of this reader
+		 */
+		private final SSLWriter writer;
+		/**
+		 * The size of an echo message
+		 */
+		private final int payload;
+		/**
+		 * The echo message
+		 */
+		private final ByteBuffer message;
+		/**
+		 * The socket of this reader
+		 */
+		private SSLClientSocket socket;
+		/**
+		 * The amount of bytes of the current echo which have been received
+		 */
+		private int received;
+		/**
+		 * The time the current echo was sent
+		 */
+		private long sendTime;
+		
+		private EchoClientReader(SSLWriter writer, int payload)
+		{
+			this.writer = writer;
+			this.payload = payload;
+			this.message = ByteBuffer.allocate(payload);
+		}
+		
+		/**
+		 * Sends the echo message.
+		 */
+		private void sendEcho()
+		{
+			received = 0;
+			sendTime = System.nanoTime();
+			message.clear();
+			writer.write(socket, message, null);
+		}
+		
+		@Override
+		protected void callRequests(SSLBuffer decryptedByteBuffer)
+		{
+			received += decryptedByteBuffer.getByteBuffer().position();
+			decryptedByteBuffer.close();
+			if(received >= payload)
+			{
+				echoLatencies.record(System.nanoTime() - sendTime);
+				echoes.increment();
+				sendEcho();
+			}
+		}
+	}
+	
+	/**
+	 * A server reader which writes back everything it decrypts.
+	 */
+	private static class EchoServerReader extends SSLReader
+	{
+		/**
+		 * The writer of the socket of this reader
+		 */
+		private final SSLWriter writer;
+		/**
+		 * The socket of this reader
+		 */
+		private SSLServerClientSocket socket;
+		
+		private EchoServerReader(SSLWriter writer)
+		{
+			this.writer = writer;
+		}
+		
+		@Override
+		protected void callRequests(SSLBuffer decryptedByteBuffer)
+		{
+			ByteBuffer decrypted = decryptedByteBuffer.getByteBuffer();
+			decrypted.flip();
+			writer.write(socket, decrypted, byteBuffer -> decryptedByteBuffer.close());
+		}
+	}
+	
+	/**
+	 * A {@link SSLServerSocket} whose clients echo everything they read.
+	 */
+	private static class EchoServer extends SSLServerSocket
+	{
+		private EchoServer(SSLContext sslContext)
+		{
+			super(sslContext);
+			onSSLConnection(socket ->
+			{
+				socket.onException(Throwable::printStackTrace);
+				socket.beginHandshake();
+			});
+		}
+		
+		@Override
+		protected ServerClientSocket createServerClientSocket(SocketChannel socketChannel, int clientsIndex)
+		{
+			SSLWriter writer = new SSLWriter(manager().isWindowsImplementation() ? new WindowsWriter() : new ServerWriter());
+			EchoServerReader reader = new EchoServerReader(writer);
+			SSLServerClientSocket socket = new SSLServerClientSocket(this, socketChannel, clientsIndex, writer, reader);
+			reader.socket = socket;
+			return socket;
+		}
+	}
+}
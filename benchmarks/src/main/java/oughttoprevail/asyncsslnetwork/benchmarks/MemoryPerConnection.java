@@ -0,0 +1,444 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.benchmarks;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import oughttoprevail.asyncnetwork.client.ClientSocket;
+import oughttoprevail.asyncnetwork.server.ServerClientSocket;
+import oughttoprevail.asyncnetwork.util.writer.client.ClientWriter;
+import oughttoprevail.asyncnetwork.util.writer.server.ServerWriter;
+import oughttoprevail.asyncnetwork.util.writer.server.WindowsWriter;
+import oughttoprevail.asyncsslnetwork.LoopbackPair;
+import oughttoprevail.asyncsslnetwork.SSLClientSocket;
+import oughttoprevail.asyncsslnetwork.SSLEngineFactory;
+import oughttoprevail.asyncsslnetwork.SSLServerClientSocket;
+import oughttoprevail.asyncsslnetwork.SSLServerSocket;
+import oughttoprevail.asyncsslnetwork.SSLSocketBase;
+import oughttoprevail.asyncsslnetwork.SelfSignedContexts;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBufferAllocation;
+import oughttoprevail.asyncsslnetwork.rw.SSLReader;
+import oughttoprevail.asyncsslnetwork.rw.SSLWriter;
+
+/**
+ * Measures the memory retained per idle connection.
+ * It handshakes many {@link SSLClientSocket}s with an {@link SSLServerSocket} over loopback, lets them idle and then reports
+ * the retained heap and direct memory per connection, broken down by the {@link SSLEngine}s, the buffers held by the
+ * {@link SSLSocketBase}s, the decrypted buffers pending in the {@link SSLReader}s and the threads of the executors.
+ * Both ends of every connection live in this process, so every figure covers a client and a server socket.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar oughttoprevail.asyncsslnetwork.benchmarks.MemoryPerConnection [key=value...]} with the keys:
+ * <ul>
+ * <li>connections - the amount of connections to open (default 10000)</li>
+ * <li>port - the port of the server (default 6000)</li>
+ * <li>idle - how long the connections idle before measuring in seconds (default 10)</li>
+ * <li>allocation - the {@link SSLBufferAllocation} of both ends (default HEAP)</li>
+ * <li>releaseIdleBuffers - whether both ends release their buffers while idle (default false)</li>
+ * <li>protocol - the protocol both ends enable, for example TLSv1.2 (default the JDK's)</li>
+ * <li>engines - the amount of engine pairs handshaked to measure the memory of an {@link SSLEngine} (default connections up to 10000)</li>
+ * <li>hosts - the amount of loopback addresses (127.0.0.1, 127.0.0.2...) connected to, each allows about 28000 connections
+ * (default enough for the connections)</li>
+ * <li>batch - the maximum amount of connections handshaking at once (default 1000)</li>
+ * </ul>
+ * Every connection uses two file descriptors, raise the open files limit (ulimit -n) accordingly.
+ */
+public class MemoryPerConnection
+{
+	/**
+	 * The amount of connections a single loopback address can take before running out of ephemeral ports
+	 */
+	private static final int CONNECTIONS_PER_HOST = 28000;
+	/**
+	 * An empty byte buffer to wrap handshake messages from
+	 */
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+	/**
+	 * The parsed arguments
+	 */
+	private final Map<String, String> arguments;
+	/**
+	 * The amount of clients which have completed a handshake
+	 */
+	private final AtomicInteger clientHandshakes = new AtomicInteger();
+	/**
+	 * The amount of server sockets which have completed a handshake
+	 */
+	private final AtomicInteger serverHandshakes = new AtomicInteger();
+	/**
+	 * The amount of connections which failed
+	 */
+	private final AtomicInteger failures = new AtomicInteger();
+	/**
+	 * The connected clients
+	 */
+	private final Queue<SSLClientSocket> clients = new ConcurrentLinkedQueue<>();
+	/**
+	 * The readers of the {@link #clients}
+	 */
+	private final Queue<SSLReader> clientReaders = new ConcurrentLinkedQueue<>();
+	
+	public static void main(String[] args) throws Exception
+	{
+		Map<String, String> arguments = new HashMap<>();
+		for(String arg : args)
+		{
+			int separator = arg.indexOf('=');
+			if(separator == -1)
+			{
+				throw new IllegalArgumentException("Arguments should be key=value, found: '" + arg + "'!");
+			}
+			arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		new MemoryPerConnection(arguments).run();
+	}
+	
+	private MemoryPerConnection(Map<String, String> arguments)
+	{
+		this.arguments = arguments;
+	}
+	
+	/**
+	 * Measures the engines, opens the connections, idles and reports.
+	 */
+	private void run() throws Exception
+	{
+		int connections = Integer.parseInt(argument("connections", "10000"));
+		int port = Integer.parseInt(argument("port", "6000"));
+		int idle = Integer.parseInt(argument("idle", "10"));
+		SSLBufferAllocation allocation = SSLBufferAllocation.valueOf(argument("allocation", SSLSocketBase.DEFAULT_BUFFER_ALLOCATION.name()));
+		boolean releaseIdleBuffers = Boolean.parseBoolean(argument("releaseIdleBuffers", "false"));
+		int engines = Integer.parseInt(argument("engines", String.valueOf(Math.min(connections, 10000))));
+		int hosts = Integer.parseInt(argument("hosts", String.valueOf(connections / CONNECTIONS_PER_HOST + 1)));
+		int batch = Integer.parseInt(argument("batch", "1000"));
+		SSLContext sslContext = SelfSignedContexts.create("TLS");
+		SSLEngineFactory engineFactory = LoopbackPair.createEngineFactory(sslContext, arguments.get("protocol"), null);
+		System.out.println("Connections: " + connections + " allocation: " + allocation + " releaseIdleBuffers: " + releaseIdleBuffers);
+		
+		double enginePairBytes = measureEngines(engineFactory, engines);
+		
+		long heapBefore = usedHeap();
+		long directBefore = usedDirect();
+		int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+		MemoryServer server = new MemoryServer(engineFactory, allocation, releaseIdleBuffers);
+		server.bind(new InetSocketAddress(port), 0);
+		long start = System.nanoTime();
+		for(int i = 0; i < connections; i++)
+		{
+			while(i - clientHandshakes.get() - failures.get() >= batch)
+			{
+				Thread.sleep(1);
+			}
+			connect(engineFactory, allocation, releaseIdleBuffers, new InetSocketAddress("127.0.0." + (i % hosts + 1), port));
+		}
+		long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+		while((clientHandshakes.get() < connections || serverHandshakes.get() < connections) && failures.get() == 0 && System.nanoTime() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		System.out.printf("Handshaked %d clients and %d server sockets in %.1fs, failures: %d%n", clientHandshakes.get(), serverHandshakes.get(),
+				(System.nanoTime() - start) / 1e9, failures.get());
+		Thread.sleep(TimeUnit.SECONDS.toMillis(idle));
+		
+		long heap = usedHeap() - heapBefore;
+		long direct = usedDirect() - directBefore;
+		int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+		int established = Math.min(clientHandshakes.get(), serverHandshakes.get());
+		if(established == 0)
+		{
+			throw new IllegalStateException("No connection has completed a handshake!");
+		}
+		long heldBuffers = 0;
+		long pendingMessages = 0;
+		int pendingMessageCount = 0;
+		for(SSLClientSocket client : clients)
+		{
+			heldBuffers += client.getSSLSocketBase().getHeldBufferCapacity();
+		}
+		for(SSLServerClientSocket serverClient : server.serverClients)
+		{
+			heldBuffers += serverClient.getSSLSocketBase().getHeldBufferCapacity();
+		}
+		List<SSLReader> readers = new ArrayList<>(clientReaders);
+		readers.addAll(server.readers);
+		for(SSLReader reader : readers)
+		{
+			pendingMessages += reader.getPendingMessageCapacity();
+			pendingMessageCount += reader.getPendingMessageCount();
+		}
+		long engineBytes = Math.round(enginePairBytes * established);
+		long heapBuffers = (allocation.isPacketDirect() ? 0 : heldBuffers) + (allocation.isApplicationDirect() ? 0 : pendingMessages);
+		System.out.println("Per connection (client and server socket):");
+		System.out.printf("  heap:                   %,10d bytes%n", heap / established);
+		System.out.printf("  direct:                 %,10d bytes%n", direct / established);
+		System.out.printf("  SSLEngines:             %,10d bytes (heap, from %d handshaked engine pairs)%n", engineBytes / established, engines);
+		System.out.printf("  SSLSocketBase buffers:  %,10d bytes (%s)%n", heldBuffers / established, allocation);
+		System.out.printf("  pendingMessages:        %,10d bytes (%d buffers in total)%n", pendingMessages / established, pendingMessageCount);
+		System.out.printf("  executor threads:       %10.3f threads (%d in total, not per connection when shared)%n", (double) threads / established, threads);
+		System.out.printf("  other heap:             %,10d bytes (sockets, channels, callbacks and sessions)%n",
+				(heap - engineBytes - heapBuffers) / established);
+		System.exit(0);
+	}
+	
+	/**
+	 * Handshakes the specified amount of {@link SSLEngine} pairs in memory and measures the heap they retain.
+	 *
+	 * @param engineFactory to create the engines with
+	 * @param engines is the amount of engine pairs
+	 * @return the heap retained by a client and a server {@link SSLEngine} after a handshake
+	 */
+	private static double measureEngines(SSLEngineFactory engineFactory, int engines) throws SSLException
+	{
+		if(engines <= 0)
+		{
+			return 0;
+		}
+		long heapBefore = usedHeap();
+		List<SSLEngine> handshaked = new ArrayList<>(engines * 2);
+		for(int i = 0; i < engines; i++)
+		{
+			SSLEngine client = engineFactory.createSSLEngine(null, -1, true);
+			SSLEngine server = engineFactory.createSSLEngine(null, -1, false);
+			handshake(client, server);
+			handshaked.add(client);
+			handshaked.add(server);
+		}
+		double enginePairBytes = (double) (usedHeap() - heapBefore) / engines;
+		//keep the engines reachable until they have been measured
+		handshaked.clear();
+		return enginePairBytes;
+	}
+	
+	/**
+	 * Runs the handshake of the specified engines with each other.
+	 *
+	 * @param client engine
+	 * @param server engine
+	 * @throws IllegalStateException if the handshake didn't complete
+	 */
+	private static void handshake(SSLEngine client, SSLEngine server) throws SSLException
+	{
+		ByteBuffer clientToServer = ByteBuffer.allocate(client.getSession().getPacketBufferSize());
+		ByteBuffer serverToClient = ByteBuffer.allocate(server.getSession().getPacketBufferSize());
+		ByteBuffer application = ByteBuffer.allocate(Math.max(client.getSession().getApplicationBufferSize(),
+				server.getSession().getApplicationBufferSize()));
+		client.beginHandshake();
+		server.beginHandshake();
+		for(int i = 0; i < 1000 && !(isHandshakeFinished(client) && isHandshakeFinished(server)); i++)
+		{
+			handshakeStep(client, clientToServer, serverToClient, application);
+			handshakeStep(server, serverToClient, clientToServer, application);
+		}
+		if(!isHandshakeFinished(client) || !isHandshakeFinished(server))
+		{
+			throw new IllegalStateException("Engine handshake didn't complete, client: " + client.getHandshakeStatus() + " server: " +
+											server.getHandshakeStatus());
+		}
+	}
+	
+	/**
+	 * Runs the next step the handshake of the specified engine requires.
+	 *
+	 * @param engine to run the step of
+	 * @param output to wrap into
+	 * @param input to unwrap from
+	 * @param application to unwrap into
+	 */
+	private static void handshakeStep(SSLEngine engine, ByteBuffer output, ByteBuffer input, ByteBuffer application) throws SSLException
+	{
+		switch(engine.getHandshakeStatus())
+		{
+			case NEED_TASK:
+				Runnable task;
+				while((task = engine.getDelegatedTask()) != null)
+				{
+					task.run();
+				}
+				break;
+			case NEED_WRAP:
+				engine.wrap(EMPTY, output);
+				break;
+			case NOT_HANDSHAKING:
+			case FINISHED:
+				break;
+			default:
+				input.flip();
+				application.clear();
+				SSLEngineResult result = engine.unwrap(input, application);
+				input.compact();
+				if(result.getStatus() == SSLEngineResult.Status.CLOSED)
+				{
+					throw new IllegalStateException("Engine closed during the handshake!");
+				}
+				break;
+		}
+	}
+	
+	/**
+	 * @param engine to check
+	 * @return whether the specified engine has no handshake in progress
+	 */
+	private static boolean isHandshakeFinished(SSLEngine engine)
+	{
+		SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+		return status == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING || status == SSLEngineResult.HandshakeStatus.FINISHED;
+	}
+	
+	/**
+	 * Connects a client which handshakes then idles.
+	 *
+	 * @param engineFactory to create the client with
+	 * @param allocation whether the buffers of the client are heap or direct
+	 * @param releaseIdleBuffers whether the client releases its buffers while idle
+	 * @param address to connect to
+	 */
+	private void connect(SSLEngineFactory engineFactory, SSLBufferAllocation allocation, boolean releaseIdleBuffers, InetSocketAddress address)
+	{
+		SSLWriter writer = new SSLWriter(new ClientWriter());
+		SSLReader reader = new SSLReader();
+		SSLClientSocket socket = new SSLClientSocket(ClientSocket.DEFAULT_BUFFER_SIZE, reader, writer, engineFactory, allocation);
+		socket.getSSLSocketBase().setReleaseIdleBuffers(releaseIdleBuffers);
+		socket.onConnect(() ->
+		{
+			socket.onHandshakeComplete(() ->
+			{
+				clients.add(socket);
+				clientReaders.add(reader);
+				clientHandshakes.incrementAndGet();
+			});
+			socket.beginHandshake();
+		});
+		socket.onException(throwable ->
+		{
+			failures.incrementAndGet();
+			throwable.printStackTrace();
+		});
+		socket.connect(address);
+	}
+	
+	/**
+	 * @param key of the argument
+	 * @param defaultValue to return if the argument wasn't specified
+	 * @return the value of the argument
+	 */
+	private String argument(String key, String defaultValue)
+	{
+		return arguments.getOrDefault(key, defaultValue);
+	}
+	
+	/**
+	 * Collects garbage until the used heap settles.
+	 *
+	 * @return the used heap in bytes
+	 */
+	private static long usedHeap()
+	{
+		long used = Long.MAX_VALUE;
+		for(int i = 0; i < 10; i++)
+		{
+			System.gc();
+			try
+			{
+				Thread.sleep(100);
+			} catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+			long current = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+			if(current >= used)
+			{
+				return current;
+			}
+			used = current;
+		}
+		return used;
+	}
+	
+	/**
+	 * @return the used direct memory in bytes
+	 */
+	private static long usedDirect()
+	{
+		for(BufferPoolMXBean bufferPool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+		{
+			if("direct".equals(bufferPool.getName()))
+			{
+				return bufferPool.getMemoryUsed();
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * A {@link SSLServerSocket} which keeps its handshaked clients and their readers so they can be measured.
+	 */
+	private class MemoryServer extends SSLServerSocket
+	{
+		/**
+		 * The server sockets which have completed a handshake
+		 */
+		private final Queue<SSLServerClientSocket> serverClients = new ConcurrentLinkedQueue<>();
+		/**
+		 * The readers of all server sockets
+		 */
+		private final Queue<SSLReader> readers = new ConcurrentLinkedQueue<>();
+		
+		private MemoryServer(SSLEngineFactory engineFactory, SSLBufferAllocation allocation, boolean releaseIdleBuffers)
+		{
+			super(engineFactory, allocation);
+			setReleaseIdleBuffers(releaseIdleBuffers);
+			onSSLConnection(socket ->
+			{
+				socket.onException(throwable ->
+				{
+					failures.incrementAndGet();
+					throwable.printStackTrace();
+				});
+				socket.onHandshakeComplete(() ->
+				{
+					serverClients.add(socket);
+					serverHandshakes.incrementAndGet();
+				});
+				socket.beginHandshake();
+			});
+		}
+		
+		@Override
+		protected ServerClientSocket createServerClientSocket(SocketChannel socketChannel, int clientsIndex)
+		{
+			SSLWriter writer = new SSLWriter(manager().isWindowsImplementation() ? new WindowsWriter() : new ServerWriter());
+			SSLReader reader = new SSLReader();
+			readers.add(reader);
+			return new SSLServerClientSocket(this, socketChannel, clientsIndex, writer, reader);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.benchmarks;
+
+import javax.net.ssl.SSLContext;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import oughttoprevail.asyncsslnetwork.LoopbackPair;
+import oughttoprevail.asyncsslnetwork.SSLEngineFactory;
+import oughttoprevail.asyncsslnetwork.SSLPreset;
+import oughttoprevail.asyncsslnetwork.SSLSocketBase;
+import oughttoprevail.asyncsslnetwork.SelfSignedContexts;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the effect of each {@link SSLPreset} (and of the JDK's defaults) on full handshakes per second and on
+ * bulk encrypt then decrypt throughput over a {@link LoopbackPair}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PresetBenchmark
+{
+	/**
+	 * The bulk payload size, a full record
+	 */
+	private static final int PAYLOAD_SIZE = 16384;
+	
+	/**
+	 * The preset, NONE for the JDK's defaults
+	 */
+	@Param({"NONE", "THROUGHPUT", "LOW_LATENCY"})
+	public String preset;
+	
+	/**
+	 * The {@link SSLEngineFactory} of the {@link #preset}
+	 */
+	private SSLEngineFactory engineFactory;
+	/**
+	 * The {@link SSLSocketBase} which encrypts
+	 */
+	private SSLSocketBase encryptor;
+	/**
+	 * The {@link SSLSocketBase} which decrypts
+	 */
+	private SSLSocketBase decryptor;
+	/**
+	 * The plaintext to encrypt
+	 */
+	private ByteBuffer payload;
+	/**
+	 * The ciphertext to decrypt
+	 */
+	private ByteBuffer input;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		SSLContext sslContext = SelfSignedContexts.create("TLS");
+		//the sessions aren't resumed since the engines don't know their peer, so every handshake is a full handshake
+		engineFactory = "NONE".equals(preset) ? SSLEngineFactory.of(sslContext) : SSLPreset.valueOf(preset).createFactory(sslContext);
+		LoopbackPair pair = new LoopbackPair(engineFactory);
+		pair.handshake();
+		encryptor = pair.getClient().getSSLSocketBase();
+		decryptor = pair.getServer().getSSLSocketBase();
+		byte[] bytes = new byte[PAYLOAD_SIZE];
+		new Random(0).nextBytes(bytes);
+		payload = ByteBuffer.allocate(PAYLOAD_SIZE);
+		payload.put(bytes);
+		input = ByteBuffer.allocate(PAYLOAD_SIZE + 1024);
+	}
+	
+	@Benchmark
+	public LoopbackPair handshake() throws InterruptedException
+	{
+		LoopbackPair pair = new LoopbackPair(engineFactory);
+		pair.handshake();
+		return pair;
+	}
+	
+	@Benchmark
+	public long bulk(ThroughputCounters counters)
+	{
+		payload.flip();
+		SSLBuffer encrypted = encryptor.encrypt(payload);
+		payload.limit(payload.capacity());
+		ByteBuffer encryptedByteBuffer = encrypted.getByteBuffer();
+		encryptedByteBuffer.flip();
+		input.clear();
+		input.put(encryptedByteBuffer);
+		input.flip();
+		encrypted.close();
+		long decryptedBytes = 0;
+		SSLBuffer decrypted;
+		while((decrypted = decryptor.decrypt(input)) != null)
+		{
+			decryptedBytes += decrypted.getByteBuffer().position();
+			decrypted.close();
+		}
+		counters.plaintextBytes += decryptedBytes;
+		return decryptedBytes;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import oughttoprevail.asyncsslnetwork.LoopbackPair;
+import oughttoprevail.asyncsslnetwork.LoopbackSocket;
+import oughttoprevail.asyncsslnetwork.SelfSignedContexts;
+import oughttoprevail.asyncsslnetwork.rw.SSLReader;
+import oughttoprevail.asyncsslnetwork.rw.SSLWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks writing through a {@link SSLWriter} and reading through the peer's {@link SSLReader} over a {@link LoopbackPair}.
+ * Run with {@code -prof gc} to report the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderWriterBenchmark
+{
+	@Param({"64", "1024", "16384", "65536"})
+	public int payloadSize;
+	@Param({"AES_128_GCM", "AES_256_GCM", "CHACHA20_POLY1305"})
+	public String cipher;
+	@Param({"TLSv1.2", "TLSv1.3"})
+	public String protocol;
+	@Param({"heap", "direct"})
+	public String buffers;
+	
+	/**
+	 * The connected pair
+	 */
+	private LoopbackPair pair;
+	/**
+	 * The plaintext to write
+	 */
+	private ByteBuffer payload;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		pair = new LoopbackPair(SelfSignedContexts.create("TLS"), protocol, LoopbackPair.cipherSuite(protocol, cipher));
+		pair.handshake();
+		//only count the decrypted bytes
+		pair.setRecording(false);
+		byte[] bytes = new byte[payloadSize];
+		new Random(0).nextBytes(bytes);
+		payload = "direct".equals(buffers) ? ByteBuffer.allocateDirect(payloadSize) : ByteBuffer.allocate(payloadSize);
+		payload.put(bytes);
+	}
+	
+	@Benchmark
+	public long writeThenRead(ThroughputCounters counters)
+	{
+		payload.flip();
+		LoopbackSocket client = pair.getClient();
+		client.getWriter().write(client, payload, null);
+		payload.limit(payload.capacity());
+		long readBytes = pair.getServerReader().getAndResetBytes();
+		counters.plaintextBytes += readBytes;
+		return readBytes;
+	}
+}
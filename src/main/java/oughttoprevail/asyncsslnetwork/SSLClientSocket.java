@@ -17,10 +17,14 @@ package oughttoprevail.asyncsslnetwork;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
 
 import oughttoprevail.asyncnetwork.client.ClientSocket;
 import oughttoprevail.asyncnetwork.util.DisconnectionType;
 import oughttoprevail.asyncnetwork.util.writer.client.ClientWriter;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBufferAllocation;
 import oughttoprevail.asyncsslnetwork.rw.SSLReader;
 import oughttoprevail.asyncsslnetwork.rw.SSLWriter;
 
@@ -46,12 +50,119 @@ public class SSLClientSocket extends ClientSocket implements SSLSocket
 	}
 	
 	public SSLClientSocket(int bufferSize, SSLReader reader, SSLWriter writer, SSLContext sslContext)
+	{
+		this(bufferSize, reader, writer, SSLEngineFactory.of(sslContext));
+	}
+	
+	/**
+	 * Creates a {@link SSLClientSocket} whose {@link SSLEngine} is created by the specified engineFactory.
+	 *
+	 * @param engineFactory to create the {@link SSLEngine} with
+	 */
+	public SSLClientSocket(SSLEngineFactory engineFactory)
+	{
+		this(ClientSocket.DEFAULT_BUFFER_SIZE, engineFactory);
+	}
+	
+	public SSLClientSocket(int bufferSize, SSLEngineFactory engineFactory)
+	{
+		this(bufferSize, new SSLReader(), new SSLWriter(new ClientWriter()), engineFactory);
+	}
+	
+	public SSLClientSocket(int bufferSize, SSLReader reader, SSLWriter writer, SSLEngineFactory engineFactory)
+	{
+		this(bufferSize, reader, writer, engineFactory, SSLSocketBase.DEFAULT_BUFFER_ALLOCATION);
+	}
+	
+	/**
+	 * Creates a {@link SSLClientSocket} whose buffers are allocated by the specified bufferAllocation.
+	 *
+	 * @param engineFactory to create the {@link javax.net.ssl.SSLEngine} with
+	 * @param bufferAllocation whether the buffers are heap or direct
+	 */
+	public SSLClientSocket(int bufferSize, SSLReader reader, SSLWriter writer, SSLEngineFactory engineFactory, SSLBufferAllocation bufferAllocation)
 	{
 		super(bufferSize, reader, writer);
-		sslSocketBase = new SSLSocketBase(this, writer, sslContext, true, null);
+		sslSocketBase = new SSLSocketBase(this, writer, engineFactory, true, null, null, -1, null, bufferAllocation);
 		reader.init(sslSocketBase);
 	}
 	
+	/**
+	 * Connects to the specified address.
+	 * If the specified address is an {@link InetSocketAddress} the {@link SSLEngine} is created for its host and port
+	 * so a session previously established with the same peer can be resumed, the {@link javax.net.ssl.SSLParameters} of the
+	 * {@link SSLEngine} are kept.
+	 *
+	 * @param address to connect to
+	 */
+	@Override
+	public void connect(SocketAddress address)
+	{
+		if(address instanceof InetSocketAddress)
+		{
+			InetSocketAddress inetSocketAddress = (InetSocketAddress) address;
+			sslSocketBase.setPeer(inetSocketAddress.getHostString(), inetSocketAddress.getPort());
+		}
+		super.connect(address);
+	}
+	
+	/**
+	 * Connects to the specified port on the localhost.
+	 * The {@link SSLEngine} is created for the localhost and the specified port
+	 * so a session previously established with the same peer can be resumed.
+	 *
+	 * @param port to connect to
+	 */
+	@Override
+	public void connectLocalHost(int port)
+	{
+		sslSocketBase.setPeer("localhost", port);
+		super.connectLocalHost(port);
+	}
+	
+	/**
+	 * Sets the maximum time a handshake may take before the connection is forced to close.
+	 *
+	 * @param timeout is the maximum time a handshake may take, {@code 0} means no limit
+	 * @param unit is the {@link TimeUnit} of the specified timeout
+	 */
+	public void setHandshakeTimeout(long timeout, TimeUnit unit)
+	{
+		sslSocketBase.setHandshakeTimeout(timeout, unit);
+	}
+	
+	/**
+	 * Sets the maximum time an established connection may have no reads and writes before it is forced to close.
+	 *
+	 * @param timeout is the maximum time the connection may be idle, {@code 0} means no limit
+	 * @param unit is the {@link TimeUnit} of the specified timeout
+	 */
+	public void setIdleTimeout(long timeout, TimeUnit unit)
+	{
+		sslSocketBase.setIdleTimeout(timeout, unit);
+	}
+	
+	/**
+	 * Sets the maximum time to wait for the peer's close_notify once a close was initiated before the connection is forced to close.
+	 *
+	 * @param timeout is the maximum time to wait for the peer's close_notify, {@code 0} means no limit
+	 * @param unit is the {@link TimeUnit} of the specified timeout
+	 */
+	public void setCloseTimeout(long timeout, TimeUnit unit)
+	{
+		sslSocketBase.setCloseTimeout(timeout, unit);
+	}
+	
+	/**
+	 * Sets the amount of plaintext bytes to encrypt before replacing the keys with a TLSv1.3 KeyUpdate.
+	 *
+	 * @param keyUpdateInterval is the amount of plaintext bytes between KeyUpdates, {@code 0} leaves it to the JDK's key limits
+	 */
+	public void setKeyUpdateInterval(long keyUpdateInterval)
+	{
+		sslSocketBase.setKeyUpdateInterval(keyUpdateInterval);
+	}
+	
 	/**
 	 * Whether the closure will be forced or initiate a SSL sequence
 	 */
@@ -109,6 +220,33 @@ public class SSLClientSocket extends ClientSocket implements SSLSocket
 		return sslSocketBase.isHandshakeComplete();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isHandshaking()
+	{
+		return sslSocketBase.isHandshaking();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SSLConnectionState getConnectionState()
+	{
+		return sslSocketBase.getConnectionState();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SSLMetrics getMetrics()
+	{
+		return sslSocketBase.getMetrics();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -0,0 +1,94 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+/**
+ * The states of an SSL connection, in the order they're advanced through.
+ * A connection goes from {@link #IDLE} to {@link #HANDSHAKING}, may move between {@link #HANDSHAKING} and
+ * {@link #WAITING_UNWRAP} while the handshake needs incoming data, then to {@link #ESTABLISHED} (or back to {@link #HANDSHAKING}
+ * for another handshake) and finally to {@link #CLOSING} and {@link #CLOSED}.
+ * A connection may start closing from any state before {@link #CLOSING}.
+ */
+public enum SSLConnectionState
+{
+	/**
+	 * The handshake has yet to begin
+	 */
+	IDLE,
+	/**
+	 * The handshake is running
+	 */
+	HANDSHAKING,
+	/**
+	 * The handshake is waiting for incoming data to unwrap
+	 */
+	WAITING_UNWRAP,
+	/**
+	 * The handshake has completed and application data can be transferred
+	 */
+	ESTABLISHED,
+	/**
+	 * A close has been initiated, either locally or by the remote
+	 */
+	CLOSING,
+	/**
+	 * Both sides of the {@link javax.net.ssl.SSLEngine} are closed
+	 */
+	CLOSED;
+	
+	/**
+	 * @return whether a handshake has begun in this state
+	 */
+	public boolean hasHandshakeBegun()
+	{
+		return this != IDLE;
+	}
+	
+	/**
+	 * @return whether a handshake is running in this state
+	 */
+	public boolean isHandshaking()
+	{
+		return this == HANDSHAKING || this == WAITING_UNWRAP;
+	}
+	
+	/**
+	 * @return whether the handshake is no longer running in this state because it has completed or the connection is closing
+	 */
+	public boolean isHandshakeComplete()
+	{
+		return compareTo(ESTABLISHED) >= 0;
+	}
+	
+	/**
+	 * Returns whether application data can be written in this state, unlike {@link #isHandshakeComplete()} this is
+	 * {@code false} once the connection is closing.
+	 *
+	 * @return whether the handshake has completed and the connection isn't closing in this state
+	 */
+	public boolean isEstablished()
+	{
+		return this == ESTABLISHED;
+	}
+	
+	/**
+	 * @return whether a close has been initiated in this state
+	 */
+	public boolean isClosing()
+	{
+		return compareTo(CLOSING) >= 0;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+/**
+ * A {@link SSLEngineFactory} creates the {@link SSLEngine} of every {@link SSLSocket}, it lets engines be configured once
+ * (for example using {@link SSLEngineFactoryBuilder}) instead of configuring {@link SSLSocket#getSSLEngine()} of each socket.
+ */
+public interface SSLEngineFactory
+{
+	/**
+	 * Creates a {@link SSLEngineFactory} which creates {@link SSLEngine}s with the defaults of the specified sslContext.
+	 *
+	 * @param sslContext to create the {@link SSLEngine}s with
+	 * @return the created {@link SSLEngineFactory}
+	 */
+	static SSLEngineFactory of(SSLContext sslContext)
+	{
+		return SSLEngineFactoryBuilder.create(sslContext).build();
+	}
+	
+	/**
+	 * @return the {@link SSLContext} which creates the {@link SSLEngine}s
+	 */
+	SSLContext getSSLContext();
+	
+	/**
+	 * Creates a {@link SSLEngine} for the specified peer.
+	 *
+	 * @param peerHost is the host of the peer or {@code null} if unknown
+	 * @param peerPort is the port of the peer or {@code -1} if unknown
+	 * @param client whether the {@link SSLEngine} should be in client mode
+	 * @return the created {@link SSLEngine}
+	 */
+	SSLEngine createSSLEngine(String peerHost, int peerPort, boolean client);
+}
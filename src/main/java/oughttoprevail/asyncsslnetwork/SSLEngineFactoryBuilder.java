@@ -0,0 +1,423 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIMatcher;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import oughttoprevail.asyncnetwork.util.Consumer;
+
+/**
+ * A builder of a {@link SSLEngineFactory}, the {@link SSLParameters} of the created {@link SSLEngine}s are computed once when
+ * built so creating an {@link SSLEngine} only applies them.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * SSLEngineFactory factory = SSLEngineFactoryBuilder.create(sslContext)
+ * 		.protocols("TLSv1.3", "TLSv1.2")
+ * 		.cipherSuites("TLS_AES_128_GCM_SHA256", "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256")
+ * 		.build();
+ * SSLServerSocket serverSocket = new SSLServerSocket(factory);
+ * }</pre>
+ */
+public class SSLEngineFactoryBuilder
+{
+	/**
+	 * The {@link SSLContext} of the built {@link SSLEngineFactory}
+	 */
+	private final SSLContext sslContext;
+	/**
+	 * The protocols to enable or {@code null} to keep the defaults
+	 */
+	private String[] protocols;
+	/**
+	 * The cipher suites to enable or {@code null} to keep the defaults
+	 */
+	private String[] cipherSuites;
+	/**
+	 * The server names a client sends (SNI) or {@code null} to keep the defaults
+	 */
+	private List<SNIServerName> serverNames;
+	/**
+	 * The server names a server accepts (SNI) or {@code null} to keep the defaults
+	 */
+	private List<SNIMatcher> sniMatchers;
+	/**
+	 * Whether a server requires client authentication or {@code null} to keep the defaults
+	 */
+	private Boolean needClientAuth;
+	/**
+	 * Whether a server requests client authentication or {@code null} to keep the defaults
+	 */
+	private Boolean wantClientAuth;
+	/**
+	 * Whether a server prefers its own cipher suites order or {@code null} to keep the defaults
+	 */
+	private Boolean useCipherSuitesOrder;
+	/**
+	 * The endpoint identification algorithm of a client or {@code null} to keep the defaults
+	 */
+	private String endpointIdentificationAlgorithm;
+	/**
+	 * Whether new sessions may be created or {@code null} to keep the defaults
+	 */
+	private Boolean enableSessionCreation;
+	/**
+	 * Invoked with every created {@link SSLEngine} for any other configuration or {@code null}
+	 */
+	private Consumer<SSLEngine> configurator;
+	
+	private SSLEngineFactoryBuilder(SSLContext sslContext)
+	{
+		this.sslContext = sslContext;
+	}
+	
+	/**
+	 * Creates a {@link SSLEngineFactoryBuilder} which builds a {@link SSLEngineFactory} of the specified sslContext.
+	 *
+	 * @param sslContext to create the {@link SSLEngine}s with
+	 * @return the created {@link SSLEngineFactoryBuilder}
+	 */
+	public static SSLEngineFactoryBuilder create(SSLContext sslContext)
+	{
+		if(sslContext == null)
+		{
+			throw new IllegalArgumentException("SSLContext cannot be null!");
+		}
+		return new SSLEngineFactoryBuilder(sslContext);
+	}
+	
+	/**
+	 * Creates a {@link SSLEngineFactoryBuilder} whose {@link SSLContext} is of the specified protocol from the specified provider,
+	 * this lets another JSSE provider (which may have a faster implementation) create the {@link SSLEngine}s.
+	 * A provider which only implements ciphers (JCA) is used by the JDK's {@link SSLEngine} once it is installed
+	 * before the JDK's providers with {@link java.security.Security#insertProviderAt(java.security.Provider, int)}.
+	 *
+	 * @param protocol is the {@link SSLContext} protocol, for example "TLS"
+	 * @param provider is the name of the installed provider or {@code null} for the most preferred provider
+	 * @param keyManagers to initialize the {@link SSLContext} with
+	 * @param trustManagers to initialize the {@link SSLContext} with
+	 * @return the created {@link SSLEngineFactoryBuilder}
+	 * @throws GeneralSecurityException if the provider isn't installed or doesn't support the specified protocol
+	 */
+	public static SSLEngineFactoryBuilder create(String protocol, String provider, KeyManager[] keyManagers, TrustManager[] trustManagers)
+			throws GeneralSecurityException
+	{
+		SSLContext sslContext = provider == null ? SSLContext.getInstance(protocol) : SSLContext.getInstance(protocol, provider);
+		sslContext.init(keyManagers, trustManagers, new SecureRandom());
+		return new SSLEngineFactoryBuilder(sslContext);
+	}
+	
+	/**
+	 * Applies the protocols, cipher suites and server cipher suites order of the specified preset,
+	 * later settings of this builder override it.
+	 *
+	 * @param preset to apply
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder preset(SSLPreset preset)
+	{
+		preset.apply(this, sslContext);
+		return this;
+	}
+	
+	/**
+	 * @param protocols to enable, for example "TLSv1.3"
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder protocols(String... protocols)
+	{
+		this.protocols = protocols.clone();
+		return this;
+	}
+	
+	/**
+	 * @param cipherSuites to enable, in order of preference
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder cipherSuites(String... cipherSuites)
+	{
+		this.cipherSuites = cipherSuites.clone();
+		return this;
+	}
+	
+	/**
+	 * Sets the host names a client sends using the server name indication (SNI) extension,
+	 * by default a client connecting to a host name sends it.
+	 *
+	 * @param hostNames to send
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder serverNames(String... hostNames)
+	{
+		List<SNIServerName> serverNames = new ArrayList<>(hostNames.length);
+		for(String hostName : hostNames)
+		{
+			serverNames.add(new SNIHostName(hostName));
+		}
+		this.serverNames = serverNames;
+		return this;
+	}
+	
+	/**
+	 * Sets the matchers of the server names a server accepts using the server name indication (SNI) extension.
+	 *
+	 * @param sniMatchers to accept server names with
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder sniMatchers(SNIMatcher... sniMatchers)
+	{
+		this.sniMatchers = Arrays.asList(sniMatchers.clone());
+		return this;
+	}
+	
+	/**
+	 * @param needClientAuth whether a server requires client authentication
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder needClientAuth(boolean needClientAuth)
+	{
+		this.needClientAuth = needClientAuth;
+		return this;
+	}
+	
+	/**
+	 * @param wantClientAuth whether a server requests (but doesn't require) client authentication
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder wantClientAuth(boolean wantClientAuth)
+	{
+		this.wantClientAuth = wantClientAuth;
+		return this;
+	}
+	
+	/**
+	 * @param useCipherSuitesOrder whether a server prefers its own cipher suites order over the client's
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder useCipherSuitesOrder(boolean useCipherSuitesOrder)
+	{
+		this.useCipherSuitesOrder = useCipherSuitesOrder;
+		return this;
+	}
+	
+	/**
+	 * @param endpointIdentificationAlgorithm is the endpoint identification algorithm of a client, for example "HTTPS"
+	 * to verify the server's certificate matches its host
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder endpointIdentificationAlgorithm(String endpointIdentificationAlgorithm)
+	{
+		this.endpointIdentificationAlgorithm = endpointIdentificationAlgorithm;
+		return this;
+	}
+	
+	/**
+	 * @param enableSessionCreation whether new sessions may be created, if {@code false} sessions can only be resumed
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder enableSessionCreation(boolean enableSessionCreation)
+	{
+		this.enableSessionCreation = enableSessionCreation;
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum amount of sessions the {@link SSLContext}'s client and server session caches hold for resumption.
+	 *
+	 * @param sessionCacheSize is the maximum amount of cached sessions, {@code 0} means no limit
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder sessionCacheSize(int sessionCacheSize)
+	{
+		for(SSLSessionContext sessionContext : getSessionContexts())
+		{
+			sessionContext.setSessionCacheSize(sessionCacheSize);
+		}
+		return this;
+	}
+	
+	/**
+	 * Sets the time a session stays in the {@link SSLContext}'s client and server session caches and can be resumed.
+	 *
+	 * @param sessionTimeout is the time in seconds a session can be resumed, {@code 0} means no limit
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder sessionTimeout(int sessionTimeout)
+	{
+		for(SSLSessionContext sessionContext : getSessionContexts())
+		{
+			sessionContext.setSessionTimeout(sessionTimeout);
+		}
+		return this;
+	}
+	
+	/**
+	 * Sets a configurator which is invoked with every created {@link SSLEngine} (after the other settings were applied)
+	 * for anything the builder doesn't set.
+	 *
+	 * @param configurator to invoke with every created {@link SSLEngine}
+	 * @return this
+	 */
+	public SSLEngineFactoryBuilder configure(Consumer<SSLEngine> configurator)
+	{
+		this.configurator = configurator;
+		return this;
+	}
+	
+	/**
+	 * @return the {@link SSLContext}'s client and server session contexts which are supported
+	 */
+	private List<SSLSessionContext> getSessionContexts()
+	{
+		List<SSLSessionContext> sessionContexts = new ArrayList<>(2);
+		for(SSLSessionContext sessionContext : new SSLSessionContext[]{sslContext.getClientSessionContext(), sslContext.getServerSessionContext()})
+		{
+			if(sessionContext != null)
+			{
+				sessionContexts.add(sessionContext);
+			}
+		}
+		return sessionContexts;
+	}
+	
+	/**
+	 * @return a {@link SSLEngineFactory} which creates {@link SSLEngine}s with the settings of this builder
+	 */
+	public SSLEngineFactory build()
+	{
+		return new ConfiguredSSLEngineFactory(sslContext, createSSLParameters(), enableSessionCreation, configurator);
+	}
+	
+	/**
+	 * @return the {@link SSLParameters} of the settings of this builder or {@code null} if none were set
+	 */
+	private SSLParameters createSSLParameters()
+	{
+		if(protocols == null && cipherSuites == null && serverNames == null && sniMatchers == null && needClientAuth == null && wantClientAuth == null &&
+		   useCipherSuitesOrder == null && endpointIdentificationAlgorithm == null)
+		{
+			return null;
+		}
+		SSLParameters sslParameters = sslContext.getDefaultSSLParameters();
+		if(protocols != null)
+		{
+			sslParameters.setProtocols(protocols);
+		}
+		if(cipherSuites != null)
+		{
+			sslParameters.setCipherSuites(cipherSuites);
+		}
+		if(serverNames != null)
+		{
+			sslParameters.setServerNames(serverNames);
+		}
+		if(sniMatchers != null)
+		{
+			sslParameters.setSNIMatchers(sniMatchers);
+		}
+		//setting either client authentication clears the other so only set the one which is true
+		if(Boolean.TRUE.equals(needClientAuth))
+		{
+			sslParameters.setNeedClientAuth(true);
+		} else if(Boolean.TRUE.equals(wantClientAuth))
+		{
+			sslParameters.setWantClientAuth(true);
+		}
+		if(useCipherSuitesOrder != null)
+		{
+			sslParameters.setUseCipherSuitesOrder(useCipherSuitesOrder);
+		}
+		if(endpointIdentificationAlgorithm != null)
+		{
+			sslParameters.setEndpointIdentificationAlgorithm(endpointIdentificationAlgorithm);
+		}
+		return sslParameters;
+	}
+	
+	/**
+	 * The {@link SSLEngineFactory} built by {@link SSLEngineFactoryBuilder}.
+	 */
+	private static class ConfiguredSSLEngineFactory implements SSLEngineFactory
+	{
+		/**
+		 * The {@link SSLContext} which creates the {@link SSLEngine}s
+		 */
+		private final SSLContext sslContext;
+		/**
+		 * The {@link SSLParameters} applied to every {@link SSLEngine} or {@code null} to keep the defaults
+		 */
+		private final SSLParameters sslParameters;
+		/**
+		 * Invoked with every created {@link SSLEngine} or {@code null}
+		 */
+		private final Consumer<SSLEngine> configurator;
+		/**
+		 * Whether new sessions may be created or {@code null} to keep the defaults
+		 */
+		private final Boolean enableSessionCreation;
+		
+		private ConfiguredSSLEngineFactory(SSLContext sslContext,
+										   SSLParameters sslParameters,
+										   Boolean enableSessionCreation,
+										   Consumer<SSLEngine> configurator)
+		{
+			this.sslContext = sslContext;
+			this.sslParameters = sslParameters;
+			this.enableSessionCreation = enableSessionCreation;
+			this.configurator = configurator;
+		}
+		
+		@Override
+		public SSLContext getSSLContext()
+		{
+			return sslContext;
+		}
+		
+		@Override
+		public SSLEngine createSSLEngine(String peerHost, int peerPort, boolean client)
+		{
+			SSLEngine sslEngine = peerHost == null ? sslContext.createSSLEngine() : sslContext.createSSLEngine(peerHost, peerPort);
+			//client mode is set first since changing it may reset the enabled protocols and cipher suites
+			sslEngine.setUseClientMode(client);
+			if(sslParameters != null)
+			{
+				sslEngine.setSSLParameters(sslParameters);
+			}
+			if(enableSessionCreation != null)
+			{
+				sslEngine.setEnableSessionCreation(enableSessionCreation);
+			}
+			if(configurator != null)
+			{
+				configurator.accept(sslEngine);
+			}
+			return sslEngine;
+		}
+	}
+}
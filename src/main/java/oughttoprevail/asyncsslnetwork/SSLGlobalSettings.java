@@ -0,0 +1,87 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+/**
+ * Settings of the JDK's TLS implementation which are global to the process.
+ * Unlike the settings of a socket or a server these are JVM-wide system properties, they apply to every
+ * {@link javax.net.ssl.SSLEngine} in the JVM including the ones of other libraries, and the JDK reads them once
+ * (when its TLS implementation is first used), so they should be set at startup before any {@link javax.net.ssl.SSLEngine} is created.
+ */
+public final class SSLGlobalSettings
+{
+	/**
+	 * The system property which enables stateless session tickets on servers, read by JDK 13 and later
+	 */
+	public static final String SERVER_SESSION_TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+	/**
+	 * The first JDK feature version which supports stateless session tickets, it enables them on servers by default
+	 */
+	private static final int SESSION_TICKETS_JAVA_VERSION = 13;
+	
+	private SSLGlobalSettings()
+	{
+	}
+	
+	/**
+	 * Sets whether every server in the JVM resumes sessions using stateless session tickets (the session state is encrypted
+	 * and kept by the client) instead of keeping the session state in the server's session cache.
+	 * This sets the JVM-wide {@link #SERVER_SESSION_TICKETS_PROPERTY} system property, so it must be invoked before any
+	 * {@link javax.net.ssl.SSLEngine} is created in the JVM. JDKs older than 13 ignore it.
+	 *
+	 * @param statelessSessionTickets whether stateless session tickets should be used
+	 */
+	public static void setServerStatelessSessionTickets(boolean statelessSessionTickets)
+	{
+		System.setProperty(SERVER_SESSION_TICKETS_PROPERTY, String.valueOf(statelessSessionTickets));
+	}
+	
+	/**
+	 * Returns whether servers in the JVM use stateless session tickets.
+	 * When the {@link #SERVER_SESSION_TICKETS_PROPERTY} system property isn't set this is the JDK's default,
+	 * which is enabled on JDK 13 and later (and disabled before, since older JDKs don't support them).
+	 *
+	 * @return whether servers in the JVM use stateless session tickets
+	 */
+	public static boolean isServerStatelessSessionTickets()
+	{
+		if(getJavaVersion() < SESSION_TICKETS_JAVA_VERSION)
+		{
+			return false;
+		}
+		return Boolean.parseBoolean(System.getProperty(SERVER_SESSION_TICKETS_PROPERTY, "true"));
+	}
+	
+	/**
+	 * @return the feature version of the running JDK, for example {@code 8} or {@code 17}
+	 */
+	private static int getJavaVersion()
+	{
+		String version = System.getProperty("java.specification.version");
+		//JDK 8 and before use the "1.x" format
+		if(version.startsWith("1."))
+		{
+			version = version.substring(2);
+		}
+		try
+		{
+			return Integer.parseInt(version);
+		} catch(NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+}
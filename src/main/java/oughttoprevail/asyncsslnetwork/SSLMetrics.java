@@ -0,0 +1,428 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import javax.net.ssl.SSLEngineResult;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link SSLMetrics} counts the SSL operations of a {@link SSLSocket}, or of all the {@link SSLServerClientSocket}s of a
+ * {@link SSLServerSocket}.
+ * The counters are {@link LongAdder}s so counting from multiple threads doesn't contend, each recording is also
+ * recorded into the parent {@link SSLMetrics} (if there is one) so a server has an aggregate of its clients.
+ */
+public class SSLMetrics
+{
+	/**
+	 * The upper bounds (in milliseconds) of the {@link #handshakeDurations} buckets
+	 */
+	private static final long[] HANDSHAKE_DURATION_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, Long.MAX_VALUE};
+	/**
+	 * The {@link SSLMetrics} every recording is also recorded into, {@code null} if there isn't one
+	 */
+	private final SSLMetrics parent;
+	/**
+	 * The amount of decrypted bytes produced by unwraps
+	 */
+	private final LongAdder plaintextBytesIn = new LongAdder();
+	/**
+	 * The amount of plaintext bytes consumed by wraps
+	 */
+	private final LongAdder plaintextBytesOut = new LongAdder();
+	/**
+	 * The amount of encrypted bytes consumed by unwraps
+	 */
+	private final LongAdder ciphertextBytesIn = new LongAdder();
+	/**
+	 * The amount of encrypted bytes produced by wraps
+	 */
+	private final LongAdder ciphertextBytesOut = new LongAdder();
+	/**
+	 * The amount of records produced by wraps
+	 */
+	private final LongAdder recordsWrapped = new LongAdder();
+	/**
+	 * The amount of records consumed by unwraps
+	 */
+	private final LongAdder recordsUnwrapped = new LongAdder();
+	/**
+	 * The amount of {@link SSLEngineResult.Status#BUFFER_OVERFLOW} results
+	 */
+	private final LongAdder bufferOverflows = new LongAdder();
+	/**
+	 * The amount of {@link SSLEngineResult.Status#BUFFER_UNDERFLOW} results
+	 */
+	private final LongAdder bufferUnderflows = new LongAdder();
+	/**
+	 * The amount of buffers which were expanded
+	 */
+	private final LongAdder bufferExpansions = new LongAdder();
+	/**
+	 * The amount of delegated tasks which were run
+	 */
+	private final LongAdder delegatedTasks = new LongAdder();
+	/**
+	 * The amount of completed handshakes which have created a new session
+	 */
+	private final LongAdder fullHandshakes = new LongAdder();
+	/**
+	 * The amount of completed handshakes which have resumed a previously established session
+	 */
+	private final LongAdder resumedHandshakes = new LongAdder();
+	/**
+	 * The amount of handshakes which had to wait in a server's handshake queue
+	 */
+	private final LongAdder queuedHandshakes = new LongAdder();
+	/**
+	 * The amount of handshakes which were rejected because a server's handshake queue was full
+	 */
+	private final LongAdder rejectedHandshakes = new LongAdder();
+	/**
+	 * The total time (in nanoseconds) handshakes have waited in a server's handshake queue
+	 */
+	private final LongAdder handshakeQueueWait = new LongAdder();
+	/**
+	 * The handshake durations histogram, each bucket has the upper bound at the same index of {@link #HANDSHAKE_DURATION_BOUNDS}
+	 */
+	private final LongAdder[] handshakeDurations = new LongAdder[HANDSHAKE_DURATION_BOUNDS.length];
+	
+	public SSLMetrics()
+	{
+		this(null);
+	}
+	
+	/**
+	 * Creates a {@link SSLMetrics} which also records everything into the specified parent.
+	 *
+	 * @param parent to also record into, if {@code null} recordings are only recorded into this
+	 */
+	public SSLMetrics(SSLMetrics parent)
+	{
+		this.parent = parent;
+		for(int i = 0; i < handshakeDurations.length; i++)
+		{
+			handshakeDurations[i] = new LongAdder();
+		}
+	}
+	
+	/**
+	 * Records the bytes and records of the specified engineResult.
+	 *
+	 * @param wrap whether the specified engineResult is of a wrap or of an unwrap
+	 * @param engineResult to record
+	 */
+	void recordResult(boolean wrap, SSLEngineResult engineResult)
+	{
+		int consumed = engineResult.bytesConsumed();
+		int produced = engineResult.bytesProduced();
+		if(wrap)
+		{
+			if(produced > 0)
+			{
+				recordsWrapped.increment();
+				plaintextBytesOut.add(consumed);
+				ciphertextBytesOut.add(produced);
+			}
+		} else if(consumed > 0)
+		{
+			recordsUnwrapped.increment();
+			ciphertextBytesIn.add(consumed);
+			plaintextBytesIn.add(produced);
+		}
+		if(parent != null)
+		{
+			parent.recordResult(wrap, engineResult);
+		}
+	}
+	
+	/**
+	 * Records a {@link SSLEngineResult.Status#BUFFER_OVERFLOW} result.
+	 */
+	void recordBufferOverflow()
+	{
+		bufferOverflows.increment();
+		if(parent != null)
+		{
+			parent.recordBufferOverflow();
+		}
+	}
+	
+	/**
+	 * Records a {@link SSLEngineResult.Status#BUFFER_UNDERFLOW} result.
+	 */
+	void recordBufferUnderflow()
+	{
+		bufferUnderflows.increment();
+		if(parent != null)
+		{
+			parent.recordBufferUnderflow();
+		}
+	}
+	
+	/**
+	 * Records an expansion of a buffer.
+	 */
+	void recordBufferExpansion()
+	{
+		bufferExpansions.increment();
+		if(parent != null)
+		{
+			parent.recordBufferExpansion();
+		}
+	}
+	
+	/**
+	 * Records a delegated task which was run.
+	 */
+	void recordDelegatedTask()
+	{
+		delegatedTasks.increment();
+		if(parent != null)
+		{
+			parent.recordDelegatedTask();
+		}
+	}
+	
+	/**
+	 * Records a completed handshake.
+	 *
+	 * @param durationNanos is how long the handshake took in nanoseconds
+	 * @param resumed whether the handshake has resumed a previously established session
+	 */
+	void recordHandshake(long durationNanos, boolean resumed)
+	{
+		(resumed ? resumedHandshakes : fullHandshakes).increment();
+		long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+		int bucket = 0;
+		while(durationMillis > HANDSHAKE_DURATION_BOUNDS[bucket])
+		{
+			bucket++;
+		}
+		handshakeDurations[bucket].increment();
+		if(parent != null)
+		{
+			parent.recordHandshake(durationNanos, resumed);
+		}
+	}
+	
+	/**
+	 * Records a handshake which has to wait in the handshake queue.
+	 */
+	void recordHandshakeQueued()
+	{
+		queuedHandshakes.increment();
+		if(parent != null)
+		{
+			parent.recordHandshakeQueued();
+		}
+	}
+	
+	/**
+	 * Records a handshake which was rejected because the handshake queue was full.
+	 */
+	void recordHandshakeRejected()
+	{
+		rejectedHandshakes.increment();
+		if(parent != null)
+		{
+			parent.recordHandshakeRejected();
+		}
+	}
+	
+	/**
+	 * Records the time a handshake has waited in the handshake queue.
+	 *
+	 * @param waitNanos is the time the handshake has waited in nanoseconds
+	 */
+	void recordHandshakeQueueWait(long waitNanos)
+	{
+		handshakeQueueWait.add(waitNanos);
+		if(parent != null)
+		{
+			parent.recordHandshakeQueueWait(waitNanos);
+		}
+	}
+	
+	/**
+	 * @return the amount of decrypted bytes produced by unwraps
+	 */
+	public long getPlaintextBytesIn()
+	{
+		return plaintextBytesIn.sum();
+	}
+	
+	/**
+	 * @return the amount of plaintext bytes consumed by wraps
+	 */
+	public long getPlaintextBytesOut()
+	{
+		return plaintextBytesOut.sum();
+	}
+	
+	/**
+	 * @return the amount of encrypted bytes consumed by unwraps
+	 */
+	public long getCiphertextBytesIn()
+	{
+		return ciphertextBytesIn.sum();
+	}
+	
+	/**
+	 * @return the amount of encrypted bytes produced by wraps
+	 */
+	public long getCiphertextBytesOut()
+	{
+		return ciphertextBytesOut.sum();
+	}
+	
+	/**
+	 * @return the amount of records produced by wraps (including handshake records)
+	 */
+	public long getRecordsWrapped()
+	{
+		return recordsWrapped.sum();
+	}
+	
+	/**
+	 * @return the amount of records consumed by unwraps (including handshake records)
+	 */
+	public long getRecordsUnwrapped()
+	{
+		return recordsUnwrapped.sum();
+	}
+	
+	/**
+	 * @return the amount of {@link SSLEngineResult.Status#BUFFER_OVERFLOW} results
+	 */
+	public long getBufferOverflows()
+	{
+		return bufferOverflows.sum();
+	}
+	
+	/**
+	 * @return the amount of {@link SSLEngineResult.Status#BUFFER_UNDERFLOW} results
+	 */
+	public long getBufferUnderflows()
+	{
+		return bufferUnderflows.sum();
+	}
+	
+	/**
+	 * @return the amount of buffers which were expanded
+	 */
+	public long getBufferExpansions()
+	{
+		return bufferExpansions.sum();
+	}
+	
+	/**
+	 * @return the amount of delegated tasks which were run
+	 */
+	public long getDelegatedTasks()
+	{
+		return delegatedTasks.sum();
+	}
+	
+	/**
+	 * @return the amount of completed handshakes which have created a new session
+	 */
+	public long getFullHandshakes()
+	{
+		return fullHandshakes.sum();
+	}
+	
+	/**
+	 * @return the amount of completed handshakes which have resumed a previously established session, as approximated by
+	 * {@link SSLSocketBase#isSessionResumed()}
+	 */
+	public long getResumedHandshakes()
+	{
+		return resumedHandshakes.sum();
+	}
+	
+	/**
+	 * @return the amount of handshakes which had to wait in a server's handshake queue
+	 */
+	public long getQueuedHandshakes()
+	{
+		return queuedHandshakes.sum();
+	}
+	
+	/**
+	 * @return the amount of handshakes which were rejected because a server's handshake queue was full
+	 */
+	public long getRejectedHandshakes()
+	{
+		return rejectedHandshakes.sum();
+	}
+	
+	/**
+	 * @return the total time (in nanoseconds) handshakes have waited in a server's handshake queue,
+	 * divide by {@link #getQueuedHandshakes()} for the average wait
+	 */
+	public long getHandshakeQueueWait()
+	{
+		return handshakeQueueWait.sum();
+	}
+	
+	/**
+	 * @return the upper bounds (in milliseconds) of the {@link #getHandshakeDurations()} buckets
+	 */
+	public long[] getHandshakeDurationBounds()
+	{
+		return HANDSHAKE_DURATION_BOUNDS.clone();
+	}
+	
+	/**
+	 * @return the amount of completed handshakes in each bucket, a bucket has the upper bound at the same index of
+	 * {@link #getHandshakeDurationBounds()}
+	 */
+	public long[] getHandshakeDurations()
+	{
+		long[] counts = new long[handshakeDurations.length];
+		for(int i = 0; i < counts.length; i++)
+		{
+			counts[i] = handshakeDurations[i].sum();
+		}
+		return counts;
+	}
+	
+	/**
+	 * Gives the current values of all the metrics to the specified exporter.
+	 *
+	 * @param exporter to give the values to
+	 */
+	public void export(SSLMetricsExporter exporter)
+	{
+		exporter.counter("plaintext_bytes_in", getPlaintextBytesIn());
+		exporter.counter("plaintext_bytes_out", getPlaintextBytesOut());
+		exporter.counter("ciphertext_bytes_in", getCiphertextBytesIn());
+		exporter.counter("ciphertext_bytes_out", getCiphertextBytesOut());
+		exporter.counter("records_wrapped", getRecordsWrapped());
+		exporter.counter("records_unwrapped", getRecordsUnwrapped());
+		exporter.counter("buffer_overflows", getBufferOverflows());
+		exporter.counter("buffer_underflows", getBufferUnderflows());
+		exporter.counter("buffer_expansions", getBufferExpansions());
+		exporter.counter("delegated_tasks", getDelegatedTasks());
+		exporter.counter("full_handshakes", getFullHandshakes());
+		exporter.counter("resumed_handshakes", getResumedHandshakes());
+		exporter.counter("queued_handshakes", getQueuedHandshakes());
+		exporter.counter("rejected_handshakes", getRejectedHandshakes());
+		exporter.counter("handshake_queue_wait_nanos", getHandshakeQueueWait());
+		exporter.histogram("handshake_duration_millis", getHandshakeDurationBounds(), getHandshakeDurations());
+	}
+}
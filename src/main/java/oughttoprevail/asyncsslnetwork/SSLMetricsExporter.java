@@ -0,0 +1,42 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+/**
+ * A {@link SSLMetricsExporter} receives the values of a {@link SSLMetrics} when it is exported using
+ * {@link SSLMetrics#export(SSLMetricsExporter)}, this lets the metrics be scraped into any monitoring system.
+ */
+public interface SSLMetricsExporter
+{
+	/**
+	 * Receives the current value of a counter.
+	 *
+	 * @param name is the name of the counter, for example {@code plaintext_bytes_in}
+	 * @param value is the current value of the counter
+	 */
+	void counter(String name, long value);
+	
+	/**
+	 * Receives the current buckets of a histogram.
+	 * The count at an index is the amount of values which were lower or equal to the upper bound at the same index and
+	 * higher than the previous upper bound, the last upper bound is {@link Long#MAX_VALUE}.
+	 *
+	 * @param name is the name of the histogram, for example {@code handshake_duration_millis}
+	 * @param upperBounds are the upper bounds of the buckets
+	 * @param counts are the counts of the buckets
+	 */
+	void histogram(String name, long[] upperBounds, long[] counts);
+}
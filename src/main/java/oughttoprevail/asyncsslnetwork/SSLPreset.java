@@ -0,0 +1,189 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import javax.net.ssl.SSLContext;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Presets of protocols and cipher suites ordered by performance, applied using
+ * {@link SSLEngineFactoryBuilder#preset(SSLPreset)} or {@link #createFactory(SSLContext)}.
+ * Every preset only enables authenticated key exchanges and AEAD ciphers, and has a server prefer its own cipher suites order
+ * so the order of the preset is honored whatever the client's order is.
+ * Cipher suites the {@link SSLContext} doesn't support (for example ChaCha20-Poly1305 before JDK 12) are left out.
+ */
+public enum SSLPreset
+{
+	/**
+	 * Prefers the fastest bulk cipher: AES-GCM when the CPU has AES instructions and ChaCha20-Poly1305 otherwise,
+	 * TLSv1.3 and TLSv1.2 are enabled.
+	 */
+	THROUGHPUT("TLSv1.3", "TLSv1.2"),
+	/**
+	 * Prefers the fewest round trips and the cheapest handshake: only TLSv1.3 (a one round trip handshake) is enabled,
+	 * with the same bulk cipher order as {@link #THROUGHPUT}.
+	 * The JDK already prefers the X25519 key exchange and clients offer ECDSA signatures first, so a server which has an EC
+	 * certificate signs with ECDSA which is much cheaper than RSA.
+	 */
+	LOW_LATENCY("TLSv1.3");
+	
+	/**
+	 * The TLSv1.3 AES-GCM cipher suites
+	 */
+	private static final String[] TLS13_AES = {"TLS_AES_128_GCM_SHA256", "TLS_AES_256_GCM_SHA384"};
+	/**
+	 * The TLSv1.3 ChaCha20-Poly1305 cipher suites
+	 */
+	private static final String[] TLS13_CHACHA = {"TLS_CHACHA20_POLY1305_SHA256"};
+	/**
+	 * The TLSv1.2 AES-GCM cipher suites, an ECDSA authenticated cipher suite comes before the RSA one of the same cipher
+	 * since signing with ECDSA is cheaper for a server which has both certificates
+	 */
+	private static final String[] TLS12_AES = {"TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256", "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+			"TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384", "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384"};
+	/**
+	 * The TLSv1.2 ChaCha20-Poly1305 cipher suites, ECDSA before RSA
+	 */
+	private static final String[] TLS12_CHACHA = {"TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256", "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256"};
+	/**
+	 * Whether the CPU has AES instructions the JVM uses
+	 */
+	private static final boolean AES_ACCELERATED = detectAESAcceleration();
+	
+	/**
+	 * The protocols of this preset
+	 */
+	private final String[] protocols;
+	
+	SSLPreset(String... protocols)
+	{
+		this.protocols = protocols;
+	}
+	
+	/**
+	 * @return the protocols this preset enables
+	 */
+	public String[] getProtocols()
+	{
+		return protocols.clone();
+	}
+	
+	/**
+	 * Returns the cipher suites this preset enables ordered by preference, including ones which may not be supported.
+	 *
+	 * @return the cipher suites this preset enables
+	 */
+	public String[] getCipherSuites()
+	{
+		List<String> cipherSuites = new ArrayList<>();
+		boolean tls12 = Arrays.asList(protocols).contains("TLSv1.2");
+		String[][] tls13Order = AES_ACCELERATED ? new String[][]{TLS13_AES, TLS13_CHACHA} : new String[][]{TLS13_CHACHA, TLS13_AES};
+		String[][] tls12Order = AES_ACCELERATED ? new String[][]{TLS12_AES, TLS12_CHACHA} : new String[][]{TLS12_CHACHA, TLS12_AES};
+		for(String[] group : tls13Order)
+		{
+			cipherSuites.addAll(Arrays.asList(group));
+		}
+		if(tls12)
+		{
+			for(String[] group : tls12Order)
+			{
+				cipherSuites.addAll(Arrays.asList(group));
+			}
+		}
+		return cipherSuites.toArray(new String[0]);
+	}
+	
+	/**
+	 * Returns the cipher suites this preset enables which the specified sslContext supports, ordered by preference.
+	 *
+	 * @param sslContext to check the supported cipher suites of
+	 * @return the supported cipher suites this preset enables
+	 */
+	public String[] getCipherSuites(SSLContext sslContext)
+	{
+		Set<String> supported = new HashSet<>(Arrays.asList(sslContext.getSupportedSSLParameters().getCipherSuites()));
+		List<String> cipherSuites = new ArrayList<>();
+		for(String cipherSuite : getCipherSuites())
+		{
+			if(supported.contains(cipherSuite))
+			{
+				cipherSuites.add(cipherSuite);
+			}
+		}
+		return cipherSuites.toArray(new String[0]);
+	}
+	
+	/**
+	 * Applies this preset to the specified builder.
+	 *
+	 * @param builder to apply this preset to
+	 * @param sslContext is the {@link SSLContext} of the specified builder
+	 */
+	void apply(SSLEngineFactoryBuilder builder, SSLContext sslContext)
+	{
+		builder.protocols(protocols).cipherSuites(getCipherSuites(sslContext)).useCipherSuitesOrder(true);
+	}
+	
+	/**
+	 * Creates a {@link SSLEngineFactory} of the specified sslContext with this preset.
+	 *
+	 * @param sslContext to create the {@link javax.net.ssl.SSLEngine}s with
+	 * @return the created {@link SSLEngineFactory}
+	 */
+	public SSLEngineFactory createFactory(SSLContext sslContext)
+	{
+		return SSLEngineFactoryBuilder.create(sslContext).preset(this).build();
+	}
+	
+	/**
+	 * @return whether the CPU has AES instructions the JVM uses
+	 */
+	public static boolean isAESAccelerated()
+	{
+		return AES_ACCELERATED;
+	}
+	
+	/**
+	 * Detects whether the JVM uses AES instructions, HotSpot only enables its AES intrinsics if the CPU supports them.
+	 * If the JVM isn't HotSpot then x86-64 and AArch64 are assumed to have AES instructions.
+	 *
+	 * @return whether the JVM uses AES instructions
+	 */
+	private static boolean detectAESAcceleration()
+	{
+		try
+		{
+			HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+			if(hotSpot != null)
+			{
+				return Boolean.parseBoolean(hotSpot.getVMOption("UseAESIntrinsics").getValue());
+			}
+		} catch(RuntimeException | LinkageError ignored)
+		{
+			//not HotSpot or the option doesn't exist
+		}
+		String arch = System.getProperty("os.arch", "").toLowerCase(Locale.ROOT);
+		return arch.equals("amd64") || arch.equals("x86_64") || arch.equals("aarch64");
+	}
+}
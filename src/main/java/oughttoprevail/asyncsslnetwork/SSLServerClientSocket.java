@@ -18,7 +18,7 @@ package oughttoprevail.asyncsslnetwork;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import oughttoprevail.asyncnetwork.server.ServerClientSocket;
 import oughttoprevail.asyncnetwork.util.DisconnectionType;
@@ -37,18 +37,47 @@ public class SSLServerClientSocket extends ServerClientSocket implements SSLSock
 	 * it will handle all the SSL related tasks.
 	 */
 	private SSLSocketBase sslSocketBase;
+	/**
+	 * The server of this socket
+	 */
+	private final SSLServerSocket server;
+	/**
+	 * The handshake admission state of this socket, guarded by the server's handshake admission lock
+	 */
+	SSLServerSocket.HandshakeAdmission handshakeAdmission = SSLServerSocket.HandshakeAdmission.NONE;
+	/**
+	 * The {@link System#nanoTime()} the handshake of this socket was queued at
+	 */
+	long handshakeQueuedTime;
+	/**
+	 * Whether input has arrived before the handshake has begun, written under the server's handshake admission lock
+	 */
+	volatile boolean inputArrived;
 	
 	public SSLServerClientSocket(SSLServerSocket server, SocketChannel socketChannel, int clientsIndex)
 	{
 		this(server, socketChannel, clientsIndex, new SSLWriter(server.manager().isWindowsImplementation() ? new WindowsWriter() : new ServerWriter()), new SSLReader());
 	}
 	
-	private SSLServerClientSocket(SSLServerSocket server, SocketChannel socketChannel, int clientsIndex, SSLWriter writer, SSLReader reader)
+	public SSLServerClientSocket(SSLServerSocket server, SocketChannel socketChannel, int clientsIndex, SSLWriter writer, SSLReader reader)
 	{
 		super(server, socketChannel, clientsIndex, reader, writer);
-		sslSocketBase = new SSLSocketBase(this, writer, server.getSSLContext(), false, Executors.newFixedThreadPool((int) Math.ceil(server.getThreadsCount() / 5d), r -> new Thread(r, "SSL Tasks Thread")));
+		this.server = server;
+		sslSocketBase = new SSLSocketBase(this, writer, server.getSSLEngineFactory(), false, server.getTasksExecutor(), null, -1, server.getMetrics(),
+										  server.getBufferAllocation());
 		reader.init(sslSocketBase);
-		
+		sslSocketBase.setHandshakeTimeout(server.getHandshakeTimeout(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+		sslSocketBase.setIdleTimeout(server.getIdleTimeout(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+		sslSocketBase.setCloseTimeout(server.getCloseTimeout(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+		sslSocketBase.setKeyUpdateInterval(server.getKeyUpdateInterval());
+		sslSocketBase.setReleaseIdleBuffers(server.isReleaseIdleBuffers());
+		sslSocketBase.setHandshakeExecutor(server.getHandshakeExecutor());
+		sslSocketBase.setCallbackExecutor(server.getCallbackExecutor());
+		writer.setWriteWatermarks(server.getHighWriteWatermark(), server.getLowWriteWatermark());
+		//the handshake timeout starts once accepted so a peer which never handshakes doesn't hold the connection forever
+		sslSocketBase.startHandshakeTimeout();
+		sslSocketBase.onHandshakeComplete(() -> server.handshakeFinished(this));
+		sslSocketBase.onInputBeforeHandshake(() -> server.inputArrived(this));
 	}
 	
 	/**
@@ -66,6 +95,8 @@ public class SSLServerClientSocket extends ServerClientSocket implements SSLSock
 	@Override
 	protected boolean preClose(DisconnectionType disconnectionType)
 	{
+		//a closing connection no longer holds (or waits for) a handshake slot
+		server.handshakeFinished(this);
 		if(forceClosure)
 		{
 			return true;
@@ -78,14 +109,37 @@ public class SSLServerClientSocket extends ServerClientSocket implements SSLSock
 	}
 	
 	/**
-	 * {@inheritDoc}
+	 * Begins the handshake process, the first handshake goes through the server's handshake admission
+	 * ({@link SSLServerSocket#setMaxHandshakes(int)}) so it may wait in the server's handshake queue or be rejected.
 	 */
 	@Override
 	public void beginHandshake()
+	{
+		if(hasHandshakeBegun())
+		{
+			sslSocketBase.beginHandshake();
+			return;
+		}
+		server.admitHandshake(this);
+	}
+	
+	/**
+	 * Begins the handshake once it was admitted by the server.
+	 */
+	void beginAdmittedHandshake()
 	{
 		sslSocketBase.beginHandshake();
 	}
 	
+	/**
+	 * Begins the handshake on this socket's handshake executor once it was admitted from the server's handshake queue,
+	 * so it doesn't run on the thread which freed the slot.
+	 */
+	void dispatchAdmittedHandshake()
+	{
+		sslSocketBase.dispatchBeginHandshake();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -113,6 +167,33 @@ public class SSLServerClientSocket extends ServerClientSocket implements SSLSock
 		return sslSocketBase.isHandshakeComplete();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isHandshaking()
+	{
+		return sslSocketBase.isHandshaking();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SSLConnectionState getConnectionState()
+	{
+		return sslSocketBase.getConnectionState();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SSLMetrics getMetrics()
+	{
+		return sslSocketBase.getMetrics();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
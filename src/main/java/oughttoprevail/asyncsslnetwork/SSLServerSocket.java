@@ -16,14 +16,26 @@ limitations under the License.
 package oughttoprevail.asyncsslnetwork;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import java.net.SocketAddress;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import oughttoprevail.asyncnetwork.server.ServerClientSocket;
 import oughttoprevail.asyncnetwork.server.ServerSocket;
 import oughttoprevail.asyncnetwork.util.Consumer;
 import oughttoprevail.asyncnetwork.util.SelectorImplementation;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBufferAllocation;
+import oughttoprevail.asyncsslnetwork.rw.SSLWriter;
 
 /**
  * A {@link SSLServerSocket} is a {@link ServerSocket} which creates {@link SSLServerClientSocket} to support SSL operations.
@@ -31,13 +43,153 @@ import oughttoprevail.asyncnetwork.util.SelectorImplementation;
 public class SSLServerSocket extends ServerSocket
 {
 	/**
-	 * The {@link SSLContext} which will create all {@link javax.net.ssl.SSLEngine}'s.
+	 * The {@link SSLEngineFactory} which will create all {@link javax.net.ssl.SSLEngine}'s.
+	 */
+	private final SSLEngineFactory engineFactory;
+	/**
+	 * Whether the buffers of this server's {@link SSLServerClientSocket}s are heap or direct
+	 */
+	private SSLBufferAllocation bufferAllocation = SSLSocketBase.DEFAULT_BUFFER_ALLOCATION;
+	/**
+	 * The {@link SSLContext} of the {@link #engineFactory}
 	 */
 	private final SSLContext sslContext;
+	/**
+	 * The {@link ExecutorService} shared by all of this server's {@link SSLServerClientSocket}s to execute
+	 * {@link javax.net.ssl.SSLEngine#getDelegatedTask()} tasks, if {@code null} tasks are executed in the calling thread
+	 */
+	private final ExecutorService tasksExecutor;
+	/**
+	 * Whether the {@link #tasksExecutor} was created by this server and should be shut down when this server closes
+	 */
+	private final boolean ownsTasksExecutor;
+	/**
+	 * The {@link SSLMetrics} which aggregates the {@link SSLMetrics} of all of this server's {@link SSLServerClientSocket}s
+	 */
+	private final SSLMetrics metrics = new SSLMetrics();
+	/**
+	 * The default handshake timeout (in nanoseconds) of this server's {@link SSLServerClientSocket}s while {@link #maxHandshakes}
+	 * is set, so a peer which never completes its handshake doesn't hold its slot forever
+	 */
+	public static final long DEFAULT_ADMITTED_HANDSHAKE_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+	/**
+	 * The handshake timeout (in nanoseconds) of this server's {@link SSLServerClientSocket}s, {@code -1} if it wasn't set
+	 */
+	private volatile long handshakeTimeout = -1;
+	/**
+	 * The idle timeout (in nanoseconds) of this server's {@link SSLServerClientSocket}s
+	 */
+	private volatile long idleTimeout;
+	/**
+	 * The close timeout (in nanoseconds) of this server's {@link SSLServerClientSocket}s
+	 */
+	private volatile long closeTimeout = SSLSocketBase.DEFAULT_CLOSE_TIMEOUT;
+	/**
+	 * The KeyUpdate interval (in plaintext bytes) of this server's {@link SSLServerClientSocket}s
+	 */
+	private volatile long keyUpdateInterval;
+	/**
+	 * The high write watermark of this server's {@link SSLServerClientSocket}s
+	 */
+	private volatile long highWriteWatermark = SSLWriter.DEFAULT_HIGH_WATERMARK;
+	/**
+	 * The low write watermark of this server's {@link SSLServerClientSocket}s
+	 */
+	private volatile long lowWriteWatermark = SSLWriter.DEFAULT_LOW_WATERMARK;
+	/**
+	 * Whether this server's {@link SSLServerClientSocket}s release their buffers while they have nothing buffered
+	 */
+	private volatile boolean releaseIdleBuffers;
+	/**
+	 * The {@link Executor} which runs the handshake steps of this server's {@link SSLServerClientSocket}s or {@code null}
+	 * if they run on the reading threads
+	 */
+	private volatile Executor handshakeExecutor;
+	/**
+	 * The {@link Executor} which runs the handshake complete callbacks of this server's {@link SSLServerClientSocket}s or
+	 * {@code null} if they run on the thread which completed the handshake
+	 */
+	private volatile Executor callbackExecutor;
+	/**
+	 * The default {@link #handshakeQueueCapacity}
+	 */
+	public static final int DEFAULT_HANDSHAKE_QUEUE_CAPACITY = 1024;
+	/**
+	 * The maximum amount of in flight handshakes, {@code 0} means no limit
+	 */
+	private volatile int maxHandshakes;
+	/**
+	 * The maximum amount of handshakes which can wait in the {@link #queuedHandshakes} before more are rejected
+	 */
+	private volatile int handshakeQueueCapacity = DEFAULT_HANDSHAKE_QUEUE_CAPACITY;
+	/**
+	 * The lock of the handshake admission, guards the {@link #queuedHandshakes} and {@link #inFlightHandshakes}
+	 */
+	private final Object handshakeAdmissionLock = new Object();
+	/**
+	 * The handshakes waiting to begin, first in first out
+	 */
+	private final Queue<SSLServerClientSocket> queuedHandshakes = new ArrayDeque<>();
+	/**
+	 * The amount of handshakes which have begun but have yet to complete
+	 */
+	private int inFlightHandshakes;
+	
+	/**
+	 * The handshake admission state of a {@link SSLServerClientSocket}
+	 */
+	enum HandshakeAdmission
+	{
+		/**
+		 * The handshake has yet to be requested
+		 */
+		NONE,
+		/**
+		 * The handshake was requested before the peer has sent anything, it is admitted once input arrives
+		 */
+		AWAITING_INPUT,
+		/**
+		 * The handshake is waiting in the handshake queue
+		 */
+		QUEUED,
+		/**
+		 * The handshake was admitted and is in flight
+		 */
+		ADMITTED,
+		/**
+		 * The handshake has completed, was rejected or the connection has closed
+		 */
+		DONE
+	}
 	
 	public SSLServerSocket(SSLContext sslContext)
 	{
-		this.sslContext = sslContext;
+		this(SSLEngineFactory.of(sslContext));
+	}
+	
+	/**
+	 * Creates a {@link SSLServerSocket} whose {@link javax.net.ssl.SSLEngine}s are created by the specified engineFactory.
+	 *
+	 * @param engineFactory to create the {@link javax.net.ssl.SSLEngine}s with
+	 */
+	public SSLServerSocket(SSLEngineFactory engineFactory)
+	{
+		this.engineFactory = engineFactory;
+		this.sslContext = engineFactory.getSSLContext();
+		this.tasksExecutor = createTasksExecutor(getThreadsCount());
+		this.ownsTasksExecutor = true;
+	}
+	
+	/**
+	 * Creates a {@link SSLServerSocket} whose {@link SSLServerClientSocket}s' buffers are allocated by the specified bufferAllocation.
+	 *
+	 * @param engineFactory to create the {@link javax.net.ssl.SSLEngine}s with
+	 * @param bufferAllocation whether the buffers are heap or direct
+	 */
+	public SSLServerSocket(SSLEngineFactory engineFactory, SSLBufferAllocation bufferAllocation)
+	{
+		this(engineFactory);
+		this.bufferAllocation = bufferAllocation;
 	}
 	
 	public SSLServerSocket(int bufferSize,
@@ -46,9 +198,104 @@ public class SSLServerSocket extends ServerSocket
 						   int threadsCount,
 						   SelectorImplementation implementation,
 						   SSLContext sslContext)
+	{
+		this(bufferSize, selectTimeout, selectArraySize, threadsCount, implementation, SSLEngineFactory.of(sslContext));
+	}
+	
+	public SSLServerSocket(int bufferSize,
+						   int selectTimeout,
+						   int selectArraySize,
+						   int threadsCount,
+						   SelectorImplementation implementation,
+						   SSLEngineFactory engineFactory)
+	{
+		super(bufferSize, selectTimeout, selectArraySize, threadsCount, implementation);
+		this.engineFactory = engineFactory;
+		this.sslContext = engineFactory.getSSLContext();
+		this.tasksExecutor = createTasksExecutor(threadsCount);
+		this.ownsTasksExecutor = true;
+	}
+	
+	/**
+	 * Creates a {@link SSLServerSocket} with the specified tasksExecutor as the {@link ExecutorService} which is shared
+	 * by all {@link SSLServerClientSocket}s to execute {@link javax.net.ssl.SSLEngine#getDelegatedTask()} tasks.
+	 * The specified tasksExecutor won't be shut down when this server closes.
+	 *
+	 * @param tasksExecutor to execute the SSL tasks with, if {@code null} tasks will be executed in the calling thread
+	 */
+	public SSLServerSocket(int bufferSize,
+						   int selectTimeout,
+						   int selectArraySize,
+						   int threadsCount,
+						   SelectorImplementation implementation,
+						   SSLContext sslContext,
+						   ExecutorService tasksExecutor)
+	{
+		this(bufferSize, selectTimeout, selectArraySize, threadsCount, implementation, SSLEngineFactory.of(sslContext), tasksExecutor);
+	}
+	
+	/**
+	 * Creates a {@link SSLServerSocket} whose {@link javax.net.ssl.SSLEngine}s are created by the specified engineFactory
+	 * with the specified tasksExecutor as the {@link ExecutorService} which is shared by all {@link SSLServerClientSocket}s to execute
+	 * {@link javax.net.ssl.SSLEngine#getDelegatedTask()} tasks.
+	 * The specified tasksExecutor won't be shut down when this server closes.
+	 *
+	 * @param engineFactory to create the {@link javax.net.ssl.SSLEngine}s with
+	 * @param tasksExecutor to execute the SSL tasks with, if {@code null} tasks will be executed in the calling thread
+	 */
+	public SSLServerSocket(int bufferSize,
+						   int selectTimeout,
+						   int selectArraySize,
+						   int threadsCount,
+						   SelectorImplementation implementation,
+						   SSLEngineFactory engineFactory,
+						   ExecutorService tasksExecutor)
 	{
 		super(bufferSize, selectTimeout, selectArraySize, threadsCount, implementation);
-		this.sslContext = sslContext;
+		this.engineFactory = engineFactory;
+		this.sslContext = engineFactory.getSSLContext();
+		this.tasksExecutor = tasksExecutor;
+		this.ownsTasksExecutor = false;
+	}
+	
+	/**
+	 * Creates a {@link SSLServerSocket} whose {@link javax.net.ssl.SSLEngine}s are created by the specified engineFactory
+	 * with the specified tasksExecutor, and whose {@link SSLServerClientSocket}s' buffers are allocated by the specified bufferAllocation.
+	 * The specified tasksExecutor won't be shut down when this server closes.
+	 *
+	 * @param engineFactory to create the {@link javax.net.ssl.SSLEngine}s with
+	 * @param tasksExecutor to execute the SSL tasks with, if {@code null} tasks will be executed in the calling thread
+	 * @param bufferAllocation whether the buffers are heap or direct
+	 */
+	public SSLServerSocket(int bufferSize,
+						   int selectTimeout,
+						   int selectArraySize,
+						   int threadsCount,
+						   SelectorImplementation implementation,
+						   SSLEngineFactory engineFactory,
+						   ExecutorService tasksExecutor,
+						   SSLBufferAllocation bufferAllocation)
+	{
+		this(bufferSize, selectTimeout, selectArraySize, threadsCount, implementation, engineFactory, tasksExecutor);
+		this.bufferAllocation = bufferAllocation;
+	}
+	
+	/**
+	 * Creates the default tasks {@link ExecutorService}, a fixed thread pool with a fifth of the specified threadsCount
+	 * (at least one thread) of daemon threads.
+	 *
+	 * @param threadsCount is the amount of threads the server is using
+	 * @return the default tasks {@link ExecutorService}
+	 */
+	private static ExecutorService createTasksExecutor(int threadsCount)
+	{
+		AtomicInteger threadIndex = new AtomicInteger();
+		return Executors.newFixedThreadPool(Math.max(1, (int) Math.ceil(threadsCount / 5d)), r ->
+		{
+			Thread thread = new Thread(r, "SSL Tasks Thread-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 	
 	/**
@@ -84,6 +331,510 @@ public class SSLServerSocket extends ServerSocket
 		return sslContext;
 	}
 	
+	/**
+	 * @return the {@link SSLEngineFactory} which creates the {@link javax.net.ssl.SSLEngine}s of the server's clients
+	 */
+	public SSLEngineFactory getSSLEngineFactory()
+	{
+		return engineFactory;
+	}
+	
+	/**
+	 * @return the {@link ExecutorService} shared by all of this server's {@link SSLServerClientSocket}s to execute
+	 * {@link javax.net.ssl.SSLEngine#getDelegatedTask()} tasks, possibly {@code null} if tasks are executed in the calling thread
+	 */
+	public ExecutorService getTasksExecutor()
+	{
+		return tasksExecutor;
+	}
+	
+	/**
+	 * Sets the maximum amount of sessions the server's session cache holds for resumption.
+	 *
+	 * @param sessionCacheSize is the maximum amount of cached sessions, {@code 0} means no limit
+	 */
+	public void setSessionCacheSize(int sessionCacheSize)
+	{
+		getServerSessionContext().setSessionCacheSize(sessionCacheSize);
+	}
+	
+	/**
+	 * @return the maximum amount of sessions the server's session cache holds for resumption, {@code 0} means no limit
+	 */
+	public int getSessionCacheSize()
+	{
+		return getServerSessionContext().getSessionCacheSize();
+	}
+	
+	/**
+	 * Sets the time a session stays in the server's session cache and can be resumed.
+	 *
+	 * @param sessionTimeout is the time in seconds a session can be resumed, {@code 0} means no limit
+	 */
+	public void setSessionTimeout(int sessionTimeout)
+	{
+		getServerSessionContext().setSessionTimeout(sessionTimeout);
+	}
+	
+	/**
+	 * @return the time in seconds a session stays in the server's session cache and can be resumed, {@code 0} means no limit
+	 */
+	public int getSessionTimeout()
+	{
+		return getServerSessionContext().getSessionTimeout();
+	}
+	
+	/**
+	 * @return the session context of the server's {@link SSLContext} which holds the session cache
+	 */
+	private SSLSessionContext getServerSessionContext()
+	{
+		return sslContext.getServerSessionContext();
+	}
+	
+	/**
+	 * @return the {@link SSLMetrics} which aggregates the {@link SSLMetrics} of all of this server's {@link SSLServerClientSocket}s,
+	 * including the full and resumed handshakes counts
+	 */
+	public SSLMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * Sets the maximum time from accepting a connection until its handshake has completed (and the maximum time of any later handshake),
+	 * once passed the connection is forced to close.
+	 * This keeps peers which never complete a handshake from holding a connection forever.
+	 * Applies to connections accepted after this was invoked. There is no limit by default,
+	 * unless {@link #setMaxHandshakes(int)} is set in which case it is {@link #DEFAULT_ADMITTED_HANDSHAKE_TIMEOUT}.
+	 *
+	 * @param timeout is the maximum time a handshake may take, {@code 0} means no limit
+	 * @param unit is the {@link TimeUnit} of the specified timeout
+	 */
+	public void setHandshakeTimeout(long timeout, TimeUnit unit)
+	{
+		this.handshakeTimeout = SSLSocketBase.toTimeoutNanos(timeout, unit);
+	}
+	
+	/**
+	 * @param unit is the {@link TimeUnit} to return the timeout in
+	 * @return the maximum time a handshake may take, {@code 0} means no limit
+	 */
+	public long getHandshakeTimeout(TimeUnit unit)
+	{
+		long timeout = handshakeTimeout;
+		if(timeout < 0)
+		{
+			timeout = maxHandshakes > 0 ? DEFAULT_ADMITTED_HANDSHAKE_TIMEOUT : SSLSocketBase.DEFAULT_HANDSHAKE_TIMEOUT;
+		}
+		return unit.convert(timeout, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Sets the maximum time an established connection may have no reads and writes, once passed the connection is forced to close.
+	 * Applies to connections accepted after this was invoked. There is no limit by default.
+	 *
+	 * @param timeout is the maximum time a connection may be idle, {@code 0} means no limit
+	 * @param unit is the {@link TimeUnit} of the specified timeout
+	 */
+	public void setIdleTimeout(long timeout, TimeUnit unit)
+	{
+		this.idleTimeout = SSLSocketBase.toTimeoutNanos(timeout, unit);
+	}
+	
+	/**
+	 * @param unit is the {@link TimeUnit} to return the timeout in
+	 * @return the maximum time an established connection may be idle, {@code 0} means no limit
+	 */
+	public long getIdleTimeout(TimeUnit unit)
+	{
+		return unit.convert(idleTimeout, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Sets the maximum time to wait for the peer's close_notify once a close was initiated, once passed the connection is forced to close.
+	 * Applies to connections accepted after this was invoked. There is no limit by default.
+	 *
+	 * @param timeout is the maximum time to wait for the peer's close_notify, {@code 0} means no limit
+	 * @param unit is the {@link TimeUnit} of the specified timeout
+	 */
+	public void setCloseTimeout(long timeout, TimeUnit unit)
+	{
+		this.closeTimeout = SSLSocketBase.toTimeoutNanos(timeout, unit);
+	}
+	
+	/**
+	 * @param unit is the {@link TimeUnit} to return the timeout in
+	 * @return the maximum time to wait for the peer's close_notify, {@code 0} means no limit
+	 */
+	public long getCloseTimeout(TimeUnit unit)
+	{
+		return unit.convert(closeTimeout, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Sets the amount of plaintext bytes a connection encrypts before replacing its keys with a TLSv1.3 KeyUpdate.
+	 * Applies to connections accepted after this was invoked.
+	 *
+	 * @param keyUpdateInterval is the amount of plaintext bytes between KeyUpdates, {@code 0} leaves it to the JDK's key limits
+	 */
+	public void setKeyUpdateInterval(long keyUpdateInterval)
+	{
+		if(keyUpdateInterval < 0)
+		{
+			throw new IllegalArgumentException("KeyUpdate interval cannot be negative!");
+		}
+		this.keyUpdateInterval = keyUpdateInterval;
+	}
+	
+	/**
+	 * @return the amount of plaintext bytes between KeyUpdates, {@code 0} if it is left to the JDK's key limits
+	 */
+	public long getKeyUpdateInterval()
+	{
+		return keyUpdateInterval;
+	}
+	
+	/**
+	 * Sets whether this server's connections release their buffers while they have nothing buffered,
+	 * read {@link SSLSocketBase#setReleaseIdleBuffers(boolean)}.
+	 * Applies to connections accepted after this was invoked.
+	 *
+	 * @param releaseIdleBuffers whether buffers should be released while a connection has nothing buffered
+	 */
+	public void setReleaseIdleBuffers(boolean releaseIdleBuffers)
+	{
+		this.releaseIdleBuffers = releaseIdleBuffers;
+	}
+	
+	/**
+	 * @return whether this server's connections release their buffers while they have nothing buffered
+	 */
+	public boolean isReleaseIdleBuffers()
+	{
+		return releaseIdleBuffers;
+	}
+	
+	/**
+	 * Sets the {@link Executor} which runs the handshake steps of this server's connections instead of the selector threads,
+	 * read {@link SSLSocketBase#setHandshakeExecutor(Executor)}.
+	 * Applies to connections accepted after this was invoked.
+	 *
+	 * @param handshakeExecutor to run the handshake steps on or {@code null} to run them on the selector threads,
+	 * {@link SSLSocketBase#getSharedHandshakeExecutor()} is a thread pool sized by the amount of processors
+	 */
+	public void setHandshakeExecutor(Executor handshakeExecutor)
+	{
+		this.handshakeExecutor = handshakeExecutor;
+	}
+	
+	/**
+	 * Returns the {@link Executor} which runs the handshake steps of this server's connections.
+	 * While {@link #setMaxHandshakes(int)} is set and no handshake executor was set this is
+	 * {@link SSLSocketBase#getSharedHandshakeExecutor()}, so a queued handshake begins on its connection's own handshake executor
+	 * rather than on the thread which freed its slot.
+	 *
+	 * @return the {@link Executor} which runs the handshake steps of this server's connections or {@code null} if they run on the
+	 * selector threads
+	 */
+	public Executor getHandshakeExecutor()
+	{
+		Executor handshakeExecutor = this.handshakeExecutor;
+		if(handshakeExecutor == null && maxHandshakes > 0)
+		{
+			return SSLSocketBase.getSharedHandshakeExecutor();
+		}
+		return handshakeExecutor;
+	}
+	
+	/**
+	 * Sets the {@link Executor} which runs the handshake complete callbacks of this server's connections, read
+	 * {@link SSLSocketBase#setCallbackExecutor(Executor)}.
+	 * Applies to connections accepted after this was invoked.
+	 *
+	 * @param callbackExecutor to run the callbacks on or {@code null} to run them on the thread which completed the handshake,
+	 * {@link SSLExecutors#newThreadPerTaskExecutor(String)} runs them on virtual threads on Java 21
+	 */
+	public void setCallbackExecutor(Executor callbackExecutor)
+	{
+		this.callbackExecutor = callbackExecutor;
+	}
+	
+	/**
+	 * @return the {@link Executor} which runs the handshake complete callbacks of this server's connections or {@code null}
+	 * if they run on the thread which completed the handshake
+	 */
+	public Executor getCallbackExecutor()
+	{
+		return callbackExecutor;
+	}
+	
+	/**
+	 * @return whether the buffers of this server's {@link SSLServerClientSocket}s are heap or direct
+	 */
+	public SSLBufferAllocation getBufferAllocation()
+	{
+		return bufferAllocation;
+	}
+	
+	/**
+	 * Sets the write watermarks of this server's connections, read {@link SSLWriter#setWriteWatermarks(long, long)}.
+	 * Applies to connections accepted after this was invoked.
+	 *
+	 * @param highWatermark is the amount of pending ciphertext bytes at which a connection stops being writable, {@code 0} disables the watermarks
+	 * @param lowWatermark is the amount of pending ciphertext bytes at which a connection becomes writable again
+	 */
+	public void setWriteWatermarks(long highWatermark, long lowWatermark)
+	{
+		if(highWatermark < 0 || lowWatermark < 0)
+		{
+			throw new IllegalArgumentException("Watermarks cannot be negative!");
+		}
+		if(highWatermark != 0 && lowWatermark > highWatermark)
+		{
+			throw new IllegalArgumentException("Low watermark cannot be above the high watermark!");
+		}
+		this.highWriteWatermark = highWatermark;
+		this.lowWriteWatermark = lowWatermark;
+	}
+	
+	/**
+	 * @return the high write watermark of this server's connections, {@code 0} if the watermarks are disabled
+	 */
+	public long getHighWriteWatermark()
+	{
+		return highWriteWatermark;
+	}
+	
+	/**
+	 * @return the low write watermark of this server's connections
+	 */
+	public long getLowWriteWatermark()
+	{
+		return lowWriteWatermark;
+	}
+	
+	/**
+	 * Sets the maximum amount of handshakes which can be in flight (between {@link SSLServerClientSocket#beginHandshake()} and its completion)
+	 * at once, handshakes beyond it wait in a first in first out queue and begin once others complete.
+	 * This keeps CPU available for established connections when many connections handshake at once, for example when clients
+	 * reconnect after a restart.
+	 * A connection only takes a slot once its peer has sent something, so idle connections can't fill the slots,
+	 * and while this is set the handshakes run on {@link #getHandshakeExecutor()} and time out after {@link #getHandshakeTimeout(TimeUnit)}
+	 * (unless they were set otherwise).
+	 *
+	 * @param maxHandshakes is the maximum amount of in flight handshakes, {@code 0} means no limit
+	 */
+	public void setMaxHandshakes(int maxHandshakes)
+	{
+		if(maxHandshakes < 0)
+		{
+			throw new IllegalArgumentException("Max handshakes cannot be negative!");
+		}
+		this.maxHandshakes = maxHandshakes;
+	}
+	
+	/**
+	 * @return the maximum amount of in flight handshakes, {@code 0} means no limit
+	 */
+	public int getMaxHandshakes()
+	{
+		return maxHandshakes;
+	}
+	
+	/**
+	 * Sets the maximum amount of handshakes which can wait for {@link #setMaxHandshakes(int)}, once full handshakes are rejected
+	 * by forcing their connection to close.
+	 *
+	 * @param handshakeQueueCapacity is the maximum amount of waiting handshakes, {@code 0} rejects any handshake beyond the maximum
+	 */
+	public void setHandshakeQueueCapacity(int handshakeQueueCapacity)
+	{
+		if(handshakeQueueCapacity < 0)
+		{
+			throw new IllegalArgumentException("Handshake queue capacity cannot be negative!");
+		}
+		this.handshakeQueueCapacity = handshakeQueueCapacity;
+	}
+	
+	/**
+	 * @return the maximum amount of handshakes which can wait for {@link #setMaxHandshakes(int)}
+	 */
+	public int getHandshakeQueueCapacity()
+	{
+		return handshakeQueueCapacity;
+	}
+	
+	/**
+	 * @return the amount of handshakes which have begun but have yet to complete
+	 */
+	public int getInFlightHandshakes()
+	{
+		synchronized(handshakeAdmissionLock)
+		{
+			return inFlightHandshakes;
+		}
+	}
+	
+	/**
+	 * @return the amount of handshakes currently waiting in the handshake queue
+	 */
+	public int getHandshakeQueueDepth()
+	{
+		synchronized(handshakeAdmissionLock)
+		{
+			return queuedHandshakes.size();
+		}
+	}
+	
+	/**
+	 * Begins the handshake of the specified socket if there are less than {@link #getMaxHandshakes()} in flight handshakes,
+	 * else the handshake is queued or if the queue is full it is rejected by forcing the specified socket to close.
+	 *
+	 * @param socket which requests to begin a handshake
+	 */
+	void admitHandshake(SSLServerClientSocket socket)
+	{
+		int max = maxHandshakes;
+		boolean rejected;
+		synchronized(handshakeAdmissionLock)
+		{
+			if(socket.handshakeAdmission != HandshakeAdmission.NONE)
+			{
+				return;
+			}
+			if(max > 0 && !socket.inputArrived)
+			{
+				//a connection whose peer hasn't sent anything doesn't take a slot, it is admitted once input arrives
+				socket.handshakeAdmission = HandshakeAdmission.AWAITING_INPUT;
+				return;
+			}
+			if(max > 0 && inFlightHandshakes >= max)
+			{
+				if(queuedHandshakes.size() < handshakeQueueCapacity)
+				{
+					socket.handshakeAdmission = HandshakeAdmission.QUEUED;
+					socket.handshakeQueuedTime = System.nanoTime();
+					queuedHandshakes.offer(socket);
+					metrics.recordHandshakeQueued();
+					return;
+				}
+				socket.handshakeAdmission = HandshakeAdmission.DONE;
+				rejected = true;
+			} else
+			{
+				socket.handshakeAdmission = HandshakeAdmission.ADMITTED;
+				inFlightHandshakes++;
+				rejected = false;
+			}
+		}
+		if(rejected)
+		{
+			metrics.recordHandshakeRejected();
+			socket.forceClosure();
+			return;
+		}
+		socket.beginAdmittedHandshake();
+	}
+	
+	/**
+	 * Invoked by the reading thread of the specified socket once input has arrived before its handshake has begun,
+	 * admits the handshake if it was waiting for input.
+	 *
+	 * @param socket whose input has arrived
+	 */
+	void inputArrived(SSLServerClientSocket socket)
+	{
+		if(socket.inputArrived)
+		{
+			return;
+		}
+		synchronized(handshakeAdmissionLock)
+		{
+			socket.inputArrived = true;
+			if(socket.handshakeAdmission != HandshakeAdmission.AWAITING_INPUT)
+			{
+				return;
+			}
+			socket.handshakeAdmission = HandshakeAdmission.NONE;
+		}
+		admitHandshake(socket);
+	}
+	
+	/**
+	 * Invoked once the handshake of the specified socket has completed or the specified socket is closing,
+	 * frees its in flight handshake (or removes it from the queue) and begins queued handshakes which can now be admitted,
+	 * each on its own handshake executor.
+	 *
+	 * @param socket whose handshake has finished
+	 */
+	void handshakeFinished(SSLServerClientSocket socket)
+	{
+		int max = maxHandshakes;
+		List<SSLServerClientSocket> admitted = null;
+		synchronized(handshakeAdmissionLock)
+		{
+			switch(socket.handshakeAdmission)
+			{
+				case AWAITING_INPUT:
+				{
+					socket.handshakeAdmission = HandshakeAdmission.DONE;
+					return;
+				}
+				case QUEUED:
+				{
+					queuedHandshakes.remove(socket);
+					socket.handshakeAdmission = HandshakeAdmission.DONE;
+					return;
+				}
+				case ADMITTED:
+				{
+					socket.handshakeAdmission = HandshakeAdmission.DONE;
+					inFlightHandshakes--;
+					break;
+				}
+				default:
+				{
+					return;
+				}
+			}
+			while(!queuedHandshakes.isEmpty() && (max <= 0 || inFlightHandshakes < max))
+			{
+				SSLServerClientSocket next = queuedHandshakes.poll();
+				next.handshakeAdmission = HandshakeAdmission.ADMITTED;
+				inFlightHandshakes++;
+				if(admitted == null)
+				{
+					admitted = new ArrayList<>();
+				}
+				admitted.add(next);
+			}
+		}
+		if(admitted == null)
+		{
+			return;
+		}
+		long now = System.nanoTime();
+		for(SSLServerClientSocket next : admitted)
+		{
+			metrics.recordHandshakeQueueWait(now - next.handshakeQueuedTime);
+			next.dispatchAdmittedHandshake();
+		}
+	}
+	
+	/**
+	 * Closes the server and shuts down the {@link #tasksExecutor} if it was created by this server.
+	 */
+	@Override
+	public void close()
+	{
+		super.close();
+		if(ownsTasksExecutor)
+		{
+			tasksExecutor.shutdown();
+		}
+	}
+	
 	@Override
 	protected ServerClientSocket createServerClientSocket(SocketChannel socketChannel, int clientsIndex)
 	{
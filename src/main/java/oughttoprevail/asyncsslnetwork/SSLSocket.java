@@ -17,7 +17,10 @@ package oughttoprevail.asyncsslnetwork;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
 
 import oughttoprevail.asyncnetwork.Socket;
 import oughttoprevail.asyncnetwork.util.Consumer;
@@ -31,6 +34,8 @@ public interface SSLSocket
 	 * Begins the handshake process in which information will be transferred back and forth until
 	 * a authentication and an agreed upon secret key have been established.
 	 * Also sets {@link #hasHandshakeBegun()} to return true.
+	 * If the connection is already established with TLSv1.3 (which has no renegotiation) a KeyUpdate is sent instead
+	 * and the connection stays established.
 	 */
 	void beginHandshake();
 	
@@ -67,6 +72,22 @@ public interface SSLSocket
 		return hasHandshakeBegun() && !isHandshakeComplete();
 	}
 	
+	/**
+	 * @return the current {@link SSLConnectionState} of the socket
+	 */
+	default SSLConnectionState getConnectionState()
+	{
+		return getSSLSocketBase().getConnectionState();
+	}
+	
+	/**
+	 * @return the {@link SSLMetrics} of the socket
+	 */
+	default SSLMetrics getMetrics()
+	{
+		return getSSLSocketBase().getMetrics();
+	}
+	
 	/**
 	 * @return the socket's {@link SSLEngine}
 	 */
@@ -82,6 +103,62 @@ public interface SSLSocket
 	 */
 	SSLSocketBase getSSLSocketBase();
 	
+	/**
+	 * Transfers the specified count of bytes of the specified fileChannel starting at the specified position.
+	 * The file is encrypted record by record through a small fixed ring of buffers, so transferring a file of any size
+	 * uses the same amount of memory.
+	 * Other writes shouldn't be made until the specified onTransferFinished is invoked.
+	 *
+	 * @param fileChannel to read from
+	 * @param position is the file position to start reading from
+	 * @param count is the amount of bytes to transfer
+	 * @param onTransferFinished to invoke once every byte has been written (possibly {@code null})
+	 */
+	default void transferFrom(FileChannel fileChannel, long position, long count, Runnable onTransferFinished)
+	{
+		getSSLSocketBase().transferFrom(fileChannel, position, count, onTransferFinished);
+	}
+	
+	/**
+	 * Same as {@link #transferFrom(FileChannel, long, long, Runnable)} but the specified onTransferFailed is invoked
+	 * if reading the file fails or the connection closes before the transfer has finished.
+	 *
+	 * @param fileChannel to read from
+	 * @param position is the file position to start reading from
+	 * @param count is the amount of bytes to transfer
+	 * @param onTransferFinished to invoke once every byte has been written (possibly {@code null})
+	 * @param onTransferFailed to invoke if the transfer failed (possibly {@code null})
+	 */
+	default void transferFrom(FileChannel fileChannel, long position, long count, Runnable onTransferFinished,
+							  Consumer<IOException> onTransferFailed)
+	{
+		getSSLSocketBase().transferFrom(fileChannel, position, count, onTransferFinished, onTransferFailed);
+	}
+	
+	/**
+	 * Blocks until the first handshake has completed or the connection is closing.
+	 *
+	 * @return whether the handshake has completed, {@code false} if the connection closed first
+	 * @throws InterruptedException if the current thread was interrupted while waiting
+	 */
+	default boolean awaitHandshake() throws InterruptedException
+	{
+		return getSSLSocketBase().awaitHandshake();
+	}
+	
+	/**
+	 * Blocks until the first handshake has completed, the connection is closing or the specified timeout has elapsed.
+	 *
+	 * @param timeout is the maximum time to wait
+	 * @param unit is the {@link TimeUnit} of the specified timeout
+	 * @return whether the handshake has completed, {@code false} if the connection closed first or the timeout elapsed
+	 * @throws InterruptedException if the current thread was interrupted while waiting
+	 */
+	default boolean awaitHandshake(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		return getSSLSocketBase().awaitHandshake(timeout, unit);
+	}
+	
 	/**
 	 * Forces the {@link Socket} to close.
 	 *
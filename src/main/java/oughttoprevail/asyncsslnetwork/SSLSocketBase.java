@@ -15,22 +15,41 @@ limitations under the License.
 */
 package oughttoprevail.asyncsslnetwork;
 
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import oughttoprevail.asyncnetwork.Socket;
-import oughttoprevail.asyncnetwork.pool.PooledByteBuffer;
+import oughttoprevail.asyncnetwork.util.Consumer;
 import oughttoprevail.asyncnetwork.util.DisconnectionType;
 import oughttoprevail.asyncnetwork.util.Validator;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBufferAllocation;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBufferCache;
 import oughttoprevail.asyncsslnetwork.rw.SSLWriter;
+import oughttoprevail.asyncsslnetwork.timer.HashedWheelTimer;
+import oughttoprevail.asyncsslnetwork.timer.Timeout;
 
 /**
  * {@link SSLSocketBase} is the control for the SSL operations.
@@ -46,162 +65,1058 @@ public class SSLSocketBase implements SSLSocket
 	 */
 	private final SSLWriter writer;
 	/**
-	 * The SSLContext used to create the {@link #sslEngine}
+	 * The {@link SSLEngineFactory} used to create the {@link #sslEngine}
 	 */
-	private final SSLContext sslContext;
+	private final SSLEngineFactory engineFactory;
 	/**
-	 * The {@link SSLEngine} which will establish an SSL connection
+	 * The {@link SSLEngine} which will establish an SSL connection,
+	 * it may be replaced by {@link #setPeer(String, int)} until the handshake has begun
 	 */
-	private final SSLEngine sslEngine;
+	private volatile SSLEngine sslEngine;
+	/**
+	 * Whether the {@link #sslEngine} is in client mode
+	 */
+	private final boolean client;
 	/**
 	 * The {@link ExecutorService} which will be used when the {@link #sslEngine} requests to execute a task
 	 */
 	private final ExecutorService executor;
 	/**
-	 * Whether the handshake has begun
+	 * The {@link SSLConnectionState} of this connection, it is only changed using compare and set
+	 * so it can be read without locking
+	 */
+	private final AtomicReference<SSLConnectionState> state = new AtomicReference<>(SSLConnectionState.IDLE);
+	/**
+	 * The time (in milliseconds) the latest handshake has begun
+	 */
+	private volatile long handshakeBeginTime;
+	/**
+	 * The {@link System#nanoTime()} the latest handshake has begun, used to measure the handshake duration
+	 */
+	private volatile long handshakeBeginNanos;
+	/**
+	 * The {@link SSLMetrics} of this connection
+	 */
+	private final SSLMetrics metrics;
+	/**
+	 * The amount of delegated tasks given to the {@link #executor} which have yet to finish,
+	 * while this is above 0 the handshake loop is parked and the last finishing task will resume it
+	 */
+	private final AtomicInteger pendingTasks = new AtomicInteger();
+	/**
+	 * Whether a TLSv1.3 post handshake message has been received (or a KeyUpdate begun) and has yet to be responded to
+	 */
+	private volatile boolean postHandshakePending;
+	/**
+	 * Whether a thread is responding to post handshake messages, only one thread does so at a time
+	 */
+	private final AtomicBoolean respondingPostHandshake = new AtomicBoolean();
+	/**
+	 * The {@link SerialExecutor} which runs the handshake steps of this connection or {@code null} if they run on the reading thread
+	 */
+	private volatile SerialExecutor handshakeExecutor;
+	/**
+	 * The amount of handshake steps given to the {@link #handshakeExecutor} which have yet to finish,
+	 * while this is above 0 input is given to the {@link #handshakeExecutor} instead of being decrypted by the reading thread
+	 */
+	private final AtomicInteger handshakeSteps = new AtomicInteger();
+	/**
+	 * The thread currently running a handshake step of this connection, it mustn't touch the socket's read byte buffer
+	 * since the reading thread may be filling it
+	 */
+	private volatile Thread handshakeWorker;
+	/**
+	 * Receives the application data decrypted by the {@link #handshakeExecutor}, which arrived along with the end of a handshake
+	 */
+	private volatile Consumer<SSLBuffer> onHandshakeApplicationData;
+	/**
+	 * Invoked by the reading thread once input has arrived before the handshake has begun
+	 */
+	private volatile Runnable onInputBeforeHandshake;
+	/**
+	 * The {@link Executor} which runs the {@link #onHandshakeComplete} callbacks or {@code null} if they run on the thread which
+	 * completed the handshake
+	 */
+	private volatile Executor callbackExecutor;
+	/**
+	 * Counted down once the first handshake has completed or the connection is closing, {@link #awaitHandshake()} waits on it
+	 */
+	private final CountDownLatch handshakeLatch = new CountDownLatch(1);
+	/**
+	 * Whether a handshake has ever completed
+	 */
+	private volatile boolean handshakeCompleted;
+	/**
+	 * The disconnectionType a {@link #closeSSL(DisconnectionType)} was invoked with
+	 */
+	private DisconnectionType disconnectionType;
+	/**
+	 * The {@link #readByteBuffer} lock to keep uses synchronous
+	 */
+	private final Object readByteBufferLock = new Object();
+	/**
+	 * Whether the buffers of this connection are heap or direct
+	 */
+	private final SSLBufferAllocation bufferAllocation;
+	/**
+	 * The default {@link #bufferAllocation}
+	 */
+	public static final SSLBufferAllocation DEFAULT_BUFFER_ALLOCATION = SSLBufferAllocation.HEAP;
+	/**
+	 * The reusable ciphertext (packet sized) buffers of this connection,
+	 * used for encryption destinations and the {@link #readByteBuffer}
+	 */
+	private final SSLBufferCache packetBuffers;
+	/**
+	 * The reusable plaintext (application sized) buffers of this connection, used for decryption destinations
+	 */
+	private final SSLBufferCache applicationBuffers;
+	/**
+	 * The {@link SSLBuffer} of the {@link #readByteBuffer}
+	 */
+	private SSLBuffer readBuffer;
+	/**
+	 * A {@link ByteBuffer} for reading operations (has encrypted input data)
+	 */
+	private ByteBuffer readByteBuffer;
+	/**
+	 * The sources of an unwrap from the {@link #readByteBuffer}, kept to avoid allocating an array per unwrap
+	 */
+	private final ByteBuffer[] readSrcs = new ByteBuffer[1];
+	/**
+	 * The sources of an unwrap from the socket's read byte buffer, kept to avoid allocating an array per unwrap
+	 */
+	private final ByteBuffer[] inputSrcs = new ByteBuffer[1];
+	/**
+	 * The sources of a handshake wrap, a handshake wrap has no application data
+	 */
+	private static final ByteBuffer[] HANDSHAKE_SRCS = {ByteBuffer.allocate(0)};
+	/**
+	 * The sources of a single buffer wrap for each writing thread, kept to avoid allocating an array per wrap
+	 */
+	private static final ThreadLocal<ByteBuffer[]> WRAP_SRCS = ThreadLocal.withInitial(() -> new ByteBuffer[1]);
+	/**
+	 * The amount of bytes in the socket's read byte buffer which have already been moved into the {@link #readByteBuffer}
+	 */
+	private int socketBufferRead;
+	/**
+	 * Whether {@link #decrypt()} should decrypt every complete record available into one buffer
+	 */
+	private volatile boolean batchedUnwrap;
+	/**
+	 * Whether {@link #decrypt(ByteBuffer)} is used to unwrap straight from the socket's read byte buffer
+	 */
+	private volatile boolean zeroCopyUnwrap;
+	/**
+	 * Whether buffers are released while the connection has nothing buffered instead of being kept for the next operation
+	 */
+	private volatile boolean releaseIdleBuffers;
+	/**
+	 * The size of a TLS record header, a byte for the content type, two bytes for the version and two bytes for the length
+	 */
+	private static final int RECORD_HEADER_SIZE = 5;
+	/**
+	 * The amount of plaintext bytes to encrypt before a TLSv1.3 KeyUpdate is sent, {@code 0} leaves it to the JDK's key limits
+	 */
+	private volatile long keyUpdateInterval;
+	/**
+	 * The amount of plaintext bytes encrypted since the latest KeyUpdate, only counted if there is a {@link #keyUpdateInterval}
+	 */
+	private final AtomicLong bytesSinceKeyUpdate = new AtomicLong();
+	/**
+	 * The TLSv1.3 protocol name
+	 */
+	private static final String TLS13 = "TLSv1.3";
+	/**
+	 * The default {@link #handshakeTimeout}, no limit so a handshake is only ended by the peer or by closing the socket
+	 */
+	public static final long DEFAULT_HANDSHAKE_TIMEOUT = 0;
+	/**
+	 * The default {@link #closeTimeout}, no limit so a close waits for the peer's close_notify
+	 */
+	public static final long DEFAULT_CLOSE_TIMEOUT = 0;
+	/**
+	 * The maximum time (in nanoseconds) a handshake may take before the connection is forced to close, {@code 0} means no limit
+	 */
+	private volatile long handshakeTimeout = DEFAULT_HANDSHAKE_TIMEOUT;
+	/**
+	 * The maximum time (in nanoseconds) an established connection may have no reads and writes before it is forced to close,
+	 * {@code 0} means no limit
+	 */
+	private volatile long idleTimeout;
+	/**
+	 * The maximum time (in nanoseconds) to wait for the peer's close_notify once a close was initiated before the connection
+	 * is forced to close, {@code 0} means no limit
+	 */
+	private volatile long closeTimeout = DEFAULT_CLOSE_TIMEOUT;
+	/**
+	 * The {@link System#nanoTime()} of the latest wrap or unwrap, only updated if there is an {@link #idleTimeout}
+	 */
+	private volatile long lastActivityTime;
+	/**
+	 * The lock of the timeouts so scheduling and cancelling them stays synchronous
+	 */
+	private final Object timeoutsLock = new Object();
+	/**
+	 * The current handshake {@link Timeout} or {@code null}
+	 */
+	private Timeout handshakeTimeoutTask;
+	/**
+	 * The current idle {@link Timeout} or {@code null}
+	 */
+	private Timeout idleTimeoutTask;
+	/**
+	 * The current close {@link Timeout} or {@code null}
+	 */
+	private Timeout closeTimeoutTask;
+	
+	public SSLSocketBase(Socket socket, SSLWriter writer, SSLContext sslContext, boolean client, ExecutorService executor)
+	{
+		this(socket, writer, sslContext, client, executor, null, -1, null);
+	}
+	
+	/**
+	 * Creates a {@link SSLSocketBase} whose {@link SSLEngine} is created for the specified peerHost and peerPort,
+	 * this lets a client {@link SSLEngine} resume a session previously established with the same peer.
+	 *
+	 * @param peerHost is the host of the peer or {@code null} if unknown
+	 * @param peerPort is the port of the peer or {@code -1} if unknown
+	 */
+	public SSLSocketBase(Socket socket,
+						 SSLWriter writer,
+						 SSLContext sslContext,
+						 boolean client,
+						 ExecutorService executor,
+						 String peerHost,
+						 int peerPort)
+	{
+		this(socket, writer, sslContext, client, executor, peerHost, peerPort, null);
+	}
+	
+	/**
+	 * Creates a {@link SSLSocketBase} whose {@link SSLMetrics} also record into the specified parentMetrics,
+	 * for example the {@link SSLMetrics} of the server.
+	 *
+	 * @param peerHost is the host of the peer or {@code null} if unknown
+	 * @param peerPort is the port of the peer or {@code -1} if unknown
+	 * @param parentMetrics to also record into or {@code null}
+	 */
+	public SSLSocketBase(Socket socket,
+						 SSLWriter writer,
+						 SSLContext sslContext,
+						 boolean client,
+						 ExecutorService executor,
+						 String peerHost,
+						 int peerPort,
+						 SSLMetrics parentMetrics)
+	{
+		this(socket, writer, SSLEngineFactory.of(sslContext), client, executor, peerHost, peerPort, parentMetrics);
+	}
+	
+	/**
+	 * Creates a {@link SSLSocketBase} whose {@link SSLEngine} is created by the specified engineFactory.
+	 *
+	 * @param engineFactory to create the {@link SSLEngine} with
+	 * @param peerHost is the host of the peer or {@code null} if unknown
+	 * @param peerPort is the port of the peer or {@code -1} if unknown
+	 * @param parentMetrics to also record into or {@code null}
+	 */
+	public SSLSocketBase(Socket socket,
+						 SSLWriter writer,
+						 SSLEngineFactory engineFactory,
+						 boolean client,
+						 ExecutorService executor,
+						 String peerHost,
+						 int peerPort,
+						 SSLMetrics parentMetrics)
+	{
+		this(socket, writer, engineFactory, client, executor, peerHost, peerPort, parentMetrics, DEFAULT_BUFFER_ALLOCATION);
+	}
+	
+	/**
+	 * Creates a {@link SSLSocketBase} whose buffers are allocated by the specified bufferAllocation.
+	 *
+	 * @param engineFactory to create the {@link SSLEngine} with
+	 * @param peerHost is the host of the peer or {@code null} if unknown
+	 * @param peerPort is the port of the peer or {@code -1} if unknown
+	 * @param parentMetrics to also record into or {@code null}
+	 * @param bufferAllocation whether the buffers are heap or direct
+	 */
+	public SSLSocketBase(Socket socket,
+						 SSLWriter writer,
+						 SSLEngineFactory engineFactory,
+						 boolean client,
+						 ExecutorService executor,
+						 String peerHost,
+						 int peerPort,
+						 SSLMetrics parentMetrics,
+						 SSLBufferAllocation bufferAllocation)
+	{
+		this.bufferAllocation = bufferAllocation;
+		this.packetBuffers = new SSLBufferCache(SSLBufferCache.DEFAULT_MAX_SPARES, bufferAllocation.isPacketDirect());
+		this.applicationBuffers = new SSLBufferCache(SSLBufferCache.DEFAULT_MAX_SPARES, bufferAllocation.isApplicationDirect());
+		this.metrics = new SSLMetrics(parentMetrics);
+		this.socket = socket;
+		this.writer = writer;
+		this.engineFactory = engineFactory;
+		this.client = client;
+		this.sslEngine = createSSLEngine(peerHost, peerPort);
+		this.executor = executor;
+	}
+	
+	/**
+	 * Creates an {@link SSLEngine} for the specified peerHost and peerPort using the {@link #engineFactory}.
+	 *
+	 * @param peerHost is the host of the peer or {@code null} if unknown
+	 * @param peerPort is the port of the peer or {@code -1} if unknown
+	 * @return the created {@link SSLEngine}
+	 */
+	private SSLEngine createSSLEngine(String peerHost, int peerPort)
+	{
+		return engineFactory.createSSLEngine(peerHost, peerPort, client);
+	}
+	
+	/**
+	 * Replaces the {@link SSLEngine} with one created for the specified peerHost and peerPort,
+	 * the {@link SSLParameters} of the current {@link SSLEngine} are kept except for the server names (SNI),
+	 * which are the ones the {@link #engineFactory} configured or otherwise the specified peerHost if it is a host name.
+	 * The endpoint identification algorithm of the replacement is kept if the current {@link SSLEngine} has none.
+	 * A client {@link SSLEngine} which knows its peer can resume a session previously established with the same peer
+	 * instead of a full handshake.
+	 * This has no effect once the handshake has begun.
+	 *
+	 * @param peerHost is the host of the peer
+	 * @param peerPort is the port of the peer
+	 */
+	public void setPeer(String peerHost, int peerPort)
+	{
+		if(hasHandshakeBegun())
+		{
+			return;
+		}
+		SSLEngine current = sslEngine;
+		SSLEngine replacement = createSSLEngine(peerHost, peerPort);
+		SSLParameters replacementParameters = replacement.getSSLParameters();
+		SSLParameters sslParameters = current.getSSLParameters();
+		//the current engine was created without a peer, so its server names don't name the peer
+		List<SNIServerName> serverNames = replacementParameters.getServerNames();
+		sslParameters.setServerNames(serverNames == null || serverNames.isEmpty() ? serverNames(peerHost) : serverNames);
+		if(sslParameters.getEndpointIdentificationAlgorithm() == null)
+		{
+			sslParameters.setEndpointIdentificationAlgorithm(replacementParameters.getEndpointIdentificationAlgorithm());
+		}
+		replacement.setSSLParameters(sslParameters);
+		sslEngine = replacement;
+	}
+	
+	/**
+	 * Returns the server names a client sends to the specified peerHost, IP addresses and invalid host names aren't sent.
+	 *
+	 * @param peerHost is the host of the peer
+	 * @return the server names to send to the specified peerHost
+	 */
+	private static List<SNIServerName> serverNames(String peerHost)
+	{
+		//a server name has to be a fully qualified host name, IPv6 addresses contain colons and IPv4 addresses only digits and dots
+		if(peerHost == null || peerHost.indexOf('.') <= 0 || peerHost.endsWith(".") || peerHost.indexOf(':') != -1 ||
+		   peerHost.matches("[0-9.]+"))
+		{
+			return Collections.emptyList();
+		}
+		try
+		{
+			return Collections.singletonList(new SNIHostName(peerHost));
+		} catch(IllegalArgumentException e)
+		{
+			return Collections.emptyList();
+		}
+	}
+	
+	/**
+	 * Begins the handshake process in which information will be transferred back and forth until
+	 * a authentication and an agreed upon secret key have been established.
+	 * Also sets {@link #hasHandshakeBegun()} to return true.
+	 */
+	@Override
+	public void beginHandshake()
+	{
+		try
+		{
+			//a handshake can begin when idle or established (another handshake)
+			SSLConnectionState current;
+			do
+			{
+				current = state.get();
+				if(current != SSLConnectionState.IDLE && current != SSLConnectionState.ESTABLISHED)
+				{
+					return;
+				}
+				//TLSv1.3 has no renegotiation, a handshake of an established connection is a KeyUpdate which doesn't stop application data
+				if(current == SSLConnectionState.ESTABLISHED && isTLS13())
+				{
+					updateKeys();
+					return;
+				}
+			} while(!state.compareAndSet(current, SSLConnectionState.HANDSHAKING));
+			handshakeBeginTime = System.currentTimeMillis();
+			handshakeBeginNanos = System.nanoTime();
+			startHandshakeTimeout();
+			sslEngine.beginHandshake();
+			SerialExecutor handshakeExecutor = this.handshakeExecutor;
+			if(handshakeExecutor != null)
+			{
+				//input which arrived before the handshake has begun goes along with the first step
+				ByteBuffer input;
+				synchronized(readByteBufferLock)
+				{
+					input = copySocketInput(socket.manager().getReadByteBuffer().getByteBuffer(), false);
+				}
+				dispatchHandshakeStep(handshakeExecutor, input, true);
+				return;
+			}
+			createHandshakeLoop();
+		} catch(SSLException e)
+		{
+			socket.manager().exception(e);
+		}
+	}
+	
+	/**
+	 * Encrypts the specified writeByteBuffer into a temporary {@link SSLBuffer} with a {@link SSLEngine}
+	 * wrap operation.
+	 * Once finished with the returned {@link SSLBuffer} (usually once it has been written) it should be closed,
+	 * this returns it to this connection so the next encryption can reuse it.
+	 *
+	 * @param writeByteBuffer to encrypt
+	 * @return a encrypted temporary {@link SSLBuffer}
+	 */
+	public SSLBuffer encrypt(ByteBuffer writeByteBuffer)
+	{
+		ByteBuffer[] srcs = WRAP_SRCS.get();
+		srcs[0] = writeByteBuffer;
+		try
+		{
+			return wrap(srcs, 0, 1);
+		} finally
+		{
+			srcs[0] = null;
+		}
+	}
+	
+	/**
+	 * Encrypts the specified writeByteBuffers together into a temporary {@link SSLBuffer} with {@link SSLEngine} gathering
+	 * wrap operations, this lets multiple small writeByteBuffers share full size records.
+	 * Once finished with the returned {@link SSLBuffer} it should be closed.
+	 *
+	 * @param writeByteBuffers to encrypt
+	 * @return a encrypted temporary {@link SSLBuffer}
+	 */
+	public SSLBuffer encrypt(ByteBuffer[] writeByteBuffers)
+	{
+		return encrypt(writeByteBuffers, 0, writeByteBuffers.length);
+	}
+	
+	/**
+	 * Encrypts the specified length of writeByteBuffers starting at the specified offset together into a temporary {@link SSLBuffer},
+	 * this lets a caller reuse a larger array of writeByteBuffers instead of creating an array for every encryption.
+	 * Once finished with the returned {@link SSLBuffer} it should be closed.
+	 *
+	 * @param writeByteBuffers to encrypt
+	 * @param offset is the index of the first writeByteBuffer to encrypt
+	 * @param length is the amount of writeByteBuffers to encrypt
+	 * @return a encrypted temporary {@link SSLBuffer}
+	 */
+	public SSLBuffer encrypt(ByteBuffer[] writeByteBuffers, int offset, int length)
+	{
+		return wrap(writeByteBuffers, offset, length);
+	}
+	
+	/**
+	 * Encrypts the specified writeByteBuffers into a temporary {@link SSLBuffer} of records which hold at most
+	 * the specified maxRecordSize plaintext bytes each, smaller records can be decrypted by the peer sooner.
+	 * Once finished with the returned {@link SSLBuffer} it should be closed.
+	 *
+	 * @param writeByteBuffers to encrypt
+	 * @param maxRecordSize is the maximum amount of plaintext bytes of a record
+	 * @return a encrypted temporary {@link SSLBuffer}
+	 */
+	public SSLBuffer encrypt(ByteBuffer[] writeByteBuffers, int maxRecordSize)
+	{
+		return encrypt(writeByteBuffers, 0, writeByteBuffers.length, maxRecordSize);
+	}
+	
+	/**
+	 * Encrypts the specified length of writeByteBuffers starting at the specified offset into a temporary {@link SSLBuffer} of
+	 * records which hold at most the specified maxRecordSize plaintext bytes each.
+	 * Once finished with the returned {@link SSLBuffer} it should be closed.
+	 *
+	 * @param writeByteBuffers to encrypt
+	 * @param offset is the index of the first writeByteBuffer to encrypt
+	 * @param length is the amount of writeByteBuffers to encrypt
+	 * @param maxRecordSize is the maximum amount of plaintext bytes of a record
+	 * @return a encrypted temporary {@link SSLBuffer}
+	 */
+	public SSLBuffer encrypt(ByteBuffer[] writeByteBuffers, int offset, int length, int maxRecordSize)
+	{
+		return encrypt(writeByteBuffers, offset, length, maxRecordSize, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Encrypts the specified length of writeByteBuffers starting at the specified offset into a temporary {@link SSLBuffer},
+	 * the first specified smallBytes plaintext bytes go in records which hold at most the specified maxRecordSize plaintext
+	 * bytes each and the rest go in full size records.
+	 * A record is gathered from as many writeByteBuffers as fit in it, so small writeByteBuffers share records.
+	 * Once finished with the returned {@link SSLBuffer} it should be closed.
+	 *
+	 * @param writeByteBuffers to encrypt
+	 * @param offset is the index of the first writeByteBuffer to encrypt
+	 * @param length is the amount of writeByteBuffers to encrypt
+	 * @param maxRecordSize is the maximum amount of plaintext bytes of a small record
+	 * @param smallBytes is the amount of plaintext bytes to encrypt in small records
+	 * @return a encrypted temporary {@link SSLBuffer}
+	 */
+	public SSLBuffer encrypt(ByteBuffer[] writeByteBuffers, int offset, int length, int maxRecordSize, long smallBytes)
+	{
+		if(remaining(writeByteBuffers, offset, length) <= Math.min(maxRecordSize, smallBytes))
+		{
+			return wrap(writeByteBuffers, offset, length);
+		}
+		updateKeysIfDue(writeByteBuffers, offset, length);
+		int end = offset + length;
+		int first = offset;
+		SSLBuffer dst = null;
+		while(smallBytes > 0)
+		{
+			//skip the writeByteBuffers which have been fully encrypted
+			while(first < end && !writeByteBuffers[first].hasRemaining())
+			{
+				first++;
+			}
+			if(first == end)
+			{
+				return dst;
+			}
+			int recordSize = (int) Math.min(maxRecordSize, smallBytes);
+			//find the writeByteBuffer in which the record ends
+			int last = first;
+			long gathered = 0;
+			while(last < end && gathered + writeByteBuffers[last].remaining() < recordSize)
+			{
+				gathered += writeByteBuffers[last].remaining();
+				last++;
+			}
+			if(last == end)
+			{
+				//the rest fits in a single record
+				return createSSLResultLoop(writeByteBuffers, first, end - first, true, true, dst);
+			}
+			//limit the writeByteBuffer in which the record ends so a single wrap can't produce a record larger than recordSize
+			ByteBuffer lastByteBuffer = writeByteBuffers[last];
+			int limit = lastByteBuffer.limit();
+			lastByteBuffer.limit(lastByteBuffer.position() + (int) (recordSize - gathered));
+			long encrypted;
+			try
+			{
+				dst = createSSLResultLoop(writeByteBuffers, first, last - first + 1, true, true, dst);
+				encrypted = recordSize - remaining(writeByteBuffers, first, last - first + 1);
+			} finally
+			{
+				lastByteBuffer.limit(limit);
+			}
+			//stop if an exception occurred or the engine has been closed
+			if(dst == null || encrypted == 0)
+			{
+				return dst;
+			}
+			smallBytes -= encrypted;
+			first = last;
+		}
+		if(hasRemaining(writeByteBuffers, first, end - first))
+		{
+			dst = createSSLResultLoop(writeByteBuffers, first, end - first, true, true, dst);
+		}
+		return dst;
+	}
+	
+	public void fillReadByteBuffer(ByteBuffer input)
+	{
+		synchronized(readByteBufferLock)
+		{
+			if(socketBufferRead >= input.position())
+			{
+				input.clear();
+				return;
+			}
+			initializeReadByteBuffer();
+			input.flip();
+			input.position(socketBufferRead);
+			socketBufferRead = 0;
+			//only move what fits after a partial record which was carried over, the rest is moved once it was decrypted
+			int limit = input.limit();
+			input.limit(Math.min(input.position() + readByteBuffer.remaining(), limit));
+			readByteBuffer.put(input);
+			input.limit(limit);
+			if(input.hasRemaining())
+			{
+				input.compact();
+			} else
+			{
+				input.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Clears the specified input (the socket's read byte buffer) once the reader has handled it,
+	 * input which has yet to be moved into the readByteBuffer is kept at its start for the next read.
+	 *
+	 * @param input is the socket's read byte buffer
+	 */
+	public void clearSocketInput(ByteBuffer input)
+	{
+		synchronized(readByteBufferLock)
+		{
+			if(socketBufferRead < input.position())
+			{
+				input.flip();
+				input.position(socketBufferRead);
+				input.compact();
+			} else
+			{
+				input.clear();
+			}
+			socketBufferRead = 0;
+		}
+	}
+	
+	/**
+	 * Decrypts the current readByteBuffer into a decrypted temporary {@link SSLBuffer} with
+	 * a {@link SSLEngine} unwrap operation.
+	 * Once finished with the returned the temporary {@link SSLBuffer} should be closed,
+	 * this returns it to this connection so the next decryption can reuse it.
+	 * To input data use {@link #fillReadByteBuffer(ByteBuffer)}
+	 *
+	 * @return a decrypted temporary {@link SSLBuffer}
+	 */
+	public SSLBuffer decrypt()
+	{
+		boolean handshakeUnwrap = state.compareAndSet(SSLConnectionState.WAITING_UNWRAP, SSLConnectionState.HANDSHAKING);
+		try
+		{
+			synchronized(readByteBufferLock)
+			{
+				if(handshakeUnwrap)
+				{
+					if(!doHandshakeUnwrap())
+					{
+						return null;
+					}
+					createHandshakeLoop();
+					if(!isHandshakeComplete() || readByteBuffer == null || readByteBuffer.position() == 0)
+					{
+						return null;
+					}
+				}
+				return unwrap();
+			}
+		} finally
+		{
+			//respond to post handshake messages once the lock is released
+			respondPostHandshake();
+		}
+	}
+	
+	/**
+	 * Prepares the specified input (the socket's read byte buffer) for {@link #decrypt(ByteBuffer)}
+	 * by flipping it into read mode and skipping bytes which were already moved during a handshake.
+	 *
+	 * @param input is the socket's read byte buffer
 	 */
-	private final AtomicBoolean handshakeBegun = new AtomicBoolean();
+	public void prepareDirectInput(ByteBuffer input)
+	{
+		synchronized(readByteBufferLock)
+		{
+			input.flip();
+			input.position(Math.min(socketBufferRead, input.limit()));
+			socketBufferRead = 0;
+		}
+	}
+	
+	/**
+	 * Decrypts straight from the specified input into a decrypted temporary {@link SSLBuffer} with
+	 * a {@link SSLEngine} unwrap operation, without first copying the input into the readByteBuffer.
+	 * Only when a record is split across reads are its bytes carried over into the readByteBuffer,
+	 * which is then completed and decrypted first on the next invocation.
+	 * The specified input should be prepared using {@link #prepareDirectInput(ByteBuffer)}.
+	 * Once finished with the returned the temporary {@link SSLBuffer} should be closed.
+	 *
+	 * @param input is the socket's read byte buffer in read mode
+	 * @return a decrypted temporary {@link SSLBuffer} or {@code null} if there is no complete record to decrypt
+	 */
+	public SSLBuffer decrypt(ByteBuffer input)
+	{
+		try
+		{
+			synchronized(readByteBufferLock)
+			{
+				boolean batched = batchedUnwrap;
+				SSLBuffer decrypted = null;
+				if(readByteBuffer != null && readByteBuffer.position() > 0)
+				{
+					//a record was carried over, it has to be completed and decrypted before the input
+					if(!completeRecord(input))
+					{
+						return null;
+					}
+					readByteBuffer.flip();
+					readSrcs[0] = readByteBuffer;
+					decrypted = createSSLResultLoop(readSrcs, false, false, null);
+					if(readByteBuffer.position() > 0)
+					{
+						readByteBuffer.compact();
+					} else
+					{
+						readByteBuffer.position(readByteBuffer.limit());
+						readByteBuffer.limit(readByteBuffer.capacity());
+					}
+					if(decrypted == null || !batched || readByteBuffer.position() > 0)
+					{
+						return decrypted;
+					}
+				}
+				if(input.hasRemaining())
+				{
+					inputSrcs[0] = input;
+					decrypted = createSSLResultLoop(inputSrcs, false, batched, decrypted);
+					inputSrcs[0] = null;
+				}
+				if(isPartialRecord(input))
+				{
+					//carry the partial record over so the socket's read byte buffer can be reused
+					initializeReadByteBuffer();
+					if(input.remaining() >= RECORD_HEADER_SIZE && !checkRecordLength(input, input.position(), input))
+					{
+						return decrypted;
+					}
+					readByteBuffer.put(input);
+				}
+				return decrypted;
+			}
+		} finally
+		{
+			//respond to post handshake messages once the lock is released
+			respondPostHandshake();
+		}
+	}
+	
+	/**
+	 * Moves the input of the specified socket's read byte buffer which has yet to be moved into the readByteBuffer
+	 * (which is expanded to fit it) and clears the socket's read byte buffer, so a reader which can't handle the input yet
+	 * (for example while its decrypted data isn't being consumed) doesn't leave it in the socket's read byte buffer.
+	 * This should only be invoked by the reading thread, which owns the socket's read byte buffer, the held input
+	 * is decrypted with {@link #decryptHeldInput()}.
+	 *
+	 * @param input is the socket's read byte buffer
+	 */
+	public void holdInput(ByteBuffer input)
+	{
+		synchronized(readByteBufferLock)
+		{
+			if(socketBufferRead >= input.position() || state.get() == SSLConnectionState.CLOSED)
+			{
+				socketBufferRead = 0;
+				input.clear();
+				return;
+			}
+			initializeReadByteBuffer();
+			input.flip();
+			input.position(socketBufferRead);
+			socketBufferRead = 0;
+			if(readByteBuffer.remaining() < input.remaining())
+			{
+				readByteBuffer.flip();
+				readBuffer = expand(readByteBuffer.limit() + input.remaining(), readByteBuffer, readBuffer, packetBuffers, true);
+				readByteBuffer = readBuffer.getByteBuffer();
+			}
+			readByteBuffer.put(input);
+			input.clear();
+		}
+	}
+	
+	/**
+	 * Decrypts the input which was held with {@link #holdInput(ByteBuffer)}, this never touches the socket's read byte buffer
+	 * so it can be invoked by another thread than the reading thread (the reader must not be decrypting at the same time).
+	 * Once finished with the returned the temporary {@link SSLBuffer} should be closed.
+	 *
+	 * @return a decrypted temporary {@link SSLBuffer} or {@code null} if there is no complete record to decrypt
+	 * or the handshake hasn't completed
+	 */
+	public SSLBuffer decryptHeldInput()
+	{
+		if(!isHandshakeComplete())
+		{
+			return null;
+		}
+		try
+		{
+			synchronized(readByteBufferLock)
+			{
+				if(state.get() == SSLConnectionState.CLOSED || readByteBuffer == null || readByteBuffer.position() == 0)
+				{
+					return null;
+				}
+				int position = readByteBuffer.position();
+				SSLBuffer decrypted = unwrap(false);
+				//stop if nothing could be decrypted
+				if(decrypted != null && decrypted.getByteBuffer().position() == 0 && readByteBuffer.position() == position)
+				{
+					decrypted.close();
+					return null;
+				}
+				return decrypted;
+			}
+		} finally
+		{
+			//respond to post handshake messages once the lock is released
+			respondPostHandshake();
+		}
+	}
+	
 	/**
-	 * Whether the handshake has completed
+	 * Moves bytes from the specified input into the readByteBuffer until the readByteBuffer holds a complete record.
+	 *
+	 * @param input to move bytes from
+	 * @return whether the readByteBuffer holds a complete record
 	 */
-	private final AtomicBoolean handshakeCompleted = new AtomicBoolean();
+	private boolean completeRecord(ByteBuffer input)
+	{
+		if(readByteBuffer.position() < RECORD_HEADER_SIZE)
+		{
+			moveInput(input, RECORD_HEADER_SIZE - readByteBuffer.position());
+			if(readByteBuffer.position() < RECORD_HEADER_SIZE)
+			{
+				return false;
+			}
+		}
+		if(!checkRecordLength(readByteBuffer, 0, input))
+		{
+			return false;
+		}
+		int recordSize = RECORD_HEADER_SIZE + getRecordLength(readByteBuffer, 0);
+		moveInput(input, recordSize - readByteBuffer.position());
+		return readByteBuffer.position() >= recordSize;
+	}
+	
 	/**
-	 * Whether the SSL has closed
+	 * Checks the length of the record whose header starts at the specified index of the specified byteBuffer.
+	 * A record larger than the session's packet buffer size is never valid (and would never be completed), so the buffered
+	 * bytes and the specified input are discarded and an {@link SSLException} is given to the socket.
+	 * A valid record larger than the readByteBuffer (the packet buffer size has grown since it was leased) expands the readByteBuffer.
+	 *
+	 * @param byteBuffer which contains the record header
+	 * @param index is where the record header starts
+	 * @param input is the socket's read byte buffer in read mode
+	 * @return whether the record length is valid
 	 */
-	private final AtomicBoolean closed = new AtomicBoolean();
+	private boolean checkRecordLength(ByteBuffer byteBuffer, int index, ByteBuffer input)
+	{
+		int recordSize = RECORD_HEADER_SIZE + getRecordLength(byteBuffer, index);
+		int packetBufferSize = getPacketBufferSize();
+		if(recordSize > packetBufferSize)
+		{
+			readByteBuffer.clear();
+			input.position(input.limit());
+			socket.manager().exception(new SSLException("Received a record of " + recordSize + " bytes which exceeds the packet buffer size of " +
+														packetBufferSize + " bytes!"));
+			return false;
+		}
+		if(recordSize > readByteBuffer.capacity())
+		{
+			readByteBuffer.flip();
+			readBuffer = expand(packetBufferSize, readByteBuffer, readBuffer, packetBuffers, true);
+			readByteBuffer = readBuffer.getByteBuffer();
+		}
+		return true;
+	}
+	
 	/**
-	 * Whether a handshake loop has temporarily stopped waiting for an unwrap
+	 * Moves up to the specified amount of bytes from the specified input into the readByteBuffer.
+	 *
+	 * @param input to move bytes from
+	 * @param amount is the maximum amount of bytes to move
 	 */
-	private final AtomicBoolean waitingForUnwrap = new AtomicBoolean();
+	private void moveInput(ByteBuffer input, int amount)
+	{
+		int moved = Math.min(amount, Math.min(input.remaining(), readByteBuffer.remaining()));
+		if(moved <= 0)
+		{
+			return;
+		}
+		int limit = input.limit();
+		input.limit(input.position() + moved);
+		readByteBuffer.put(input);
+		input.limit(limit);
+	}
+	
 	/**
-	 * The disconnectionType a {@link #closeSSL(DisconnectionType)} was invoked with
+	 * Returns whether the specified byteBuffer remaining is a part of a record (but not a complete record).
+	 *
+	 * @param byteBuffer to check
+	 * @return whether the specified byteBuffer remaining is a part of a record
 	 */
-	private DisconnectionType disconnectionType;
+	private static boolean isPartialRecord(ByteBuffer byteBuffer)
+	{
+		int remaining = byteBuffer.remaining();
+		if(remaining == 0)
+		{
+			return false;
+		}
+		return remaining < RECORD_HEADER_SIZE || remaining < RECORD_HEADER_SIZE + getRecordLength(byteBuffer, byteBuffer.position());
+	}
+	
 	/**
-	 * The {@link #readByteBuffer} lock to keep uses synchronous
+	 * Returns the length of the record (excluding its header) whose header starts at the specified index of the specified byteBuffer.
+	 *
+	 * @param byteBuffer which contains the record header
+	 * @param index is where the record header starts
+	 * @return the length of the record
 	 */
-	private final Object readByteBufferLock = new Object();
+	private static int getRecordLength(ByteBuffer byteBuffer, int index)
+	{
+		return ((byteBuffer.get(index + 3) & 0xFF) << 8) | (byteBuffer.get(index + 4) & 0xFF);
+	}
+	
 	/**
-	 * A pooled object of the {@link #readByteBuffer}
+	 * Returns whether {@link #decrypt(ByteBuffer)} is used by the reader to unwrap straight from the socket's read byte buffer.
+	 *
+	 * @return whether zero copy unwrap is enabled
 	 */
-	private PooledByteBuffer pooledReadByteBuffer;
+	public boolean isZeroCopyUnwrap()
+	{
+		return zeroCopyUnwrap;
+	}
+	
 	/**
-	 * A {@link ByteBuffer} for reading operations (has encrypted input data)
+	 * Sets whether the reader should unwrap straight from the socket's read byte buffer (using {@link #decrypt(ByteBuffer)})
+	 * once the handshake has completed, instead of first copying the input into the readByteBuffer.
+	 *
+	 * @param zeroCopyUnwrap whether zero copy unwrap should be enabled
 	 */
-	private ByteBuffer readByteBuffer;
-	private int socketBufferRead;
-	
-	public SSLSocketBase(Socket socket, SSLWriter writer, SSLContext sslContext, boolean client, ExecutorService executor)
+	public void setZeroCopyUnwrap(boolean zeroCopyUnwrap)
 	{
-		this.socket = socket;
-		this.writer = writer;
-		this.sslContext = sslContext;
-		this.sslEngine = sslContext.createSSLEngine();
-		sslEngine.setUseClientMode(client);
-		this.executor = executor;
+		this.zeroCopyUnwrap = zeroCopyUnwrap;
 	}
 	
 	/**
-	 * Begins the handshake process in which information will be transferred back and forth until
-	 * a authentication and an agreed upon secret key have been established.
-	 * Also sets {@link #hasHandshakeBegun()} to return true.
+	 * Sets whether buffers should be released while the connection has nothing buffered.
+	 * When enabled the readByteBuffer is released after every read which didn't leave a partial record behind (and leased
+	 * again on the next read), and encryption and decryption buffers are released once closed instead of being kept as spares.
+	 * An idle connection then holds no buffers, so memory scales with active traffic instead of with the amount of connections,
+	 * at the cost of a lease per read.
+	 *
+	 * @param releaseIdleBuffers whether buffers should be released while the connection has nothing buffered
 	 */
-	@Override
-	public void beginHandshake()
+	public void setReleaseIdleBuffers(boolean releaseIdleBuffers)
 	{
-		try
-		{
-			synchronized(handshakeCompleted)
-			{
-				handshakeCompleted.set(false);
-			}
-			synchronized(handshakeBegun)
-			{
-				handshakeBegun.set(true);
-			}
-			sslEngine.beginHandshake();
-			createHandshakeLoop();
-		} catch(SSLException e)
-		{
-			socket.manager().exception(e);
-		}
+		this.releaseIdleBuffers = releaseIdleBuffers;
+		//a closed connection keeps no spares
+		int maxSpares = releaseIdleBuffers || state.get() == SSLConnectionState.CLOSED ? 0 : SSLBufferCache.DEFAULT_MAX_SPARES;
+		packetBuffers.setMaxSpares(maxSpares);
+		applicationBuffers.setMaxSpares(maxSpares);
+		releaseIdleReadByteBuffer();
 	}
 	
 	/**
-	 * Encrypts the specified writeByteBuffer into a temporary {@link PooledByteBuffer} with a {@link SSLEngine}
-	 * wrap operation.
-	 * Once finished with the returned {@link PooledByteBuffer} it should be closed.
-	 *
-	 * @param writeByteBuffer to encrypt
-	 * @return a encrypted temporary {@link PooledByteBuffer}
+	 * @return whether buffers are released while the connection has nothing buffered
 	 */
-	public PooledByteBuffer encrypt(ByteBuffer writeByteBuffer)
+	public boolean isReleaseIdleBuffers()
 	{
-		return wrap(writeByteBuffer);
+		return releaseIdleBuffers;
 	}
 	
-	public void fillReadByteBuffer(ByteBuffer input)
+	/**
+	 * Releases the spare encryption and decryption buffers to the shared pool once the handshake has completed, since the connection
+	 * is idle until its next read or write, and the readByteBuffer if {@link #isReleaseIdleBuffers()}, the handshake has completed
+	 * and it holds no partial record, or if the connection is closed.
+	 * This is invoked by the reader once it has handled a read.
+	 */
+	public void releaseIdleReadByteBuffer()
 	{
+		boolean closed = state.get() == SSLConnectionState.CLOSED;
+		if(isHandshakeComplete())
+		{
+			packetBuffers.releaseSpares();
+			applicationBuffers.releaseSpares();
+		}
+		if(!closed && (!releaseIdleBuffers || !isHandshakeComplete()))
+		{
+			return;
+		}
 		synchronized(readByteBufferLock)
 		{
-			if(socketBufferRead >= input.position())
-			{
-				input.clear();
-				return;
-			}
-			initializeReadByteBuffer();
-			input.flip();
-			input.position(socketBufferRead);
-			socketBufferRead = 0;
-			input.limit(Math.min(readByteBuffer.capacity(), input.limit()));
-			readByteBuffer.put(input);
-			if(input.hasRemaining())
-			{
-				input.compact();
-			} else
+			if(readBuffer != null && (closed || readByteBuffer.position() == 0))
 			{
-				input.clear();
+				readBuffer.close();
+				readBuffer = null;
+				readByteBuffer = null;
 			}
 		}
 	}
 	
 	/**
-	 * Decrypts the current readByteBuffer into a decrypted temporary {@link PooledByteBuffer} with
-	 * a {@link SSLEngine} unwrap operation.
-	 * Once finished with the returned the temporary {@link PooledByteBuffer} should be closed.
-	 * To input data use {@link #fillReadByteBuffer(ByteBuffer)}
+	 * Returns the total capacity (in bytes) of the buffers this connection currently holds while it isn't using them,
+	 * which is the readByteBuffer and the spare encryption and decryption buffers.
+	 * Buffers which are currently leased out (for example decrypted buffers which haven't been read yet) aren't included.
 	 *
-	 * @return a decrypted temporary {@link PooledByteBuffer}
+	 * @return the capacity of the buffers held by this connection
 	 */
-	public PooledByteBuffer decrypt()
+	public long getHeldBufferCapacity()
 	{
-		boolean handshakeUnwrap;
-		synchronized(waitingForUnwrap)
-		{
-			handshakeUnwrap = waitingForUnwrap.compareAndSet(true, false);
-		}
+		long capacity = packetBuffers.getSpareCapacity() + applicationBuffers.getSpareCapacity();
 		synchronized(readByteBufferLock)
 		{
-			if(handshakeUnwrap)
+			if(readBuffer != null)
 			{
-				if(!doHandshakeUnwrap())
-				{
-					return null;
-				}
-				createHandshakeLoop();
-				synchronized(handshakeCompleted)
-				{
-					synchronized(readByteBufferLock)
-					{
-						if(!handshakeCompleted.get() || readByteBuffer.position() == 0)
-						{
-							return null;
-						}
-					}
-				}
+				capacity += readByteBuffer.capacity();
 			}
-			return unwrap();
 		}
+		return capacity;
+	}
+	
+	/**
+	 * Leases a cleared plaintext {@link SSLBuffer} of at least the specified capacity from this connection's buffers,
+	 * so it is allocated like the connection's other plaintext buffers and reuses their pool.
+	 * Once finished with it, it should be closed.
+	 *
+	 * @param capacity is the minimum capacity of the buffer
+	 * @return the leased {@link SSLBuffer}
+	 */
+	public SSLBuffer leaseApplicationBuffer(int capacity)
+	{
+		return applicationBuffers.lease(capacity);
+	}
+	
+	/**
+	 * Returns whether {@link #decrypt()} decrypts every complete record available into one buffer
+	 * instead of a single record per invocation.
+	 *
+	 * @return whether batched unwrap is enabled
+	 */
+	public boolean isBatchedUnwrap()
+	{
+		return batchedUnwrap;
+	}
+	
+	/**
+	 * Sets whether {@link #decrypt()} should decrypt every complete record available into one buffer
+	 * (growing it as needed) instead of a single record per invocation.
+	 * When enabled the reader is invoked once per socket read instead of once per record.
+	 *
+	 * @param batchedUnwrap whether batched unwrap should be enabled
+	 */
+	public void setBatchedUnwrap(boolean batchedUnwrap)
+	{
+		this.batchedUnwrap = batchedUnwrap;
 	}
 	
 	/**
@@ -212,10 +1127,7 @@ public class SSLSocketBase implements SSLSocket
 	 */
 	public boolean isWaitingForUnwrap()
 	{
-		synchronized(waitingForUnwrap)
-		{
-			return waitingForUnwrap.get();
-		}
+		return state.get() == SSLConnectionState.WAITING_UNWRAP;
 	}
 	
 	/**
@@ -242,13 +1154,24 @@ public class SSLSocketBase implements SSLSocket
 		//check whether the handshake has completed
 		if(status == HandshakeStatus.FINISHED || status == HandshakeStatus.NOT_HANDSHAKING)
 		{
-			//if the handshake has already completed this is most likely a close finishing handshake
-			waitingForUnwrap.set(false);
-			if(handshakeCompleted.compareAndSet(false, true))
+			//if the handshake isn't running this is most likely a close finishing handshake
+			if(establish())
 			{
-				for(Runnable handshakeCompleteRunnable : onHandshakeComplete)
+				metrics.recordHandshake(System.nanoTime() - handshakeBeginNanos, isSessionResumed());
+				handshakeEstablished();
+				List<Runnable> handshakeCompleteRunnables;
+				//completing and draining under the list's lock so a concurrently registered callback is either drained here or
+				//sees handshakeCompleted
+				synchronized(onHandshakeComplete)
 				{
-					handshakeCompleteRunnable.run();
+					handshakeCompleted = true;
+					handshakeCompleteRunnables = new ArrayList<>(onHandshakeComplete);
+					onHandshakeComplete.clear();
+				}
+				handshakeLatch.countDown();
+				for(Runnable handshakeCompleteRunnable : handshakeCompleteRunnables)
+				{
+					runHandshakeCallback(handshakeCompleteRunnable);
 				}
 			}
 			return false;
@@ -280,38 +1203,347 @@ public class SSLSocketBase implements SSLSocket
 			//if it is NEED_TASK we need to invoke it either in an executor or here depending whether an executor was provided in the constructor
 			case NEED_TASK:
 			{
-				//loop through all tasks, once we take a task it is removed from the queue so this wont loop forever
-				Runnable task;
-				while((task = sslEngine.getDelegatedTask()) != null)
+				//a handshake step on the handshake executor is already off the reading thread so it runs the tasks itself
+				if(!runDelegatedTasks(handshakeWorker == Thread.currentThread() ? null : executor))
+				{
+					//return false since the handshake cannot continue until the tasks have finished, the last one to finish will resume it
+					return false;
+				}
+				break;
+			}
+		}
+		//return true since it seems that nothing has interrupted the process and it was finished successfully
+		return true;
+	}
+	
+	/**
+	 * Runs the specified delegated task, if it is the last pending task the handshake loop is resumed.
+	 *
+	 * @param task to run
+	 */
+	private void runDelegatedTask(Runnable task)
+	{
+		try
+		{
+			task.run();
+			metrics.recordDelegatedTask();
+		} catch(Throwable throwable)
+		{
+			socket.manager().exception(throwable);
+		} finally
+		{
+			if(pendingTasks.decrementAndGet() == 0)
+			{
+				resumeHandshake();
+			}
+		}
+	}
+	
+	/**
+	 * Resumes a handshake loop which was parked while waiting for delegated tasks to finish.
+	 * The loop is resumed while holding the {@link #readByteBufferLock} so it doesn't run
+	 * alongside a {@link #decrypt()} invoked by the socket's reading thread.
+	 */
+	private void resumeHandshake()
+	{
+		if(!isHandshaking())
+		{
+			//the tasks were of a post handshake message
+			postHandshakePending = true;
+			respondPostHandshake();
+			return;
+		}
+		synchronized(readByteBufferLock)
+		{
+			createHandshakeLoop();
+		}
+		respondPostHandshake();
+	}
+	
+	/**
+	 * Gives the specified input (the socket's read byte buffer) to the handshake executor if a handshake step is running
+	 * or waiting for input there, the input is copied so the reading thread can keep reading into the specified input.
+	 * Once the handshake has completed and every given step has finished the reading thread decrypts its input itself again.
+	 *
+	 * @param input is the socket's read byte buffer
+	 * @return whether the specified input was given to the handshake executor
+	 */
+	public boolean offerHandshakeInput(ByteBuffer input)
+	{
+		SerialExecutor handshakeExecutor = this.handshakeExecutor;
+		if(handshakeExecutor == null || (!isHandshaking() && handshakeSteps.get() == 0))
+		{
+			return false;
+		}
+		ByteBuffer copy;
+		synchronized(readByteBufferLock)
+		{
+			copy = copySocketInput(input, true);
+		}
+		if(copy != null)
+		{
+			dispatchHandshakeStep(handshakeExecutor, copy, false);
+		}
+		return true;
+	}
+	
+	/**
+	 * Copies the bytes of the specified input (the socket's read byte buffer) which haven't been moved into the readByteBuffer.
+	 *
+	 * @param input is the socket's read byte buffer
+	 * @param clear whether the specified input should be cleared, only the reading thread should clear it
+	 * @return the copied bytes or {@code null} if there were none
+	 */
+	private ByteBuffer copySocketInput(ByteBuffer input, boolean clear)
+	{
+		int position = input.position();
+		int read = socketBufferRead;
+		ByteBuffer copy = null;
+		if(read < position)
+		{
+			ByteBuffer source = input.duplicate();
+			source.limit(position);
+			source.position(read);
+			copy = ByteBuffer.allocate(position - read);
+			copy.put(source);
+			copy.flip();
+		}
+		if(clear)
+		{
+			socketBufferRead = 0;
+			input.clear();
+		} else
+		{
+			socketBufferRead = Math.max(read, position);
+		}
+		return copy;
+	}
+	
+	/**
+	 * Gives a handshake step to the specified handshakeExecutor.
+	 *
+	 * @param handshakeExecutor to run the step on
+	 * @param input is the input of the step or {@code null} if there is none
+	 * @param begin whether this step begins the handshake
+	 */
+	private void dispatchHandshakeStep(SerialExecutor handshakeExecutor, ByteBuffer input, boolean begin)
+	{
+		handshakeSteps.incrementAndGet();
+		handshakeExecutor.execute(() -> runHandshakeStep(input, begin));
+	}
+	
+	/**
+	 * Runs a handshake step on the handshake executor.
+	 * The specified input is added to the readByteBuffer and the handshake loop continues from where it stopped,
+	 * once the handshake has completed any application data which arrived along with it is handed to the
+	 * {@link #onHandshakeApplicationData(Consumer)} consumer.
+	 *
+	 * @param input is the input of the step or {@code null} if there is none
+	 * @param begin whether this step begins the handshake
+	 */
+	private void runHandshakeStep(ByteBuffer input, boolean begin)
+	{
+		handshakeWorker = Thread.currentThread();
+		try
+		{
+			if(input != null)
+			{
+				synchronized(readByteBufferLock)
 				{
-					if(executor == null)
+					initializeReadByteBuffer();
+					if(readByteBuffer.remaining() < input.remaining())
 					{
-						//if executor is null we need to execute it in the same thread
-						task.run();
-					} else
+						readByteBuffer.flip();
+						readBuffer = expand(readByteBuffer.limit() + input.remaining(), readByteBuffer, readBuffer, packetBuffers, true);
+						readByteBuffer = readBuffer.getByteBuffer();
+					}
+					readByteBuffer.put(input);
+				}
+			}
+			if(begin)
+			{
+				createHandshakeLoop();
+			} else if(state.compareAndSet(SSLConnectionState.WAITING_UNWRAP, SSLConnectionState.HANDSHAKING))
+			{
+				synchronized(readByteBufferLock)
+				{
+					if(doHandshakeUnwrap())
 					{
-						//if executor isn't null we should give the task to the executor to handle
-						executor.execute(task);
+						createHandshakeLoop();
 					}
 				}
-				break;
 			}
+			handBackApplicationData();
+		} catch(Throwable throwable)
+		{
+			socket.manager().exception(throwable);
+		} finally
+		{
+			handshakeWorker = null;
+			releaseIdleReadByteBuffer();
+			handshakeSteps.decrementAndGet();
+			respondPostHandshake();
+		}
+	}
+	
+	/**
+	 * Decrypts the application data left in the readByteBuffer once the handshake has completed and hands it to the
+	 * {@link #onHandshakeApplicationData(Consumer)} consumer.
+	 */
+	private void handBackApplicationData()
+	{
+		while(isHandshakeComplete() && !sslEngine.isInboundDone())
+		{
+			SSLBuffer decrypted;
+			synchronized(readByteBufferLock)
+			{
+				if(readByteBuffer == null || readByteBuffer.position() == 0)
+				{
+					return;
+				}
+				int position = readByteBuffer.position();
+				decrypted = unwrap();
+				if(decrypted == null)
+				{
+					return;
+				}
+				//stop if nothing could be decrypted
+				if(decrypted.getByteBuffer().position() == 0 && readByteBuffer.position() == position)
+				{
+					decrypted.close();
+					return;
+				}
+			}
+			respondPostHandshake();
+			Consumer<SSLBuffer> consumer = onHandshakeApplicationData;
+			if(consumer == null)
+			{
+				decrypted.close();
+			} else
+			{
+				consumer.accept(decrypted);
+			}
+		}
+	}
+	
+	/**
+	 * Sets the {@link Executor} which runs the handshake steps of this connection instead of the reading thread,
+	 * which is usually an I/O selector thread shared by many connections.
+	 * Every step (the wraps, unwraps and delegated tasks of the handshake) is run on the specified handshakeExecutor,
+	 * one at a time and in the order the input has arrived, so established connections of the same selector thread
+	 * don't stall behind expensive handshake operations such as RSA signatures.
+	 * Once the handshake has completed the connection is handed back to the reading thread.
+	 * This has no effect once the handshake has begun.
+	 *
+	 * @param handshakeExecutor to run the handshake steps on or {@code null} to run them on the reading thread,
+	 * {@link #getSharedHandshakeExecutor()} is a thread pool sized by the amount of processors
+	 */
+	public void setHandshakeExecutor(Executor handshakeExecutor)
+	{
+		if(hasHandshakeBegun())
+		{
+			return;
+		}
+		this.handshakeExecutor = handshakeExecutor == null ? null : new SerialExecutor(handshakeExecutor);
+	}
+	
+	/**
+	 * @return the {@link Executor} which runs the handshake steps of this connection or {@code null} if they run on the reading thread
+	 */
+	public Executor getHandshakeExecutor()
+	{
+		SerialExecutor handshakeExecutor = this.handshakeExecutor;
+		return handshakeExecutor == null ? null : handshakeExecutor.getExecutor();
+	}
+	
+	/**
+	 * Invokes the specified onHandshakeApplicationData with the application data which the handshake executor decrypted because
+	 * it arrived along with the end of a handshake, {@link oughttoprevail.asyncsslnetwork.rw.SSLReader} sets this to itself.
+	 * The consumer is responsible for closing the {@link SSLBuffer}.
+	 *
+	 * @param onHandshakeApplicationData to invoke with decrypted application data
+	 */
+	public void onHandshakeApplicationData(Consumer<SSLBuffer> onHandshakeApplicationData)
+	{
+		this.onHandshakeApplicationData = onHandshakeApplicationData;
+	}
+	
+	/**
+	 * Invokes the specified onInputBeforeHandshake on the reading thread whenever input arrives before the handshake has begun,
+	 * a server uses this to only admit a handshake once its peer has sent something.
+	 *
+	 * @param onInputBeforeHandshake to invoke once input has arrived before the handshake has begun
+	 */
+	void onInputBeforeHandshake(Runnable onInputBeforeHandshake)
+	{
+		this.onInputBeforeHandshake = onInputBeforeHandshake;
+	}
+	
+	/**
+	 * Invoked by the reader once input has arrived before the handshake has begun,
+	 * the input is left in the socket's read byte buffer for the handshake.
+	 */
+	public void inputBeforeHandshake()
+	{
+		Runnable onInputBeforeHandshake = this.onInputBeforeHandshake;
+		if(onInputBeforeHandshake != null)
+		{
+			onInputBeforeHandshake.run();
 		}
-		//return true since it seems that nothing has interrupted the process and it was finished successfully
-		return true;
 	}
 	
 	/**
-	 * Writes an empty byteBufferElement to writer.
-	 * This is useful since the {@link SSLWriter} uses {@link SSLEngine} when we give the {@link SSLEngine} an empty byteBufferElement during a handshake it ignores it
-	 * then puts the information needed to be sent in the encrypted byteBuffer.
+	 * Begins the handshake on the handshake executor of this connection instead of the current thread,
+	 * or on the current thread if there is no handshake executor.
 	 */
-	private void doHandshakeWrap()
+	void dispatchBeginHandshake()
 	{
-		try(PooledByteBuffer byteBufferElement = new PooledByteBuffer(getPacketBufferSize()))
+		SerialExecutor handshakeExecutor = this.handshakeExecutor;
+		if(handshakeExecutor == null)
+		{
+			beginHandshake();
+			return;
+		}
+		try
+		{
+			handshakeExecutor.execute(this::beginHandshake);
+		} catch(RejectedExecutionException e)
 		{
-			writer.encryptThenWrite(socket, byteBufferElement.getByteBuffer(), null);
+			socket.manager().exception(e);
 		}
+	}
+	
+	/**
+	 * @return the {@link Executor} shared by all connections to run handshake steps on, a thread pool of daemon threads with
+	 * a thread per processor which is only created once used
+	 */
+	public static Executor getSharedHandshakeExecutor()
+	{
+		return SharedHandshakeExecutor.EXECUTOR;
+	}
+	
+	/**
+	 * Holds the shared handshake {@link ExecutorService} so it is only created (and its threads started) once used.
+	 */
+	private static class SharedHandshakeExecutor
+	{
+		private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+		private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r ->
+		{
+			Thread thread = new Thread(r, "SSL Handshake Thread-" + THREAD_INDEX.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Writes an empty byteBuffer to writer.
+	 * This is useful since the {@link SSLWriter} uses {@link SSLEngine} when we give the {@link SSLEngine} an empty byteBuffer during a handshake it ignores it
+	 * then puts the information needed to be sent in the encrypted byteBuffer.
+	 */
+	private void doHandshakeWrap()
+	{
+		writer.encryptThenWrite(socket, HANDSHAKE_SRCS[0], null);
 		//if both inbound and outbound is done then we can close the socket, this is after a "SSLSocketBaseImpl.createSSLEngineLoop(...)". so both
 		//are probably already closed
 		if(sslEngine.isOutboundDone() && sslEngine.isInboundDone())
@@ -331,7 +1563,7 @@ public class SSLSocketBase implements SSLSocket
 	private boolean doHandshakeUnwrap()
 	{
 		initializeReadByteBuffer();
-		PooledByteBuffer decrypted = unwrap();
+		SSLBuffer decrypted = unwrap();
 		if(decrypted != null)
 		{
 			decrypted.close();
@@ -353,76 +1585,171 @@ public class SSLSocketBase implements SSLSocket
 		{
 			if(this.readByteBuffer == null)
 			{
-				pooledReadByteBuffer = new PooledByteBuffer(sslEngine.getSession().getPacketBufferSize());
-				readByteBuffer = pooledReadByteBuffer.getByteBuffer();
+				readBuffer = packetBuffers.lease(getPacketBufferSize());
+				readByteBuffer = readBuffer.getByteBuffer();
 			}
 		}
 	}
 	
 	/**
-	 * Wraps the specified writeByteBuffer.
+	 * Wraps the specified writeByteBuffers until they have no remaining.
 	 *
-	 * @param writeByteBuffer to wrap
+	 * @param writeByteBuffers to wrap
+	 * @param offset is the index of the first writeByteBuffer to wrap
+	 * @param length is the amount of writeByteBuffers to wrap
 	 * @return a wrapped (encrypted) byteBuffer, the encrypted byteBuffer should
 	 * be closed after it has finished writing
 	 */
-	private PooledByteBuffer wrap(ByteBuffer writeByteBuffer)
+	private SSLBuffer wrap(ByteBuffer[] writeByteBuffers, int offset, int length)
+	{
+		updateKeysIfDue(writeByteBuffers, offset, length);
+		return createSSLResultLoop(writeByteBuffers, offset, length, true, true, null);
+	}
+	
+	/**
+	 * Counts the specified writeByteBuffers towards the {@link #keyUpdateInterval}, once it is exceeded a TLSv1.3 KeyUpdate
+	 * is requested which the next wrap produces before the application data.
+	 *
+	 * @param writeByteBuffers which are about to be wrapped
+	 * @param offset is the index of the first writeByteBuffer
+	 * @param length is the amount of writeByteBuffers
+	 */
+	private void updateKeysIfDue(ByteBuffer[] writeByteBuffers, int offset, int length)
 	{
-		return createSSLResultLoop(writeByteBuffer, true);
+		long interval = keyUpdateInterval;
+		if(interval > 0 && isHandshakeComplete() && bytesSinceKeyUpdate.addAndGet(remaining(writeByteBuffers, offset, length)) >= interval &&
+		   isTLS13())
+		{
+			bytesSinceKeyUpdate.set(0);
+			try
+			{
+				//the KeyUpdate is produced by this wrap before the application data
+				sslEngine.beginHandshake();
+			} catch(SSLException e)
+			{
+				socket.manager().exception(e);
+			}
+		}
 	}
 	
 	/**
 	 * Unwraps the specified readByteBuffer.
+	 * If {@link #isBatchedUnwrap()} then every complete record available is unwrapped into the same byteBuffer.
+	 *
+	 * @return a unwrapped (decrypted) byteBuffer,
+	 * the decrypted byteBuffer should be closed after it has been dealt with
+	 */
+	private SSLBuffer unwrap()
+	{
+		return unwrap(true);
+	}
+	
+	/**
+	 * Same as {@link #unwrap()}, if the specified transferSocketInput is {@code false} the input left in the socket's read byte buffer
+	 * isn't moved into the readByteBuffer, so only what the readByteBuffer already holds is unwrapped.
 	 *
+	 * @param transferSocketInput whether to move the input left in the socket's read byte buffer into the readByteBuffer
 	 * @return a unwrapped (decrypted) byteBuffer,
 	 * the decrypted byteBuffer should be closed after it has been dealt with
 	 */
-	private PooledByteBuffer unwrap()
+	private SSLBuffer unwrap(boolean transferSocketInput)
 	{
 		synchronized(readByteBufferLock)
 		{
-			ByteBuffer byteBuffer = socket.manager().getReadByteBuffer().getByteBuffer();
-			int limit = byteBuffer.limit();
-			if(socketBufferRead < limit)
+			if(readByteBuffer == null)
 			{
-				int position = byteBuffer.position();
-				byteBuffer.position(socketBufferRead);
-				int written;
-				byteBuffer.limit(written = Math.min(position - socketBufferRead, readByteBuffer.capacity() - readByteBuffer.position()));
-				socketBufferRead+=written;
-				readByteBuffer.put(byteBuffer);
-				byteBuffer.limit(limit);
-				byteBuffer.position(position);
+				//it was released since the connection closed
+				return null;
 			}
-			
-			readByteBuffer.flip();
-			PooledByteBuffer pooledByteBuffer = createSSLResultLoop(readByteBuffer, false);
-			if(readByteBuffer.position() > 0)
-			{
-				readByteBuffer.compact();
-			} else
+			boolean batched = batchedUnwrap && !isHandshaking();
+			SSLBuffer decrypted = null;
+			boolean moreInput;
+			do
 			{
-				readByteBuffer.position(readByteBuffer.limit());
-				readByteBuffer.limit(readByteBuffer.capacity());
-			}
-			return pooledByteBuffer;
+				moreInput = transferSocketInput && transferSocketReadByteBuffer();
+				readByteBuffer.flip();
+				readSrcs[0] = readByteBuffer;
+				decrypted = createSSLResultLoop(readSrcs, false, batched, decrypted);
+				if(readByteBuffer.position() > 0)
+				{
+					readByteBuffer.compact();
+				} else
+				{
+					readByteBuffer.position(readByteBuffer.limit());
+					readByteBuffer.limit(readByteBuffer.capacity());
+				}
+				//keep going while there is input in the socket's read byte buffer that didn't fit in the readByteBuffer
+			} while(batched && moreInput && decrypted != null && !sslEngine.isInboundDone());
+			return decrypted;
+		}
+	}
+	
+	/**
+	 * Moves as much input as possible from the socket's read byte buffer which has yet to be moved into the {@link #readByteBuffer}.
+	 *
+	 * @return whether there is input left in the socket's read byte buffer which didn't fit into the {@link #readByteBuffer}
+	 */
+	private boolean transferSocketReadByteBuffer()
+	{
+		//a handshake step gets its input from the reading thread
+		if(handshakeWorker == Thread.currentThread())
+		{
+			return false;
+		}
+		ByteBuffer byteBuffer = socket.manager().getReadByteBuffer().getByteBuffer();
+		int position = byteBuffer.position();
+		if(socketBufferRead >= position)
+		{
+			return false;
 		}
+		int limit = byteBuffer.limit();
+		int written = Math.min(position - socketBufferRead, readByteBuffer.remaining());
+		byteBuffer.position(socketBufferRead);
+		byteBuffer.limit(socketBufferRead + written);
+		socketBufferRead += written;
+		readByteBuffer.put(byteBuffer);
+		byteBuffer.limit(limit);
+		byteBuffer.position(position);
+		return socketBufferRead < position;
 	}
 	
 	/**
 	 * Creates a loop which will try to wrap/unwrap depending on the specified wrap
 	 * until the {@link SSLEngineResult} was {@link javax.net.ssl.SSLEngineResult.Status#OK} or
 	 * {@link SSLEngineResult.Status#CLOSED}.
-	 * If the specified wrap is {@code true} then {@link SSLEngine#wrap(ByteBuffer, ByteBuffer)} is invoked
-	 * else {@link SSLEngine#unwrap(ByteBuffer, ByteBuffer)} is invoked.
+	 * If the specified wrap is {@code true} then {@link SSLEngine#wrap(ByteBuffer[], ByteBuffer)} is invoked
+	 * else {@link SSLEngine#unwrap(ByteBuffer, ByteBuffer)} is invoked with the first src.
+	 * If the specified drain is {@code true} then an {@link javax.net.ssl.SSLEngineResult.Status#OK} continues the loop
+	 * as long as the srcs have remaining and the result is appended to the same dst.
 	 *
-	 * @param src is the source byteBuffer which is in need of either wrap/unwrap depending on the specified wrap
-	 * @param wrap is whether {@link SSLEngine#wrap(ByteBuffer, ByteBuffer)} should be invoked or
+	 * @param srcs are the source byteBuffers which are in need of either wrap/unwrap depending on the specified wrap,
+	 * an unwrap only uses the first source byteBuffer
+	 * @param wrap is whether {@link SSLEngine#wrap(ByteBuffer[], ByteBuffer)} should be invoked or
 	 * {@link SSLEngine#unwrap(ByteBuffer, ByteBuffer)} should be invoked
+	 * @param drain is whether to keep on going after an {@link javax.net.ssl.SSLEngineResult.Status#OK}
+	 * @param dst is the destination to append the result to, if {@code null} a new destination is created
+	 * @return {@code null} if either an exception or {@link SSLEngineResult.Status#CLOSED} is returned
+	 * from wrap/unwrap and nothing was appended to the dst else the dst (destination buffer) is returned
+	 */
+	private SSLBuffer createSSLResultLoop(ByteBuffer[] srcs, boolean wrap, boolean drain, SSLBuffer dst)
+	{
+		return createSSLResultLoop(srcs, 0, srcs.length, wrap, drain, dst);
+	}
+	
+	/**
+	 * Same as {@link #createSSLResultLoop(ByteBuffer[], boolean, boolean, SSLBuffer)} for the specified length of srcs starting at
+	 * the specified offset, a wrap gathers from all of them while an unwrap only uses the src at the specified offset.
+	 *
+	 * @param srcs is the source to wrap/unwrap
+	 * @param offset is the index of the first src
+	 * @param length is the amount of srcs
+	 * @param wrap is whether to wrap or unwrap
+	 * @param drain is whether to keep on going after an {@link javax.net.ssl.SSLEngineResult.Status#OK}
+	 * @param dst is the destination to append the result to, if {@code null} a new destination is created
 	 * @return {@code null} if either an exception or {@link SSLEngineResult.Status#CLOSED} is returned
-	 * from wrap/unwrap else the dst (destination buffer) is returned
+	 * from wrap/unwrap and nothing was appended to the dst else the dst (destination buffer) is returned
 	 */
-	private PooledByteBuffer createSSLResultLoop(ByteBuffer src, boolean wrap)
+	private SSLBuffer createSSLResultLoop(ByteBuffer[] srcs, int offset, int length, boolean wrap, boolean drain, SSLBuffer dst)
 	{
 		/*
 		the dstSize (destination size) should be for a wrap operation the packet buffer size and for a
@@ -431,8 +1758,13 @@ public class SSLSocketBase implements SSLSocket
 		and if we're unwrapping (decrypting) then we need a application buffer size which is the size of the decrypted packet
 		 */
 		int dstSize = wrap ? getPacketBufferSize() : getApplicationBufferSize();
+		//the cache of this connection which has reusable buffers of the dstSize
+		SSLBufferCache dstCache = wrap ? packetBuffers : applicationBuffers;
 		//Take a byteBuffer which the result will go to, this is called the destination (dst)
-		PooledByteBuffer dst = new PooledByteBuffer(dstSize);
+		if(dst == null)
+		{
+			dst = dstCache.lease(dstSize);
+		}
 		try
 		{
 			//keep a variable to know whether this is the first loop, we will need this later
@@ -443,7 +1775,12 @@ public class SSLSocketBase implements SSLSocket
 				ByteBuffer dstByteBuffer = dst.getByteBuffer();
 				//get the engineResult by invoking sslEngine.wrap or sslEngine.unwrap depending on the specified wrap and put the srcByteBuffer and
 				// dstByteBuffer as the parameters
-				SSLEngineResult engineResult = wrap ? sslEngine.wrap(src, dstByteBuffer) : sslEngine.unwrap(src, dstByteBuffer);
+				SSLEngineResult engineResult = wrap ? sslEngine.wrap(srcs, offset, length, dstByteBuffer) : sslEngine.unwrap(srcs[offset], dstByteBuffer);
+				metrics.recordResult(wrap, engineResult);
+				if(idleTimeout > 0)
+				{
+					lastActivityTime = System.nanoTime();
+				}
 				//try to find the status
 				switch(engineResult.getStatus())
 				{
@@ -451,6 +1788,23 @@ public class SSLSocketBase implements SSLSocket
 					case OK:
 					{
 						//The SSLEngine completed the operation, and is available to process similar calls.
+						HandshakeStatus handshakeStatus = engineResult.getHandshakeStatus();
+						if(isPostHandshake(handshakeStatus))
+						{
+							if(!wrap)
+							{
+								//a post handshake message (for example a KeyUpdate) was received, it is responded to once the
+								//readByteBufferLock has been released
+								postHandshakePending = true;
+							}
+							//a wrap produces the post handshake message before the application data, so it can keep draining
+							handshakeStatus = HandshakeStatus.NOT_HANDSHAKING;
+						}
+						//if we're draining and the engine isn't in need of a handshake operation try the next record
+						if(drain && hasRemaining(srcs, offset, length) && (handshakeStatus == HandshakeStatus.NOT_HANDSHAKING || handshakeStatus == HandshakeStatus.FINISHED))
+						{
+							break;
+						}
 						break engineLoop;
 					}
 					
@@ -459,7 +1813,14 @@ public class SSLSocketBase implements SSLSocket
 					{
 						//The SSLEngine was not able to process the operation because there are not enough bytes available in the destination buffer
 						// to hold the result.
-						dst = expand(dstSize + dstByteBuffer.position(), dstByteBuffer, dst, false);
+						metrics.recordBufferOverflow();
+						//if it has contents (from a previous drained operation) they should be kept
+						boolean hasContents = dstByteBuffer.position() > 0;
+						if(hasContents)
+						{
+							dstByteBuffer.flip();
+						}
+						dst = expand(dstSize + dstByteBuffer.capacity(), dstByteBuffer, dst, dstCache, hasContents);
 						break;
 					}
 					
@@ -477,18 +1838,28 @@ public class SSLSocketBase implements SSLSocket
 						}
 						//The SSLEngine was not able to unwrap the incoming data because there were not enough source bytes available to make a
 						// complete packet.
+						metrics.recordBufferUnderflow();
 						int packetBufferSize = getPacketBufferSize();
-						if(src.capacity() < packetBufferSize)
+						ByteBuffer src = srcs[offset];
+						//only the readByteBuffer is expanded, any other src is carried over by the caller
+						if(src == readByteBuffer && src.capacity() < packetBufferSize)
 						{
 							synchronized(readByteBufferLock)
 							{
 								//expand the src
-								PooledByteBuffer newSrc = expand(packetBufferSize, src, pooledReadByteBuffer, true);
+								SSLBuffer newSrc = expand(packetBufferSize, src, readBuffer, packetBuffers, true);
 								//set the socket read byteBuffer to the new src since the old one didn't have enough space for the a packet
-								this.pooledReadByteBuffer = newSrc;
+								this.readBuffer = newSrc;
 								this.readByteBuffer = newSrc.getByteBuffer();
+								//keep the new src in read mode like the one it replaced
+								readByteBuffer.flip();
 							}
 						}
+						//if previous drained operations have decrypted data then return it
+						if(drain && dst.getByteBuffer().position() > 0)
+						{
+							return dst;
+						}
 						//not enough data in buffer
 						waitingForUnwrapTrue();
 						dst.close();
@@ -499,11 +1870,8 @@ public class SSLSocketBase implements SSLSocket
 					{
 						//The operation just closed this side of the SSLEngine, or the operation could not be completed because it was already
 						// closed.
-						//set closed to true, this useful encase this is unwrap and it didn't go through "SSLSocketBaseImpl.closeSSL()"
-						synchronized(closed)
-						{
-							closed.set(true);
-						}
+						//advance to closing, this useful encase this is unwrap and it didn't go through "SSLSocketBaseImpl.closeSSL()"
+						advance(SSLConnectionState.CLOSING);
 						//outbound is what we will send (wrap), if outbound is done this means we don't have anymore to send
 						//if outbound is done then we need to close it, if it was already closed this operation will do nothing
 						boolean outboundDone;
@@ -521,6 +1889,8 @@ public class SSLSocketBase implements SSLSocket
 							//if inbound and outbound are done it means that SSL has finished it's close and we can finally close (disconnect)
 							if(outboundDone)
 							{
+								advance(SSLConnectionState.CLOSED);
+								cancelTimeouts();
 								//if this isn't a wrap operation close the socket, if it is a wrap operation a write must occur so we can't close
 								// the socket now
 								if(!wrap)
@@ -538,27 +1908,337 @@ public class SSLSocketBase implements SSLSocket
 					}
 				}
 			}
-			return dst;
-		} catch(SSLException e)
+			return dst;
+		} catch(SSLException e)
+		{
+			//an exception occurred, leave the destination buffer and give the exception to the socket
+			dst.close();
+			socket.manager().exception(e);
+			//return null since we don't have a destination buffer anymore
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the total remaining of the specified length of byteBuffers starting at the specified offset.
+	 *
+	 * @param byteBuffers to sum
+	 * @param offset is the index of the first byteBuffer
+	 * @param length is the amount of byteBuffers
+	 * @return the total remaining of the byteBuffers
+	 */
+	private static long remaining(ByteBuffer[] byteBuffers, int offset, int length)
+	{
+		long remaining = 0;
+		for(int i = offset; i < offset + length; i++)
+		{
+			remaining += byteBuffers[i].remaining();
+		}
+		return remaining;
+	}
+	
+	/**
+	 * Returns whether the specified handshakeStatus is of a TLSv1.3 post handshake message (a KeyUpdate or a NewSessionTicket)
+	 * of an established connection.
+	 *
+	 * @param handshakeStatus is the handshake status of the latest {@link SSLEngineResult}
+	 * @return whether the specified handshakeStatus is of a post handshake message
+	 */
+	private boolean isPostHandshake(HandshakeStatus handshakeStatus)
+	{
+		return (handshakeStatus == HandshakeStatus.NEED_WRAP || handshakeStatus == HandshakeStatus.NEED_TASK) &&
+			   state.get() == SSLConnectionState.ESTABLISHED && isTLS13();
+	}
+	
+	/**
+	 * Responds to pending TLSv1.3 post handshake messages, this mustn't be invoked while holding the {@link #readByteBufferLock}.
+	 * Only one thread responds at a time, a pending message found by another thread while responding is left to the responding thread.
+	 */
+	private void respondPostHandshake()
+	{
+		while(postHandshakePending && respondingPostHandshake.compareAndSet(false, true))
+		{
+			try
+			{
+				postHandshakePending = false;
+				processPostHandshake();
+			} catch(Throwable throwable)
+			{
+				socket.manager().exception(throwable);
+			} finally
+			{
+				respondingPostHandshake.set(false);
+			}
+		}
+	}
+	
+	/**
+	 * Processes TLSv1.3 post handshake messages, the connection stays {@link SSLConnectionState#ESTABLISHED}
+	 * so application data keeps flowing.
+	 * The responses are written through the {@link #writer} so they're ordered with the application data, and the
+	 * delegated tasks are given to the {@link #executor} if there is one.
+	 */
+	private void processPostHandshake()
+	{
+		while(true)
+		{
+			switch(sslEngine.getHandshakeStatus())
+			{
+				case NEED_TASK:
+				{
+					if(!runDelegatedTasks(executor))
+					{
+						//the last task to finish will respond
+						return;
+					}
+					break;
+				}
+				case NEED_WRAP:
+				{
+					writer.encryptThenWrite(socket, HANDSHAKE_SRCS[0], null);
+					break;
+				}
+				default:
+				{
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs the delegated tasks of the {@link #sslEngine}, on the specified executor if it isn't {@code null}.
+	 * The last task to finish on the specified executor resumes the handshake (or the post handshake response)
+	 * unless every task has already finished when this returns.
+	 * The tasks are given one by one so no list of them is created.
+	 *
+	 * @param executor to run the tasks on or {@code null} to run them on the current thread
+	 * @return whether every delegated task has finished, so the caller can continue
+	 */
+	private boolean runDelegatedTasks(Executor executor)
+	{
+		Runnable task;
+		if(executor == null)
+		{
+			while((task = sslEngine.getDelegatedTask()) != null)
+			{
+				task.run();
+				metrics.recordDelegatedTask();
+			}
+			return true;
+		}
+		if((task = sslEngine.getDelegatedTask()) == null)
+		{
+			//all tasks have already been given to the executor, the last one to finish will resume
+			return false;
+		}
+		//hold an extra count while giving the tasks so none of them resumes before all were given
+		pendingTasks.incrementAndGet();
+		do
+		{
+			pendingTasks.incrementAndGet();
+			Runnable delegatedTask = task;
+			executor.execute(() -> runDelegatedTask(delegatedTask));
+		} while((task = sslEngine.getDelegatedTask()) != null);
+		return pendingTasks.decrementAndGet() == 0;
+	}
+	
+	/**
+	 * Sends a TLSv1.3 KeyUpdate which replaces the keys used for encrypting (and requests the peer to replace its keys).
+	 */
+	private void updateKeys() throws SSLException
+	{
+		bytesSinceKeyUpdate.set(0);
+		sslEngine.beginHandshake();
+		postHandshakePending = true;
+		respondPostHandshake();
+	}
+	
+	/**
+	 * @return whether the negotiated protocol is TLSv1.3
+	 */
+	private boolean isTLS13()
+	{
+		return TLS13.equals(sslEngine.getSession().getProtocol());
+	}
+	
+	/**
+	 * Sets the amount of plaintext bytes to encrypt before replacing the keys with a TLSv1.3 KeyUpdate,
+	 * this limits how much data a single key protects on long lived bulk connections.
+	 * Has no effect if the negotiated protocol isn't TLSv1.3.
+	 *
+	 * @param keyUpdateInterval is the amount of plaintext bytes between KeyUpdates, {@code 0} leaves it to the JDK's key limits
+	 */
+	public void setKeyUpdateInterval(long keyUpdateInterval)
+	{
+		if(keyUpdateInterval < 0)
+		{
+			throw new IllegalArgumentException("KeyUpdate interval cannot be negative!");
+		}
+		this.keyUpdateInterval = keyUpdateInterval;
+	}
+	
+	/**
+	 * @return the amount of plaintext bytes between KeyUpdates, {@code 0} if it is left to the JDK's key limits
+	 */
+	public long getKeyUpdateInterval()
+	{
+		return keyUpdateInterval;
+	}
+	
+	/**
+	 * Returns whether any of the specified length of byteBuffers starting at the specified offset has remaining.
+	 *
+	 * @param byteBuffers to check
+	 * @param offset is the index of the first byteBuffer
+	 * @param length is the amount of byteBuffers
+	 * @return whether any of the byteBuffers has remaining
+	 */
+	private static boolean hasRemaining(ByteBuffer[] byteBuffers, int offset, int length)
+	{
+		for(int i = offset; i < offset + length; i++)
+		{
+			if(byteBuffers[i].hasRemaining())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Moves the {@link #state} to {@link SSLConnectionState#WAITING_UNWRAP} if there is still a handshake
+	 */
+	private void waitingForUnwrapTrue()
+	{
+		state.compareAndSet(SSLConnectionState.HANDSHAKING, SSLConnectionState.WAITING_UNWRAP);
+	}
+	
+	/**
+	 * Moves the {@link #state} from a handshaking state to {@link SSLConnectionState#ESTABLISHED}.
+	 *
+	 * @return whether this invocation has moved the {@link #state} to {@link SSLConnectionState#ESTABLISHED}
+	 */
+	private boolean establish()
+	{
+		SSLConnectionState current;
+		do
+		{
+			current = state.get();
+			if(!current.isHandshaking())
+			{
+				return false;
+			}
+		} while(!state.compareAndSet(current, SSLConnectionState.ESTABLISHED));
+		return true;
+	}
+	
+	/**
+	 * Advances the {@link #state} to the specified target if the {@link #state} is before it.
+	 *
+	 * @param target is the state to advance to
+	 * @return the {@link #state} before this invocation
+	 */
+	private SSLConnectionState advance(SSLConnectionState target)
+	{
+		SSLConnectionState current;
+		do
+		{
+			current = state.get();
+			if(current.compareTo(target) >= 0)
+			{
+				return current;
+			}
+		} while(!state.compareAndSet(current, target));
+		if(target.isClosing() && !current.isClosing())
+		{
+			//a handshake can't complete anymore
+			handshakeLatch.countDown();
+			closing();
+		}
+		if(target == SSLConnectionState.CLOSED)
+		{
+			releaseClosedBuffers();
+		}
+		return current;
+	}
+	
+	/**
+	 * Returns the buffers of this closed connection to the pool, the spare buffers are released and buffers which are still
+	 * leased (such as the close_notify being written) are released once closed.
+	 * If the current thread is in the middle of a decryption the readByteBuffer is left for the reader, which releases it
+	 * once it has handled the read.
+	 */
+	private void releaseClosedBuffers()
+	{
+		packetBuffers.setMaxSpares(0);
+		applicationBuffers.setMaxSpares(0);
+		if(!Thread.holdsLock(readByteBufferLock))
+		{
+			releaseIdleReadByteBuffer();
+		}
+	}
+	
+	/**
+	 * Runnables to be executed once the connection is closing
+	 */
+	private final List<Runnable> onClosing = new ArrayList<>();
+	
+	/**
+	 * Invokes the specified onClosing once the connection is closing (or right away if it already is),
+	 * after which no more data can be written or read.
+	 *
+	 * @param onClosing to invoke once the connection is closing
+	 */
+	public void onClosing(Runnable onClosing)
+	{
+		synchronized(this.onClosing)
+		{
+			if(!state.get().isClosing())
+			{
+				this.onClosing.add(onClosing);
+				return;
+			}
+		}
+		Validator.runRunnable(onClosing);
+	}
+	
+	/**
+	 * Removes the specified onClosing which was given to {@link #onClosing(Runnable)}, so it isn't invoked.
+	 *
+	 * @param onClosing to remove
+	 */
+	public void removeOnClosing(Runnable onClosing)
+	{
+		synchronized(this.onClosing)
 		{
-			//an exception occurred, leave the destination buffer and give the exception to the socket
-			dst.close();
-			socket.manager().exception(e);
-			//return null since we don't have a destination buffer anymore
-			return null;
+			this.onClosing.remove(onClosing);
 		}
 	}
 	
 	/**
-	 * Sets {@link #waitingForUnwrap} to {@code true} if there is still a handshake
+	 * Invokes the {@link #onClosing} runnables, invoked once when the {@link #state} advances to closing.
 	 */
-	private void waitingForUnwrapTrue()
+	private void closing()
 	{
-		if(isHandshaking())
+		Runnable[] runnables;
+		synchronized(onClosing)
+		{
+			if(onClosing.isEmpty())
+			{
+				return;
+			}
+			runnables = onClosing.toArray(new Runnable[0]);
+			onClosing.clear();
+		}
+		for(Runnable runnable : runnables)
 		{
-			synchronized(waitingForUnwrap)
+			try
+			{
+				runnable.run();
+			} catch(Throwable throwable)
 			{
-				waitingForUnwrap.set(true);
+				socket.manager().exception(throwable);
 			}
 		}
 	}
@@ -566,28 +2246,257 @@ public class SSLSocketBase implements SSLSocket
 	/**
 	 * Expands the specified currentByteBuffer into the specified newSize.
 	 * If the specified addContents is {@code true} then the specified currentByteBuffer
-	 * contents are added into the new expanded byteBuffer.
+	 * remaining contents are added into the new expanded byteBuffer.
 	 *
 	 * @param newSize is the size the new expanded byteBuffer should be
 	 * @param currentByteBuffer is the current byteBuffer
+	 * @param buffer is the {@link SSLBuffer} of the specified currentByteBuffer
+	 * @param cache is the {@link SSLBufferCache} to lease the expanded byteBuffer from
 	 * @param addContents is whether the contents of the specified currentByteBuffer should be
 	 * put into the new expanded byteBuffer
-	 * @param pooledByteBuffer is the {@link PooledByteBuffer} of the specified currentByteBuffer
-	 * or if it isn't a {@link PooledByteBuffer} then {@code null}
 	 * @return an expanded byteBuffer
 	 */
-	private PooledByteBuffer expand(int newSize, ByteBuffer currentByteBuffer, PooledByteBuffer pooledByteBuffer, boolean addContents)
+	private SSLBuffer expand(int newSize, ByteBuffer currentByteBuffer, SSLBuffer buffer, SSLBufferCache cache, boolean addContents)
 	{
-		PooledByteBuffer expandedByteBuffer = new PooledByteBuffer(newSize);
+		metrics.recordBufferExpansion();
+		SSLBuffer expandedByteBuffer = cache.lease(newSize);
 		if(addContents)
 		{
-			currentByteBuffer.position(0);
 			expandedByteBuffer.getByteBuffer().put(currentByteBuffer);
 		}
-		pooledByteBuffer.close();
+		buffer.close();
 		return expandedByteBuffer;
 	}
 	
+	/**
+	 * Sets the maximum time a handshake may take before the connection is forced to close using {@link SSLSocket#forceClosure()}.
+	 * Applies to handshakes which begin after this was invoked. There is no limit by default.
+	 *
+	 * @param timeout is the maximum time a handshake may take, {@code 0} means no limit
+	 * @param unit is the {@link TimeUnit} of the specified timeout
+	 */
+	public void setHandshakeTimeout(long timeout, TimeUnit unit)
+	{
+		this.handshakeTimeout = toTimeoutNanos(timeout, unit);
+	}
+	
+	/**
+	 * @param unit is the {@link TimeUnit} to return the timeout in
+	 * @return the maximum time a handshake may take, {@code 0} means no limit
+	 */
+	public long getHandshakeTimeout(TimeUnit unit)
+	{
+		return unit.convert(handshakeTimeout, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Sets the maximum time an established connection may have no reads and writes before it is forced to close
+	 * using {@link SSLSocket#forceClosure()}.
+	 * Applies to handshakes which complete after this was invoked. There is no limit by default.
+	 *
+	 * @param timeout is the maximum time a connection may be idle, {@code 0} means no limit
+	 * @param unit is the {@link TimeUnit} of the specified timeout
+	 */
+	public void setIdleTimeout(long timeout, TimeUnit unit)
+	{
+		this.idleTimeout = toTimeoutNanos(timeout, unit);
+	}
+	
+	/**
+	 * @param unit is the {@link TimeUnit} to return the timeout in
+	 * @return the maximum time an established connection may be idle, {@code 0} means no limit
+	 */
+	public long getIdleTimeout(TimeUnit unit)
+	{
+		return unit.convert(idleTimeout, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Sets the maximum time to wait for the peer's close_notify once a close was initiated before the connection is forced
+	 * to close using {@link SSLSocket#forceClosure()}. There is no limit by default.
+	 *
+	 * @param timeout is the maximum time to wait for the peer's close_notify, {@code 0} means no limit
+	 * @param unit is the {@link TimeUnit} of the specified timeout
+	 */
+	public void setCloseTimeout(long timeout, TimeUnit unit)
+	{
+		this.closeTimeout = toTimeoutNanos(timeout, unit);
+	}
+	
+	/**
+	 * @param unit is the {@link TimeUnit} to return the timeout in
+	 * @return the maximum time to wait for the peer's close_notify, {@code 0} means no limit
+	 */
+	public long getCloseTimeout(TimeUnit unit)
+	{
+		return unit.convert(closeTimeout, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Converts the specified timeout into nanoseconds.
+	 *
+	 * @param timeout to convert
+	 * @param unit is the {@link TimeUnit} of the specified timeout
+	 * @return the specified timeout in nanoseconds
+	 */
+	static long toTimeoutNanos(long timeout, TimeUnit unit)
+	{
+		if(timeout < 0)
+		{
+			throw new IllegalArgumentException("Timeout cannot be negative!");
+		}
+		return unit.toNanos(timeout);
+	}
+	
+	/**
+	 * Starts the handshake timeout if there is a {@link #handshakeTimeout} and it hasn't already started.
+	 * A server starts it once a connection was accepted so a peer which never begins a handshake is also closed.
+	 */
+	void startHandshakeTimeout()
+	{
+		long timeout = handshakeTimeout;
+		if(timeout <= 0)
+		{
+			return;
+		}
+		synchronized(timeoutsLock)
+		{
+			if(handshakeTimeoutTask == null && !state.get().isClosing())
+			{
+				handshakeTimeoutTask = HashedWheelTimer.getSharedTimer().newTimeout(this::expireHandshakeTimeout, timeout, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+	
+	/**
+	 * Invoked once a handshake was established, cancels the handshake timeout and starts the idle timeout.
+	 */
+	private void handshakeEstablished()
+	{
+		long timeout = idleTimeout;
+		synchronized(timeoutsLock)
+		{
+			handshakeTimeoutTask = cancel(handshakeTimeoutTask);
+			if(timeout > 0 && idleTimeoutTask == null)
+			{
+				lastActivityTime = System.nanoTime();
+				idleTimeoutTask = HashedWheelTimer.getSharedTimer().newTimeout(this::expireIdleTimeout, timeout, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+	
+	/**
+	 * Starts the close timeout if there is a {@link #closeTimeout}, the other timeouts are cancelled.
+	 */
+	private void startCloseTimeout()
+	{
+		long timeout = closeTimeout;
+		synchronized(timeoutsLock)
+		{
+			handshakeTimeoutTask = cancel(handshakeTimeoutTask);
+			idleTimeoutTask = cancel(idleTimeoutTask);
+			if(timeout > 0 && closeTimeoutTask == null)
+			{
+				closeTimeoutTask = HashedWheelTimer.getSharedTimer().newTimeout(this::expireTimeout, timeout, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+	
+	/**
+	 * Cancels all the timeouts.
+	 */
+	private void cancelTimeouts()
+	{
+		synchronized(timeoutsLock)
+		{
+			handshakeTimeoutTask = cancel(handshakeTimeoutTask);
+			idleTimeoutTask = cancel(idleTimeoutTask);
+			closeTimeoutTask = cancel(closeTimeoutTask);
+		}
+	}
+	
+	/**
+	 * Cancels the specified timeout if it isn't {@code null}.
+	 *
+	 * @param timeout to cancel
+	 * @return {@code null}
+	 */
+	private static Timeout cancel(Timeout timeout)
+	{
+		if(timeout != null)
+		{
+			timeout.cancel();
+		}
+		return null;
+	}
+	
+	/**
+	 * Invoked once the handshake timeout has expired, forces the connection to close if the handshake still hasn't completed.
+	 */
+	private void expireHandshakeTimeout()
+	{
+		synchronized(timeoutsLock)
+		{
+			handshakeTimeoutTask = null;
+		}
+		if(!state.get().isHandshakeComplete())
+		{
+			expireTimeout();
+		}
+	}
+	
+	/**
+	 * Invoked once the idle timeout has expired, forces the connection to close if there was no activity since
+	 * else the idle timeout is rescheduled for the rest of the {@link #idleTimeout}.
+	 */
+	private void expireIdleTimeout()
+	{
+		long timeout = idleTimeout;
+		long idle = System.nanoTime() - lastActivityTime;
+		if(timeout > 0 && idle < timeout)
+		{
+			synchronized(timeoutsLock)
+			{
+				if(idleTimeoutTask != null)
+				{
+					idleTimeoutTask = HashedWheelTimer.getSharedTimer().newTimeout(this::expireIdleTimeout, timeout - idle, TimeUnit.NANOSECONDS);
+				}
+			}
+			return;
+		}
+		synchronized(timeoutsLock)
+		{
+			if(idleTimeoutTask == null)
+			{
+				return;
+			}
+			idleTimeoutTask = null;
+		}
+		if(timeout > 0)
+		{
+			expireTimeout();
+		}
+	}
+	
+	/**
+	 * Forces the connection to close because a timeout has expired.
+	 */
+	private void expireTimeout()
+	{
+		if(state.get() == SSLConnectionState.CLOSED)
+		{
+			return;
+		}
+		if(socket instanceof SSLSocket)
+		{
+			((SSLSocket) socket).forceClosure();
+		} else
+		{
+			forceClosure();
+			socket.manager().close(DisconnectionType.LOCAL_CLOSE);
+		}
+	}
+	
 	/**
 	 * Returns the applicationBufferSize of the current session.
 	 * The applicationBufferSize determines the max size of a plaintext packet
@@ -611,7 +2520,8 @@ public class SSLSocketBase implements SSLSocket
 	}
 	
 	/**
-	 * List of runnables to be executed when an handshake is complete
+	 * List of runnables to be executed when an handshake is complete, it is registered to and drained while synchronized on
+	 * itself
 	 */
 	private final List<Runnable> onHandshakeComplete = new ArrayList<>();
 	
@@ -624,15 +2534,83 @@ public class SSLSocketBase implements SSLSocket
 	@Override
 	public void onHandshakeComplete(Runnable onHandshakeComplete)
 	{
-		if(isHandshakeComplete())
+		synchronized(this.onHandshakeComplete)
 		{
-			Validator.runRunnable(onHandshakeComplete);
-		} else
+			//the state is also past ESTABLISHED once closing, only a completed handshake runs the callback
+			if(!handshakeCompleted)
+			{
+				this.onHandshakeComplete.add(onHandshakeComplete);
+				return;
+			}
+		}
+		runHandshakeCallback(onHandshakeComplete);
+	}
+	
+	/**
+	 * Runs the specified handshakeCompleteRunnable on the {@link #callbackExecutor} or in the current thread if there is none.
+	 *
+	 * @param handshakeCompleteRunnable to run
+	 */
+	private void runHandshakeCallback(Runnable handshakeCompleteRunnable)
+	{
+		Executor callbackExecutor = this.callbackExecutor;
+		if(callbackExecutor == null)
 		{
-			this.onHandshakeComplete.add(onHandshakeComplete);
+			Validator.runRunnable(handshakeCompleteRunnable);
+		} else if(handshakeCompleteRunnable != null)
+		{
+			callbackExecutor.execute(handshakeCompleteRunnable);
 		}
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean awaitHandshake() throws InterruptedException
+	{
+		handshakeLatch.await();
+		return handshakeCompleted;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean awaitHandshake(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		return handshakeLatch.await(timeout, unit) && handshakeCompleted;
+	}
+	
+	/**
+	 * Sets the {@link Executor} which runs the {@link #onHandshakeComplete(Runnable)} callbacks instead of the thread which completed
+	 * the handshake, so callbacks which block don't hold an I/O thread.
+	 * {@link SSLExecutors#newThreadPerTaskExecutor(String)} runs every callback on its own virtual thread on Java 21.
+	 *
+	 * @param callbackExecutor to run the callbacks on or {@code null} to run them on the thread which completed the handshake
+	 */
+	public void setCallbackExecutor(Executor callbackExecutor)
+	{
+		this.callbackExecutor = callbackExecutor;
+	}
+	
+	/**
+	 * @return the {@link Executor} which runs the {@link #onHandshakeComplete(Runnable)} callbacks or {@code null} if they run on
+	 * the thread which completed the handshake
+	 */
+	public Executor getCallbackExecutor()
+	{
+		return callbackExecutor;
+	}
+	
+	/**
+	 * @return the socket which requires SSL
+	 */
+	public Socket getSocket()
+	{
+		return socket;
+	}
+	
 	/**
 	 * Returns whether the handshake process has begun.
 	 * To begin the handshake process invoke {@link #beginHandshake()}.
@@ -642,10 +2620,7 @@ public class SSLSocketBase implements SSLSocket
 	@Override
 	public boolean hasHandshakeBegun()
 	{
-		synchronized(handshakeBegun)
-		{
-			return handshakeBegun.get();
-		}
+		return state.get().hasHandshakeBegun();
 	}
 	
 	/**
@@ -654,10 +2629,25 @@ public class SSLSocketBase implements SSLSocket
 	@Override
 	public boolean isHandshakeComplete()
 	{
-		synchronized(handshakeCompleted)
-		{
-			return handshakeCompleted.get();
-		}
+		return state.get().isHandshakeComplete();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isHandshaking()
+	{
+		return state.get().isHandshaking();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SSLConnectionState getConnectionState()
+	{
+		return state.get();
 	}
 	
 	/**
@@ -669,13 +2659,90 @@ public class SSLSocketBase implements SSLSocket
 		return sslEngine;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SSLMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * Returns whether the latest completed handshake has resumed a previously established session
+	 * (an abbreviated handshake) instead of creating a new session (a full handshake).
+	 * The {@link SSLEngine} doesn't expose this, so it is approximated by the session having been created before the handshake
+	 * has begun. Creation times are in milliseconds, so a session which is resumed within the millisecond it was created
+	 * is reported as a full handshake, this is meant for metrics rather than for security decisions.
+	 *
+	 * @return whether the latest completed handshake has resumed a previously established session
+	 */
+	public boolean isSessionResumed()
+	{
+		return isHandshakeComplete() && sslEngine.getSession().getCreationTime() < handshakeBeginTime;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public SSLContext getSSLContext()
 	{
-		return sslContext;
+		return engineFactory.getSSLContext();
+	}
+	
+	/**
+	 * @return the {@link SSLEngineFactory} which creates the {@link SSLEngine}
+	 */
+	public SSLEngineFactory getSSLEngineFactory()
+	{
+		return engineFactory;
+	}
+	
+	/**
+	 * @return whether the buffers of this connection are heap or direct
+	 */
+	public SSLBufferAllocation getBufferAllocation()
+	{
+		return bufferAllocation;
+	}
+	
+	/**
+	 * Transfers the specified count of bytes of the specified fileChannel starting at the specified position
+	 * with constant memory, read {@link SSLWriter#transferFrom(Socket, FileChannel, long, long, Runnable)}.
+	 *
+	 * @param fileChannel to read from
+	 * @param position is the file position to start reading from
+	 * @param count is the amount of bytes to transfer
+	 * @param onTransferFinished to invoke once every byte has been written (possibly {@code null})
+	 */
+	public void transferFrom(FileChannel fileChannel, long position, long count, Runnable onTransferFinished)
+	{
+		writer.transferFrom(socket, fileChannel, position, count, onTransferFinished);
+	}
+	
+	/**
+	 * Transfers the specified count of bytes of the specified fileChannel starting at the specified position
+	 * with constant memory, read {@link SSLWriter#transferFrom(Socket, FileChannel, long, long, Runnable, Consumer)}.
+	 *
+	 * @param fileChannel to read from
+	 * @param position is the file position to start reading from
+	 * @param count is the amount of bytes to transfer
+	 * @param onTransferFinished to invoke once every byte has been written (possibly {@code null})
+	 * @param onTransferFailed to invoke if the transfer failed (possibly {@code null})
+	 */
+	public void transferFrom(FileChannel fileChannel, long position, long count, Runnable onTransferFinished,
+							 Consumer<IOException> onTransferFailed)
+	{
+		writer.transferFrom(socket, fileChannel, position, count, onTransferFinished, onTransferFailed);
+	}
+	
+	/**
+	 * @return the {@link SSLWriter} of the socket, through which its writability can be queried
+	 */
+	public SSLWriter getWriter()
+	{
+		return writer;
 	}
 	
 	/**
@@ -693,10 +2760,8 @@ public class SSLSocketBase implements SSLSocket
 	@Override
 	public void forceClosure()
 	{
-		synchronized(closed)
-		{
-			closed.set(true);
-		}
+		advance(SSLConnectionState.CLOSED);
+		cancelTimeouts();
 		sslEngine.closeOutbound();
 		try
 		{
@@ -713,10 +2778,7 @@ public class SSLSocketBase implements SSLSocket
 	@Override
 	public boolean hasInitiatedClose()
 	{
-		synchronized(closed)
-		{
-			return closed.get();
-		}
+		return state.get().isClosing();
 	}
 	
 	/**
@@ -741,10 +2803,17 @@ public class SSLSocketBase implements SSLSocket
 			//return true since we can't do anything about this
 			return true;
 		}
-		//set closed to true
-		closed.set(true);
+		//advance to closing, if another thread has already initiated a close then return true
+		if(advance(SSLConnectionState.CLOSING).isClosing())
+		{
+			return true;
+		}
 		//set disconnectionType to the specified disconnectionType so when we actually close the socket we can pass it on
 		this.disconnectionType = disconnectionType;
+		//write anything that is still queued before the close
+		writer.flush(socket);
+		//don't wait forever for the peer's close_notify
+		startCloseTimeout();
 		//notify the SSLEngine we are closing by closing the outbound
 		sslEngine.closeOutbound();
 		//create a handshake loop to initiate the close handshake
@@ -0,0 +1,115 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An {@link Executor} which runs its tasks one at a time in the order they were given, on a shared {@link Executor}.
+ * Many {@link SerialExecutor}s can share the same threads while the tasks of each one never run concurrently or out of order.
+ * A single task is run per turn so a busy {@link SerialExecutor} doesn't hold a thread from the others.
+ */
+final class SerialExecutor implements Executor
+{
+	/**
+	 * The {@link Executor} the tasks are run on
+	 */
+	private final Executor executor;
+	/**
+	 * The tasks which have yet to run
+	 */
+	private final Deque<Runnable> tasks = new ConcurrentLinkedDeque<>();
+	/**
+	 * Whether a turn has been given to the {@link #executor} and hasn't finished yet
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	
+	SerialExecutor(Executor executor)
+	{
+		this.executor = executor;
+	}
+	
+	/**
+	 * @return the {@link Executor} the tasks are run on
+	 */
+	Executor getExecutor()
+	{
+		return executor;
+	}
+	
+	/**
+	 * Runs the specified task after every task which was given before it has finished.
+	 * If the {@link #executor} rejects the turn the specified task is removed, so it won't run later.
+	 *
+	 * @param task to run
+	 * @throws RejectedExecutionException if the {@link #executor} rejected the turn
+	 */
+	@Override
+	public void execute(Runnable task)
+	{
+		tasks.offer(task);
+		try
+		{
+			schedule();
+		} catch(RejectedExecutionException e)
+		{
+			//the caller is told the task failed, so it mustn't run once a later task is given
+			tasks.removeLastOccurrence(task);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Gives a turn to the {@link #executor} if there are tasks and no turn was given yet.
+	 */
+	private void schedule()
+	{
+		if(!tasks.isEmpty() && scheduled.compareAndSet(false, true))
+		{
+			try
+			{
+				executor.execute(this::runNext);
+			} catch(RejectedExecutionException e)
+			{
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Runs the next task then gives another turn if more tasks are waiting.
+	 */
+	private void runNext()
+	{
+		try
+		{
+			Runnable task = tasks.poll();
+			if(task != null)
+			{
+				task.run();
+			}
+		} finally
+		{
+			scheduled.set(false);
+			schedule();
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.buffer;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ByteBuffer} leased from a {@link SSLBufferCache}.
+ * Once finished with it, it should be closed so it can be reused.
+ */
+public class SSLBuffer implements Closeable
+{
+	/**
+	 * The {@link SSLBufferCache} this was leased from and will return to once closed
+	 */
+	private final SSLBufferCache cache;
+	/**
+	 * The leased {@link ByteBuffer}
+	 */
+	private final ByteBuffer byteBuffer;
+	/**
+	 * The {@link SSLBufferPool} cache of the thread which leased the {@link #byteBuffer} from the pool,
+	 * the {@link #byteBuffer} returns to it once it leaves the {@link #cache}, {@code null} if it was leased by a virtual thread
+	 */
+	final SSLBufferPool.ThreadCache origin;
+	
+	SSLBuffer(SSLBufferCache cache, ByteBuffer byteBuffer, SSLBufferPool.ThreadCache origin)
+	{
+		this.cache = cache;
+		this.byteBuffer = byteBuffer;
+		this.origin = origin;
+	}
+	
+	/**
+	 * @return the leased {@link ByteBuffer}
+	 */
+	public ByteBuffer getByteBuffer()
+	{
+		return byteBuffer;
+	}
+	
+	/**
+	 * Returns this to the {@link SSLBufferCache} it was leased from,
+	 * the {@link ByteBuffer} should no longer be used.
+	 */
+	@Override
+	public void close()
+	{
+		cache.release(this);
+	}
+}
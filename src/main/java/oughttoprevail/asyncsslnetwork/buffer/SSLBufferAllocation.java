@@ -0,0 +1,84 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Whether the buffers of a connection are heap or direct {@link ByteBuffer}s.
+ * The JDK's {@link javax.net.ssl.SSLEngine} ciphers work on heap arrays, so direct buffers add a copy inside the cipher,
+ * while heap buffers add a copy at the channel since a channel can only read into and write from direct buffers.
+ * Which is faster depends on the cipher, the provider and the payload sizes, the benchmarks' {@code BufferAllocationBenchmark}
+ * compares them.
+ */
+public enum SSLBufferAllocation
+{
+	/**
+	 * Every buffer is a heap buffer
+	 */
+	HEAP(false, false),
+	/**
+	 * Every buffer is a direct buffer
+	 */
+	DIRECT(true, true),
+	/**
+	 * Plaintext (engine side) buffers are heap buffers and ciphertext (I/O side) buffers are direct buffers
+	 */
+	HEAP_ENGINE_DIRECT_IO(false, true);
+	
+	/**
+	 * Whether plaintext buffers, the destinations of decryption, are direct
+	 */
+	private final boolean applicationDirect;
+	/**
+	 * Whether ciphertext buffers, the destinations of encryption and the buffered input of decryption, are direct
+	 */
+	private final boolean packetDirect;
+	
+	SSLBufferAllocation(boolean applicationDirect, boolean packetDirect)
+	{
+		this.applicationDirect = applicationDirect;
+		this.packetDirect = packetDirect;
+	}
+	
+	/**
+	 * @return whether plaintext buffers, the destinations of decryption, are direct
+	 */
+	public boolean isApplicationDirect()
+	{
+		return applicationDirect;
+	}
+	
+	/**
+	 * @return whether ciphertext buffers, the destinations of encryption and the buffered input of decryption, are direct
+	 */
+	public boolean isPacketDirect()
+	{
+		return packetDirect;
+	}
+	
+	/**
+	 * Allocates a {@link ByteBuffer} of the specified capacity which is direct if the specified direct is {@code true}.
+	 *
+	 * @param capacity of the {@link ByteBuffer}
+	 * @param direct whether to allocate a direct {@link ByteBuffer}
+	 * @return the allocated {@link ByteBuffer}
+	 */
+	static ByteBuffer allocate(int capacity, boolean direct)
+	{
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+}
@@ -0,0 +1,195 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.buffer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A per connection cache of reusable {@link SSLBuffer}s.
+ * Buffers which are closed return to the cache and are leased again by the next operation
+ * instead of allocating, so in a steady state no allocations occur.
+ * Buffers are leased from a shared {@link SSLBufferPool} and buffers beyond the spares are released back to it.
+ */
+public class SSLBufferCache
+{
+	/**
+	 * The default maximum amount of spare buffers kept, a single spare covers a lease which follows a close
+	 * (for example the next record of a read) while an idle connection pins little memory
+	 */
+	public static final int DEFAULT_MAX_SPARES = 1;
+	/**
+	 * The buffers which were closed and can be leased again
+	 */
+	private final Deque<SSLBuffer> spares = new ArrayDeque<>();
+	/**
+	 * The maximum amount of {@link #spares}
+	 */
+	private volatile int maxSpares;
+	/**
+	 * The pool buffers are leased from and released to
+	 */
+	private final SSLBufferPool pool;
+	
+	public SSLBufferCache()
+	{
+		this(DEFAULT_MAX_SPARES);
+	}
+	
+	public SSLBufferCache(int maxSpares)
+	{
+		this(maxSpares, false);
+	}
+	
+	public SSLBufferCache(int maxSpares, boolean direct)
+	{
+		this(maxSpares, SSLBufferPool.getPool(direct));
+	}
+	
+	public SSLBufferCache(int maxSpares, SSLBufferPool pool)
+	{
+		this.maxSpares = maxSpares;
+		this.pool = pool;
+	}
+	
+	/**
+	 * Leases a cleared {@link SSLBuffer} which has at least the specified capacity.
+	 * If there is no spare buffer large enough one is leased from the {@link #pool}.
+	 *
+	 * @param capacity is the minimum capacity of the buffer
+	 * @return the leased {@link SSLBuffer}
+	 */
+	public SSLBuffer lease(int capacity)
+	{
+		synchronized(spares)
+		{
+			SSLBuffer spare = spares.pollFirst();
+			if(spare != null)
+			{
+				if(spare.getByteBuffer().capacity() >= capacity)
+				{
+					return spare;
+				}
+				//too small for this lease, most likely the session sizes have grown
+				spares.offerFirst(spare);
+			}
+		}
+		SSLBufferPool.ThreadCache origin = pool.currentCache();
+		return new SSLBuffer(this, pool.lease(capacity), origin);
+	}
+	
+	/**
+	 * Returns the specified buffer to this cache.
+	 * If the cache already has enough spares the specified buffer is released to the {@link #pool}.
+	 *
+	 * @param buffer to return
+	 */
+	void release(SSLBuffer buffer)
+	{
+		buffer.getByteBuffer().clear();
+		synchronized(spares)
+		{
+			if(spares.size() < maxSpares)
+			{
+				spares.offerFirst(buffer);
+				return;
+			}
+		}
+		pool.release(buffer.getByteBuffer(), buffer.origin);
+	}
+	
+	/**
+	 * Sets the maximum amount of spare buffers kept, spares beyond it are released to the {@link #pool}.
+	 * With {@code 0} no spares are kept so buffers are only held while they're leased.
+	 *
+	 * @param maxSpares the maximum amount of spare buffers kept
+	 */
+	public void setMaxSpares(int maxSpares)
+	{
+		if(maxSpares < 0)
+		{
+			throw new IllegalArgumentException("Max spares cannot be negative!");
+		}
+		synchronized(spares)
+		{
+			this.maxSpares = maxSpares;
+			while(spares.size() > maxSpares)
+			{
+				SSLBuffer spare = spares.pollLast();
+				pool.release(spare.getByteBuffer(), spare.origin);
+			}
+		}
+	}
+	
+	/**
+	 * Releases every spare buffer to the {@link #pool}, for example once the connection has gone idle.
+	 * The maximum amount of spares is kept, so buffers closed afterwards are kept as spares again.
+	 */
+	public void releaseSpares()
+	{
+		synchronized(spares)
+		{
+			SSLBuffer spare;
+			while((spare = spares.pollFirst()) != null)
+			{
+				pool.release(spare.getByteBuffer(), spare.origin);
+			}
+		}
+	}
+	
+	/**
+	 * @return the maximum amount of spare buffers kept
+	 */
+	public int getMaxSpares()
+	{
+		return maxSpares;
+	}
+	
+	/**
+	 * @return whether allocated buffers are direct
+	 */
+	public boolean isDirect()
+	{
+		return pool.isDirect();
+	}
+	
+	/**
+	 * @return the amount of spare buffers currently kept
+	 */
+	public int getSpareCount()
+	{
+		synchronized(spares)
+		{
+			return spares.size();
+		}
+	}
+	
+	/**
+	 * @return the total capacity (in bytes) of the spare buffers currently kept
+	 */
+	public long getSpareCapacity()
+	{
+		synchronized(spares)
+		{
+			long capacity = 0;
+			for(SSLBuffer spare : spares)
+			{
+				capacity += spare.getByteBuffer().capacity();
+			}
+			return capacity;
+		}
+	}
+}
@@ -0,0 +1,469 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import oughttoprevail.asyncsslnetwork.SSLExecutors;
+import oughttoprevail.asyncsslnetwork.SSLMetricsExporter;
+
+/**
+ * A pool of TLS buffers shared by all connections, which backs every {@link SSLBufferCache}.
+ * Capacities are rounded up to size classes, every kilobyte up to {@link #MAX_SMALL_CLASS} (so the packet and application
+ * sizes of a session waste less than a kilobyte) then powers of two up to {@link #MAX_POOLED_CAPACITY}, larger buffers aren't pooled.
+ * Every thread has its own cache which it leases from and releases to without synchronization, a buffer released
+ * by another thread is returned to the cache of the thread which leased it through a lock-free queue, so an I/O thread
+ * gets its buffers back even when they're released by a writer or an application thread.
+ * Virtual threads are short lived and many, a cache of their own would hardly be reused and would strand its buffers once
+ * the thread ends, so they lease from and release to a single {@link SharedCache} instead.
+ */
+public class SSLBufferPool
+{
+	/**
+	 * The granularity of the small size classes
+	 */
+	private static final int SMALL_CLASS_GRANULARITY = 1024;
+	/**
+	 * The capacity of the largest small size class
+	 */
+	public static final int MAX_SMALL_CLASS = 64 * 1024;
+	/**
+	 * The capacity of the largest size class, larger buffers aren't pooled
+	 */
+	public static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+	/**
+	 * The amount of small size classes
+	 */
+	private static final int SMALL_CLASSES = MAX_SMALL_CLASS / SMALL_CLASS_GRANULARITY;
+	/**
+	 * The amount of size classes, the small size classes then a class for every power of two up to {@link #MAX_POOLED_CAPACITY}
+	 */
+	private static final int CLASSES = SMALL_CLASSES + Integer.numberOfTrailingZeros(MAX_POOLED_CAPACITY / MAX_SMALL_CLASS);
+	/**
+	 * The default {@link #maxCachedPerClass}
+	 */
+	public static final int DEFAULT_MAX_CACHED_PER_CLASS = 32;
+	/**
+	 * The pool of heap buffers
+	 */
+	private static final SSLBufferPool HEAP = new SSLBufferPool(false, DEFAULT_MAX_CACHED_PER_CLASS);
+	/**
+	 * The pool of direct buffers
+	 */
+	private static final SSLBufferPool DIRECT = new SSLBufferPool(true, DEFAULT_MAX_CACHED_PER_CLASS);
+	
+	/**
+	 * Whether the buffers of this pool are direct
+	 */
+	private final boolean direct;
+	/**
+	 * The maximum amount of buffers a thread caches per size class
+	 */
+	private final int maxCachedPerClass;
+	/**
+	 * The cache of every platform thread
+	 */
+	private final ThreadLocal<ThreadCache> threadCaches;
+	/**
+	 * The cache of the virtual threads
+	 */
+	private final SharedCache sharedCache;
+	/**
+	 * The amount of leases which reused a cached buffer
+	 */
+	private final LongAdder hits = new LongAdder();
+	/**
+	 * The amount of leases which allocated a buffer
+	 */
+	private final LongAdder misses = new LongAdder();
+	/**
+	 * The amount of leases too large to be pooled
+	 */
+	private final LongAdder unpooled = new LongAdder();
+	/**
+	 * The amount of buffers released by a thread other than the one which leased them
+	 */
+	private final LongAdder crossThreadReleases = new LongAdder();
+	/**
+	 * The amount of released buffers which were dropped since the cache was full
+	 */
+	private final LongAdder dropped = new LongAdder();
+	
+	public SSLBufferPool(boolean direct, int maxCachedPerClass)
+	{
+		if(maxCachedPerClass < 0)
+		{
+			throw new IllegalArgumentException("Max cached per class cannot be negative!");
+		}
+		this.direct = direct;
+		this.maxCachedPerClass = maxCachedPerClass;
+		this.threadCaches = ThreadLocal.withInitial(() -> new ThreadCache(this));
+		this.sharedCache = new SharedCache(maxCachedPerClass * Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Returns the shared pool of heap or direct buffers.
+	 *
+	 * @param direct whether to return the pool of direct buffers
+	 * @return the shared pool of heap or direct buffers
+	 */
+	public static SSLBufferPool getPool(boolean direct)
+	{
+		return direct ? DIRECT : HEAP;
+	}
+	
+	/**
+	 * Returns the size class of the specified capacity, the smallest size class which can hold it.
+	 *
+	 * @param capacity is the requested capacity
+	 * @return the size class of the specified capacity or {@code -1} if it is too large to be pooled
+	 */
+	static int sizeClass(int capacity)
+	{
+		if(capacity <= MAX_SMALL_CLASS)
+		{
+			return Math.max(0, (capacity - 1) / SMALL_CLASS_GRANULARITY);
+		}
+		if(capacity > MAX_POOLED_CAPACITY)
+		{
+			return -1;
+		}
+		//the index of the smallest power of two above MAX_SMALL_CLASS which can hold the capacity
+		int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+		return SMALL_CLASSES + shift - Integer.numberOfTrailingZeros(MAX_SMALL_CLASS) - 1;
+	}
+	
+	/**
+	 * Returns the capacity of the buffers of the specified size class.
+	 *
+	 * @param sizeClass is the size class
+	 * @return the capacity of the buffers of the specified size class
+	 */
+	static int classCapacity(int sizeClass)
+	{
+		if(sizeClass < SMALL_CLASSES)
+		{
+			return (sizeClass + 1) * SMALL_CLASS_GRANULARITY;
+		}
+		return MAX_SMALL_CLASS << (sizeClass - SMALL_CLASSES + 1);
+	}
+	
+	/**
+	 * Leases a cleared buffer of at least the specified capacity from the current thread's cache (or the {@link #sharedCache}
+	 * on a virtual thread), allocating one if the cache has none.
+	 *
+	 * @param capacity is the minimum capacity of the buffer
+	 * @return the leased buffer, its capacity is the capacity of the size class
+	 */
+	ByteBuffer lease(int capacity)
+	{
+		int sizeClass = sizeClass(capacity);
+		if(sizeClass == -1)
+		{
+			unpooled.increment();
+			return SSLBufferAllocation.allocate(capacity, direct);
+		}
+		ThreadCache cache = currentCache();
+		ByteBuffer byteBuffer = cache == null ? sharedCache.poll(sizeClass) : cache.poll(sizeClass);
+		if(byteBuffer != null)
+		{
+			hits.increment();
+			return byteBuffer;
+		}
+		misses.increment();
+		return SSLBufferAllocation.allocate(classCapacity(sizeClass), direct);
+	}
+	
+	/**
+	 * @return the cache of the current thread, buffers leased now should be released to it, or {@code null} on a virtual thread
+	 * which uses the {@link #sharedCache}
+	 */
+	ThreadCache currentCache()
+	{
+		return SSLExecutors.isVirtualThread() ? null : threadCaches.get();
+	}
+	
+	/**
+	 * Releases the specified byteBuffer to the specified origin, the cache of the thread which leased it.
+	 *
+	 * @param byteBuffer to release
+	 * @param origin is the cache of the thread which leased the specified byteBuffer or {@code null} if it was leased by a virtual thread
+	 */
+	void release(ByteBuffer byteBuffer, ThreadCache origin)
+	{
+		int capacity = byteBuffer.capacity();
+		int sizeClass = sizeClass(capacity);
+		//buffers which aren't of a size class (too large or allocated elsewhere) are left to the garbage collector
+		if(sizeClass == -1 || classCapacity(sizeClass) != capacity || byteBuffer.isDirect() != direct)
+		{
+			return;
+		}
+		byteBuffer.clear();
+		if(origin == null)
+		{
+			if(!sharedCache.offer(sizeClass, byteBuffer))
+			{
+				dropped.increment();
+			}
+			return;
+		}
+		if(origin.owner == Thread.currentThread())
+		{
+			if(!origin.offer(sizeClass, byteBuffer))
+			{
+				dropped.increment();
+			}
+			return;
+		}
+		crossThreadReleases.increment();
+		if(!origin.offerReturned(byteBuffer))
+		{
+			dropped.increment();
+		}
+	}
+	
+	/**
+	 * @return whether the buffers of this pool are direct
+	 */
+	public boolean isDirect()
+	{
+		return direct;
+	}
+	
+	/**
+	 * @return the amount of leases which reused a cached buffer
+	 */
+	public long getHits()
+	{
+		return hits.sum();
+	}
+	
+	/**
+	 * @return the amount of leases which allocated a buffer
+	 */
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+	
+	/**
+	 * @return the amount of leases too large to be pooled
+	 */
+	public long getUnpooled()
+	{
+		return unpooled.sum();
+	}
+	
+	/**
+	 * @return the amount of buffers released by a thread other than the one which leased them
+	 */
+	public long getCrossThreadReleases()
+	{
+		return crossThreadReleases.sum();
+	}
+	
+	/**
+	 * @return the amount of released buffers which were dropped since the cache was full
+	 */
+	public long getDropped()
+	{
+		return dropped.sum();
+	}
+	
+	/**
+	 * Exports the stats of this pool to the specified exporter.
+	 *
+	 * @param exporter to export to
+	 */
+	public void export(SSLMetricsExporter exporter)
+	{
+		String prefix = direct ? "direct_buffer_pool_" : "heap_buffer_pool_";
+		exporter.counter(prefix + "hits", getHits());
+		exporter.counter(prefix + "misses", getMisses());
+		exporter.counter(prefix + "unpooled", getUnpooled());
+		exporter.counter(prefix + "cross_thread_releases", getCrossThreadReleases());
+		exporter.counter(prefix + "dropped", getDropped());
+	}
+	
+	/**
+	 * The buffers cached by a single thread.
+	 */
+	static class ThreadCache
+	{
+		/**
+		 * The thread which owns this cache, only it accesses the {@link #classes}
+		 */
+		private final Thread owner = Thread.currentThread();
+		/**
+		 * The pool of this cache
+		 */
+		private final SSLBufferPool pool;
+		/**
+		 * The cached buffers of every size class
+		 */
+		private final ArrayDeque<ByteBuffer>[] classes;
+		/**
+		 * Buffers released by other threads, moved into the {@link #classes} by the {@link #owner} once it misses
+		 */
+		private final Queue<ByteBuffer> returned = new ConcurrentLinkedQueue<>();
+		/**
+		 * The amount of {@link #returned} buffers, bounded so a thread which no longer leases doesn't collect buffers forever
+		 */
+		private final AtomicInteger returnedCount = new AtomicInteger();
+		
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		ThreadCache(SSLBufferPool pool)
+		{
+			this.pool = pool;
+			this.classes = new ArrayDeque[CLASSES];
+		}
+		
+		/**
+		 * Polls a cached buffer of the specified sizeClass, if there is none the buffers returned by other threads are collected first.
+		 *
+		 * @param sizeClass of the buffer
+		 * @return a cached buffer or {@code null} if there is none
+		 */
+		ByteBuffer poll(int sizeClass)
+		{
+			ArrayDeque<ByteBuffer> cached = classes[sizeClass];
+			ByteBuffer byteBuffer = cached == null ? null : cached.pollFirst();
+			if(byteBuffer == null && returnedCount.get() > 0)
+			{
+				collectReturned();
+				cached = classes[sizeClass];
+				byteBuffer = cached == null ? null : cached.pollFirst();
+			}
+			return byteBuffer;
+		}
+		
+		/**
+		 * Caches the specified byteBuffer of the specified sizeClass, may only be invoked by the {@link #owner}.
+		 *
+		 * @param sizeClass of the specified byteBuffer
+		 * @param byteBuffer to cache
+		 * @return whether the specified byteBuffer was cached, {@code false} if the cache of its size class is full
+		 */
+		boolean offer(int sizeClass, ByteBuffer byteBuffer)
+		{
+			ArrayDeque<ByteBuffer> cached = classes[sizeClass];
+			if(cached == null)
+			{
+				cached = classes[sizeClass] = new ArrayDeque<>();
+			}
+			if(cached.size() >= pool.maxCachedPerClass)
+			{
+				return false;
+			}
+			cached.offerFirst(byteBuffer);
+			return true;
+		}
+		
+		/**
+		 * Queues the specified byteBuffer which was released by another thread, until the {@link #owner} collects it.
+		 *
+		 * @param byteBuffer to queue
+		 * @return whether the specified byteBuffer was queued, {@code false} if too many are queued
+		 */
+		boolean offerReturned(ByteBuffer byteBuffer)
+		{
+			if(returnedCount.incrementAndGet() > pool.maxCachedPerClass * 4)
+			{
+				returnedCount.decrementAndGet();
+				return false;
+			}
+			returned.offer(byteBuffer);
+			return true;
+		}
+		
+		/**
+		 * Moves the buffers released by other threads into the {@link #classes}.
+		 */
+		private void collectReturned()
+		{
+			ByteBuffer byteBuffer;
+			while((byteBuffer = returned.poll()) != null)
+			{
+				returnedCount.decrementAndGet();
+				if(!offer(sizeClass(byteBuffer.capacity()), byteBuffer))
+				{
+					pool.dropped.increment();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The buffers cached for virtual threads, shared by all of them.
+	 */
+	static class SharedCache
+	{
+		/**
+		 * The maximum amount of buffers cached per size class
+		 */
+		private final int maxCachedPerClass;
+		/**
+		 * The cached buffers of every size class, guarded by this cache
+		 */
+		private final ArrayDeque<ByteBuffer>[] classes;
+		
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		SharedCache(int maxCachedPerClass)
+		{
+			this.maxCachedPerClass = maxCachedPerClass;
+			this.classes = new ArrayDeque[CLASSES];
+		}
+		
+		/**
+		 * Polls a cached buffer of the specified sizeClass.
+		 *
+		 * @param sizeClass of the buffer
+		 * @return a cached buffer or {@code null} if there is none
+		 */
+		synchronized ByteBuffer poll(int sizeClass)
+		{
+			ArrayDeque<ByteBuffer> cached = classes[sizeClass];
+			return cached == null ? null : cached.pollFirst();
+		}
+		
+		/**
+		 * Caches the specified byteBuffer of the specified sizeClass.
+		 *
+		 * @param sizeClass of the specified byteBuffer
+		 * @param byteBuffer to cache
+		 * @return whether the specified byteBuffer was cached, {@code false} if the cache of its size class is full
+		 */
+		synchronized boolean offer(int sizeClass, ByteBuffer byteBuffer)
+		{
+			ArrayDeque<ByteBuffer> cached = classes[sizeClass];
+			if(cached == null)
+			{
+				cached = classes[sizeClass] = new ArrayDeque<>();
+			}
+			if(cached.size() >= maxCachedPerClass)
+			{
+				return false;
+			}
+			cached.offerFirst(byteBuffer);
+			return true;
+		}
+	}
+}
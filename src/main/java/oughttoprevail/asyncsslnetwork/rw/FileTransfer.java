@@ -0,0 +1,364 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.rw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import oughttoprevail.asyncnetwork.Socket;
+import oughttoprevail.asyncnetwork.util.Consumer;
+import oughttoprevail.asyncnetwork.util.Validator;
+import oughttoprevail.asyncsslnetwork.SSLSocket;
+import oughttoprevail.asyncsslnetwork.SSLSocketBase;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
+
+/**
+ * A transfer of a file region through a {@link SSLWriter}.
+ * The region is read chunk by chunk into a small fixed ring of plaintext buffers, each chunk is a single TLS record and
+ * a buffer is only refilled once its record has been written, so the memory used is constant no matter how large the region is.
+ * The ring buffers are leased from the connection's plaintext buffers as they're needed and closed once the transfer finishes or fails.
+ * The transfer fails if the connection closes before every chunk has been written.
+ */
+class FileTransfer
+{
+	/**
+	 * The size of a chunk, the maximum plaintext size of a single TLS record
+	 */
+	private static final int CHUNK_SIZE = SSLWriter.MAX_RECORD_SIZE;
+	/**
+	 * The amount of buffers in the ring, this is the maximum amount of chunks which are being written at once
+	 */
+	private static final int RING_SIZE = 4;
+	/**
+	 * The writer the chunks are written with
+	 */
+	private final SSLWriter writer;
+	/**
+	 * The socket the chunks are written to
+	 */
+	private final Socket socket;
+	/**
+	 * The file the chunks are read from
+	 */
+	private final FileChannel fileChannel;
+	/**
+	 * The file position of the next chunk
+	 */
+	private long position;
+	/**
+	 * The file position the transfer ends at
+	 */
+	private long end;
+	/**
+	 * Invoked once every chunk has been written
+	 */
+	private final Runnable onTransferFinished;
+	/**
+	 * Invoked if the transfer failed or {@code null} to give the failure to the socket's exception handler
+	 */
+	private final Consumer<IOException> onTransferFailed;
+	/**
+	 * The {@link SSLSocketBase} of the socket, it fails the transfer once the connection is closing
+	 */
+	private final SSLSocketBase sslSocketBase;
+	/**
+	 * Fails the transfer, given to {@link SSLSocketBase#onClosing(Runnable)} since chunks aren't finished once the connection is closing
+	 */
+	private final Runnable onClosing = () -> fail(new IOException("Connection closed before the transfer has finished!"));
+	/**
+	 * The leased ring buffers which aren't being written
+	 */
+	private final Queue<Chunk> freeChunks = new ArrayDeque<>(RING_SIZE);
+	/**
+	 * The amount of ring buffers which have been leased
+	 */
+	private int leased;
+	/**
+	 * The amount of chunks which are being written
+	 */
+	private int inFlight;
+	/**
+	 * Whether a thread is currently reading and writing chunks, a chunk which finished writing while this is true
+	 * is left for that thread so a writer which finishes synchronously doesn't recurse once per chunk
+	 */
+	private boolean sending;
+	/**
+	 * Whether the transfer has finished (or failed)
+	 */
+	private boolean done;
+	
+	FileTransfer(SSLWriter writer, Socket socket, FileChannel fileChannel, long position, long count, Runnable onTransferFinished,
+				 Consumer<IOException> onTransferFailed)
+	{
+		this.writer = writer;
+		this.socket = socket;
+		this.fileChannel = fileChannel;
+		this.position = position;
+		this.end = position + count;
+		this.onTransferFinished = onTransferFinished;
+		this.onTransferFailed = onTransferFailed;
+		this.sslSocketBase = ((SSLSocket) socket).getSSLSocketBase();
+	}
+	
+	/**
+	 * Starts the transfer.
+	 */
+	void start()
+	{
+		synchronized(this)
+		{
+			sending = true;
+		}
+		sslSocketBase.onClosing(onClosing);
+		send();
+	}
+	
+	/**
+	 * Invoked once a chunk has been written, its buffer is reused for the next chunk or closed if the transfer is done.
+	 *
+	 * @param chunk is the ring buffer of the written chunk
+	 */
+	private void written(Chunk chunk)
+	{
+		synchronized(this)
+		{
+			inFlight--;
+			if(!done)
+			{
+				freeChunks.add(chunk);
+				if(sending)
+				{
+					return;
+				}
+				sending = true;
+				chunk = null;
+			}
+		}
+		if(chunk != null)
+		{
+			chunk.buffer.close();
+			return;
+		}
+		send();
+	}
+	
+	/**
+	 * Reads and writes chunks while there are free ring buffers and the region has yet to be fully read,
+	 * then invokes the {@link #onTransferFinished} if every chunk has been written.
+	 * The file is read without holding the lock so a chunk which finished writing meanwhile isn't held up by the read,
+	 * only the sending thread changes the {@link #position}.
+	 */
+	private void send()
+	{
+		boolean finished;
+		while(true)
+		{
+			Chunk chunk;
+			long from;
+			int length;
+			synchronized(this)
+			{
+				chunk = !done && position < end ? nextChunk() : null;
+				if(chunk == null)
+				{
+					sending = false;
+					finished = !done && position >= end && inFlight == 0;
+					done |= finished;
+					break;
+				}
+				from = position;
+				length = (int) Math.min(CHUNK_SIZE, end - position);
+			}
+			ByteBuffer chunkBuffer = chunk.buffer.getByteBuffer();
+			try
+			{
+				readChunk(chunkBuffer, from, length);
+			} catch(IOException e)
+			{
+				//the transfer can't continue, what was already written stays written
+				chunk.buffer.close();
+				stopSending();
+				fail(e);
+				return;
+			}
+			synchronized(this)
+			{
+				if(done)
+				{
+					//the transfer failed while reading
+					sending = false;
+					chunk.buffer.close();
+					return;
+				}
+				if(!chunkBuffer.hasRemaining())
+				{
+					//the file is shorter than the region, end the transfer at the end of file
+					freeChunks.add(chunk);
+					end = position;
+					continue;
+				}
+				position += chunkBuffer.remaining();
+				inFlight++;
+			}
+			try
+			{
+				writer.write(socket, chunkBuffer, chunk);
+			} catch(IllegalStateException e)
+			{
+				//the connection is closing, the chunk won't be written
+				synchronized(this)
+				{
+					inFlight--;
+				}
+				chunk.buffer.close();
+				stopSending();
+				fail(new IOException("Connection closed before the transfer has finished!", e));
+				return;
+			}
+		}
+		if(finished)
+		{
+			sslSocketBase.removeOnClosing(onClosing);
+			releaseFreeChunks();
+			Validator.runRunnable(onTransferFinished);
+		}
+	}
+	
+	/**
+	 * Returns a free ring buffer, leasing one if fewer than {@link #RING_SIZE} have been leased, the lock must be held.
+	 *
+	 * @return a free ring buffer or {@code null} if all of them are being written
+	 */
+	private Chunk nextChunk()
+	{
+		Chunk chunk = freeChunks.poll();
+		if(chunk == null && leased < RING_SIZE)
+		{
+			leased++;
+			chunk = new Chunk(sslSocketBase.leaseApplicationBuffer(CHUNK_SIZE));
+		}
+		return chunk;
+	}
+	
+	/**
+	 * Closes the ring buffers which aren't being written, the ones which are being written are closed once they've been written.
+	 */
+	private void releaseFreeChunks()
+	{
+		while(true)
+		{
+			Chunk chunk;
+			synchronized(this)
+			{
+				chunk = freeChunks.poll();
+			}
+			if(chunk == null)
+			{
+				return;
+			}
+			chunk.buffer.close();
+		}
+	}
+	
+	/**
+	 * Stops the sending thread.
+	 */
+	private synchronized void stopSending()
+	{
+		sending = false;
+	}
+	
+	/**
+	 * Fails the transfer with the specified exception unless it has already finished or failed.
+	 *
+	 * @param exception is why the transfer failed
+	 */
+	private void fail(IOException exception)
+	{
+		synchronized(this)
+		{
+			if(done)
+			{
+				return;
+			}
+			done = true;
+			end = position;
+		}
+		sslSocketBase.removeOnClosing(onClosing);
+		releaseFreeChunks();
+		if(onTransferFailed == null)
+		{
+			socket.manager().exception(exception);
+		} else
+		{
+			onTransferFailed.accept(exception);
+		}
+	}
+	
+	/**
+	 * Reads the specified length of bytes of the file starting at the specified from into the specified chunk and flips it,
+	 * less is read if the file ends first.
+	 *
+	 * @param chunk to read into
+	 * @param from is the file position to read from
+	 * @param length is the amount of bytes to read
+	 * @throws IOException if reading from the {@link #fileChannel} failed
+	 */
+	private void readChunk(ByteBuffer chunk, long from, int length) throws IOException
+	{
+		chunk.clear();
+		chunk.limit(length);
+		while(chunk.hasRemaining())
+		{
+			int read = fileChannel.read(chunk, from + chunk.position());
+			if(read == -1)
+			{
+				break;
+			}
+		}
+		chunk.flip();
+	}
+	
+	/**
+	 * A leased ring buffer, it is the onWriteFinished of the chunk written from it.
+	 */
+	private class Chunk implements Consumer<ByteBuffer>
+	{
+		/**
+		 * The leased buffer the chunk is read into
+		 */
+		private final SSLBuffer buffer;
+		
+		private Chunk(SSLBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+		
+		/**
+		 * Invoked once the chunk has been written.
+		 *
+		 * @param byteBuffer is the written chunk
+		 */
+		@Override
+		public void accept(ByteBuffer byteBuffer)
+		{
+			written(this);
+		}
+	}
+}
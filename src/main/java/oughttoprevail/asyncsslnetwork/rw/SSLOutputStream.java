@@ -0,0 +1,194 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.rw;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import oughttoprevail.asyncnetwork.Socket;
+import oughttoprevail.asyncnetwork.util.Consumer;
+import oughttoprevail.asyncsslnetwork.SSLSocket;
+import oughttoprevail.asyncsslnetwork.SSLSocketBase;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
+
+/**
+ * A blocking {@link OutputStream} which writes through the {@link SSLWriter} of a {@link SSLSocket}.
+ * Every write blocks until the handshake has completed, then the written bytes are copied into buffers leased from the connection
+ * and given to the writer. A write only blocks further while the writer isn't writable, so a slow peer pushes back on the
+ * writing thread through the writer's watermarks (which are disabled by default).
+ * On Java 21 a virtual thread from {@link oughttoprevail.asyncsslnetwork.SSLExecutors#newThreadPerTaskExecutor(String)}
+ * makes blocking cheap for many connections.
+ */
+public class SSLOutputStream extends OutputStream
+{
+	private final SSLSocketBase sslSocketBase;
+	private final SSLWriter writer;
+	private final Socket socket;
+	/**
+	 * The lock a write waits on while the {@link #writer} isn't writable, notified once it is writable or the connection is closing
+	 */
+	private final Object writableLock = new Object();
+	/**
+	 * Whether the connection is closing, guarded by the {@link #writableLock}
+	 */
+	private boolean closing;
+	/**
+	 * Wakes the waiting writes once the {@link #writer} is writable again
+	 */
+	private final Consumer<Boolean> onWritabilityChanged = writable ->
+	{
+		if(writable)
+		{
+			wake(false);
+		}
+	};
+	
+	/**
+	 * Constructs a new {@link SSLOutputStream} which writes to the specified sslSocket.
+	 *
+	 * @param sslSocket to write to
+	 */
+	public SSLOutputStream(SSLSocket sslSocket)
+	{
+		this.sslSocketBase = sslSocket.getSSLSocketBase();
+		this.writer = sslSocketBase.getWriter();
+		this.socket = sslSocketBase.getSocket();
+		writer.addOnWritabilityChanged(onWritabilityChanged);
+		sslSocketBase.onClosing(() ->
+		{
+			writer.removeOnWritabilityChanged(onWritabilityChanged);
+			wake(true);
+		});
+	}
+	
+	/**
+	 * Wakes the waiting writes.
+	 *
+	 * @param closing whether the connection is closing, in which case the waiting writes fail
+	 */
+	private void wake(boolean closing)
+	{
+		synchronized(writableLock)
+		{
+			this.closing |= closing;
+			writableLock.notifyAll();
+		}
+	}
+	
+	@Override
+	public void write(int b) throws IOException
+	{
+		write(new byte[]{(byte) b}, 0, 1);
+	}
+	
+	/**
+	 * Writes the specified len bytes of the specified b from the specified off.
+	 * The bytes are copied into buffers of at most {@link SSLWriter#MAX_RECORD_SIZE} leased from the connection, which are closed
+	 * once they've been written, so b can be reused once this returns.
+	 *
+	 * @throws IOException if the connection closed before the bytes could be given to the writer
+	 * or the current thread was interrupted while waiting
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		if(off < 0 || len < 0 || len > b.length - off)
+		{
+			throw new IndexOutOfBoundsException();
+		}
+		if(len == 0)
+		{
+			return;
+		}
+		try
+		{
+			if(!sslSocketBase.awaitHandshake())
+			{
+				throw new IOException("Connection closed before the handshake completed!");
+			}
+		} catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		int end = off + len;
+		while(off < end)
+		{
+			awaitWritable();
+			int length = Math.min(SSLWriter.MAX_RECORD_SIZE, end - off);
+			SSLBuffer writeBuffer = sslSocketBase.leaseApplicationBuffer(length);
+			ByteBuffer writeByteBuffer = writeBuffer.getByteBuffer();
+			writeByteBuffer.put(b, off, length).flip();
+			try
+			{
+				writer.write(socket, writeByteBuffer, byteBuffer -> writeBuffer.close());
+			} catch(IllegalStateException e)
+			{
+				//the connection is closing, the buffer won't be written
+				writeBuffer.close();
+				throw new IOException("Connection closed before the write completed!", e);
+			}
+			off += length;
+		}
+	}
+	
+	/**
+	 * Blocks while the {@link #writer} isn't writable.
+	 *
+	 * @throws IOException if the connection is closing or the current thread was interrupted while waiting
+	 */
+	private void awaitWritable() throws IOException
+	{
+		synchronized(writableLock)
+		{
+			while(!writer.isWritable() && !closing)
+			{
+				try
+				{
+					writableLock.wait();
+				} catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+			if(closing)
+			{
+				throw new IOException("Connection closed before the write completed!");
+			}
+		}
+	}
+	
+	/**
+	 * Writes anything the {@link SSLWriter} has queued, read {@link SSLWriter#flush(Socket)}.
+	 */
+	@Override
+	public void flush()
+	{
+		writer.flush(socket);
+	}
+	
+	/**
+	 * Closes the socket with a close handshake.
+	 */
+	@Override
+	public void close()
+	{
+		socket.close();
+	}
+}
@@ -19,11 +19,11 @@ import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Queue;
 
-import oughttoprevail.asyncnetwork.pool.PooledByteBuffer;
 import oughttoprevail.asyncnetwork.util.Predicate;
 import oughttoprevail.asyncnetwork.util.reader.Reader;
 import oughttoprevail.asyncsslnetwork.SSLSocket;
 import oughttoprevail.asyncsslnetwork.SSLSocketBase;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
 
 /**
  * A reader {@link SSLSocket}.
@@ -31,9 +31,14 @@ import oughttoprevail.asyncsslnetwork.SSLSocketBase;
 public class SSLReader extends Reader
 {
 	/**
-	 * Queue of pending decrypted {@link ByteBuffer}
+	 * Queue of pending decrypted {@link SSLBuffer}, each is closed once it has been fully read
 	 */
-	private final Queue<ByteBuffer> pendingMessages;
+	private final Queue<SSLBuffer> pendingMessages;
+	/**
+	 * The lock which guards the {@link #pendingMessages} and the requests, the application data which arrived along with the end of
+	 * a handshake is handed to this reader by the handshake executor rather than the reading thread
+	 */
+	private final Object requestsLock = new Object();
 	private SSLSocketBase sslSocketBase;
 	
 	public SSLReader()
@@ -44,11 +49,14 @@ public class SSLReader extends Reader
 	public void init(SSLSocketBase sslSocketBase)
 	{
 		this.sslSocketBase = sslSocketBase;
+		sslSocketBase.onHandshakeApplicationData(this::callRequests);
 	}
 	
 	/**
 	 * Decrypts data in the socket's read byte buffer and invokes {@link Reader#callRequests(ByteBuffer)} with a
-	 * decrypted temporary {@link PooledByteBuffer}.
+	 * decrypted temporary {@link SSLBuffer}.
+	 * The read is handled in a batch of the {@link SSLWriter}, so the writes made by the requests are coalesced
+	 * and flushed once the read has been handled.
 	 *
 	 * @param byteBuffer which contains input data
 	 */
@@ -59,9 +67,44 @@ public class SSLReader extends Reader
 		{
 			return;
 		}
-		//We wait if handshake has yet to begin or we are handshaking but not waiting for data
-		if(!sslSocketBase.hasHandshakeBegun() || (sslSocketBase.isHandshaking() && !sslSocketBase.isWaitingForUnwrap()))
+		SSLWriter writer = sslSocketBase.getWriter();
+		writer.beginBatch();
+		try
+		{
+			decryptInput(byteBuffer);
+		} finally
+		{
+			writer.endBatch(sslSocketBase.getSocket());
+		}
+	}
+	
+	/**
+	 * Decrypts data in the specified byteBuffer and invokes {@link Reader#callRequests(ByteBuffer)} with every
+	 * decrypted temporary {@link SSLBuffer}.
+	 *
+	 * @param byteBuffer which contains input data
+	 */
+	private void decryptInput(ByteBuffer byteBuffer)
+	{
+		//a handshake running on the handshake executor takes the input there
+		if(sslSocketBase.offerHandshakeInput(byteBuffer))
+		{
+			return;
+		}
+		//the input is left for the handshake, which may only be waiting for it to begin
+		if(!sslSocketBase.hasHandshakeBegun())
 		{
+			sslSocketBase.inputBeforeHandshake();
+			return;
+		}
+		//We wait if we are handshaking but not waiting for data
+		if(sslSocketBase.isHandshaking() && !sslSocketBase.isWaitingForUnwrap())
+		{
+			return;
+		}
+		if(sslSocketBase.isZeroCopyUnwrap() && !sslSocketBase.isHandshaking())
+		{
+			callRequestsDirect(byteBuffer);
 			return;
 		}
 		sslSocketBase.fillReadByteBuffer(byteBuffer);
@@ -70,20 +113,40 @@ public class SSLReader extends Reader
 		{
 			while(byteBuffer.hasRemaining())
 			{
-				PooledByteBuffer decryptedByteBuffer = sslSocketBase.decrypt();
+				SSLBuffer decryptedByteBuffer = sslSocketBase.decrypt();
 				if(decryptedByteBuffer == null)
 				{
 					return;
 				}
-				ByteBuffer decrypted = decryptedByteBuffer.getByteBuffer();
-				super.callRequests(decrypted);
-				if(decrypted.position() == 0)
-				{
-					decryptedByteBuffer.close();
-				} else
+				callRequests(decryptedByteBuffer);
+				//a batched decrypt has already decrypted everything available
+				if(sslSocketBase.getSSLEngine().isInboundDone() || (sslSocketBase.isBatchedUnwrap() && !sslSocketBase.isHandshaking()))
 				{
-					pendingMessages.offer(decrypted);
+					return;
 				}
+			}
+		} finally
+		{
+			sslSocketBase.clearSocketInput(byteBuffer);
+			sslSocketBase.releaseIdleReadByteBuffer();
+		}
+	}
+	
+	/**
+	 * Decrypts straight from the specified byteBuffer (without copying it first) and invokes
+	 * {@link Reader#callRequests(ByteBuffer)} with every decrypted temporary {@link SSLBuffer}.
+	 *
+	 * @param byteBuffer which contains input data
+	 */
+	private void callRequestsDirect(ByteBuffer byteBuffer)
+	{
+		sslSocketBase.prepareDirectInput(byteBuffer);
+		try
+		{
+			SSLBuffer decryptedByteBuffer;
+			while((decryptedByteBuffer = sslSocketBase.decrypt(byteBuffer)) != null)
+			{
+				callRequests(decryptedByteBuffer);
 				if(sslSocketBase.getSSLEngine().isInboundDone())
 				{
 					return;
@@ -92,9 +155,63 @@ public class SSLReader extends Reader
 		} finally
 		{
 			byteBuffer.clear();
+			sslSocketBase.releaseIdleReadByteBuffer();
+		}
+	}
+	
+	/**
+	 * Invokes {@link Reader#callRequests(ByteBuffer)} with the specified decryptedByteBuffer, if there is
+	 * decrypted data left it is kept as a pending message.
+	 * This is invoked by the reading thread and by the handshake executor (with application data which arrived along with the end of
+	 * a handshake), the requests are invoked under the {@link #requestsLock} so they're never invoked by both at once.
+	 * Extending classes may override this to handle decrypted data themselves, they're then responsible
+	 * for closing the specified decryptedByteBuffer.
+	 *
+	 * @param decryptedByteBuffer which contains decrypted data
+	 */
+	protected void callRequests(SSLBuffer decryptedByteBuffer)
+	{
+		ByteBuffer decrypted = decryptedByteBuffer.getByteBuffer();
+		synchronized(requestsLock)
+		{
+			super.callRequests(decrypted);
+			if(decrypted.position() == 0)
+			{
+				decryptedByteBuffer.close();
+			} else
+			{
+				pendingMessages.offer(decryptedByteBuffer);
+			}
+		}
+	}
+	
+	/**
+	 * @return the amount of decrypted buffers which haven't been fully read yet
+	 */
+	public int getPendingMessageCount()
+	{
+		synchronized(requestsLock)
+		{
+			return pendingMessages.size();
 		}
 	}
 	
+	/**
+	 * @return the total capacity (in bytes) of the decrypted buffers which haven't been fully read yet
+	 */
+	public long getPendingMessageCapacity()
+	{
+		long capacity = 0;
+		synchronized(requestsLock)
+		{
+			for(SSLBuffer pendingMessage : pendingMessages)
+			{
+				capacity += pendingMessage.getByteBuffer().capacity();
+			}
+		}
+		return capacity;
+	}
+	
 	/**
 	 * An empty byte buffer to add requests if there is currently no decrypted data
 	 */
@@ -111,11 +228,14 @@ public class SSLReader extends Reader
 	@Override
 	public void addRequest(ByteBuffer readBuffer, Predicate<ByteBuffer> request, int requestLength)
 	{
-		ByteBuffer decryptedByteBuffer = pendingMessages.peek();
-		super.addRequest(decryptedByteBuffer == null ? NULL_BYTE_BUFFER : decryptedByteBuffer, request, requestLength);
-		if(decryptedByteBuffer != null && decryptedByteBuffer.position() == 0)
+		synchronized(requestsLock)
 		{
-			pendingMessages.remove();
+			SSLBuffer decryptedByteBuffer = pendingMessages.peek();
+			super.addRequest(decryptedByteBuffer == null ? NULL_BYTE_BUFFER : decryptedByteBuffer.getByteBuffer(), request, requestLength);
+			if(decryptedByteBuffer != null && decryptedByteBuffer.getByteBuffer().position() == 0)
+			{
+				pendingMessages.remove().close();
+			}
 		}
 	}
 }
\ No newline at end of file
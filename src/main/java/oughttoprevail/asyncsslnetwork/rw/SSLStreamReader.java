@@ -0,0 +1,360 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.rw;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import oughttoprevail.asyncsslnetwork.SSLSocketBase;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
+
+/**
+ * A {@link SSLReader} which queues the decrypted data for a blocking {@link InputStream} instead of handling read requests.
+ * Reading from {@link #getInputStream()} blocks the current thread, so it should be read from a thread of its own,
+ * on Java 21 a virtual thread from {@link oughttoprevail.asyncsslnetwork.SSLExecutors#newThreadPerTaskExecutor(String)}
+ * makes this cheap for many connections.
+ * Once the queue is full the reads are no longer decrypted, the reading thread moves them out of the socket's read byte buffer
+ * and the connection holds them encrypted until the {@link InputStream} has read enough, so a slow reader doesn't queue
+ * a decrypted buffer for everything the peer sent.
+ */
+public class SSLStreamReader extends SSLReader
+{
+	/**
+	 * The default {@link #maxQueuedBuffers}
+	 */
+	public static final int DEFAULT_MAX_QUEUED_BUFFERS = 16;
+	/**
+	 * Queue of decrypted (flipped) {@link SSLBuffer}s which haven't been read by the {@link #inputStream},
+	 * its monitor guards the fields below it and is notified once a buffer is queued or the connection is closing
+	 */
+	private final Queue<SSLBuffer> decryptedBuffers = new ArrayDeque<>();
+	/**
+	 * The amount of {@link #decryptedBuffers} at which reads are no longer decrypted
+	 */
+	private final int maxQueuedBuffers;
+	/**
+	 * Whether the {@link #decryptedBuffers} were full while the connection held input which wasn't decrypted
+	 */
+	private boolean paused;
+	/**
+	 * Whether the connection is closing, the buffers which were queued before are still read
+	 */
+	private boolean closing;
+	/**
+	 * Whether the {@link #inputStream} has been closed, buffers decrypted after it are closed right away
+	 */
+	private boolean closed;
+	/**
+	 * The lock which keeps the reading thread and a resuming {@link #inputStream} from decrypting at the same time
+	 */
+	private final Object decryptLock = new Object();
+	/**
+	 * Whether the connection holds input moved out of the socket's read byte buffer by {@link SSLSocketBase#holdInput(ByteBuffer)}
+	 * which hasn't been decrypted, guarded by the {@link #decryptLock}
+	 */
+	private boolean holding;
+	/**
+	 * The {@link InputStream} which reads the {@link #decryptedBuffers}
+	 */
+	private final InputStream inputStream = new DecryptedInputStream();
+	private SSLSocketBase sslSocketBase;
+	
+	/**
+	 * Constructs a new {@link SSLStreamReader} which queues up to {@link #DEFAULT_MAX_QUEUED_BUFFERS} decrypted buffers.
+	 */
+	public SSLStreamReader()
+	{
+		this(DEFAULT_MAX_QUEUED_BUFFERS);
+	}
+	
+	/**
+	 * Constructs a new {@link SSLStreamReader} which stops decrypting reads once the specified maxQueuedBuffers
+	 * haven't been read.
+	 * A single read can still queue every record it contains, so the queue can exceed maxQueuedBuffers by the records
+	 * of one read.
+	 *
+	 * @param maxQueuedBuffers is the amount of decrypted buffers which haven't been read at which reads stop being decrypted
+	 */
+	public SSLStreamReader(int maxQueuedBuffers)
+	{
+		if(maxQueuedBuffers <= 0)
+		{
+			throw new IllegalArgumentException("Max queued buffers must be positive!");
+		}
+		this.maxQueuedBuffers = maxQueuedBuffers;
+	}
+	
+	@Override
+	public void init(SSLSocketBase sslSocketBase)
+	{
+		super.init(sslSocketBase);
+		this.sslSocketBase = sslSocketBase;
+		sslSocketBase.onClosing(this::closing);
+	}
+	
+	/**
+	 * Decrypts the data in the socket's read byte buffer, unless the {@link #decryptedBuffers} are full (or input is already held)
+	 * in which case the data is moved out of the socket's read byte buffer and held by the connection until
+	 * the {@link #inputStream} has read enough.
+	 * The socket's read byte buffer is only ever touched here, on the reading thread.
+	 *
+	 * @param byteBuffer which contains input data
+	 */
+	@Override
+	public void callRequests(ByteBuffer byteBuffer)
+	{
+		synchronized(decryptLock)
+		{
+			//handshake input is never held back, the handshake has to complete for the queue to be read
+			if(!sslSocketBase.isHandshaking() && (holding || isFull()))
+			{
+				//held input is decrypted first so the order is kept
+				sslSocketBase.holdInput(byteBuffer);
+				holding = true;
+				decryptHeldInput();
+				return;
+			}
+			super.callRequests(byteBuffer);
+		}
+	}
+	
+	/**
+	 * @return whether the {@link #decryptedBuffers} are full, in which case {@link #paused} is set
+	 */
+	private boolean isFull()
+	{
+		synchronized(decryptedBuffers)
+		{
+			if(decryptedBuffers.size() >= maxQueuedBuffers)
+			{
+				paused = true;
+				return true;
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * Decrypts the held input until there is none left or the {@link #decryptedBuffers} are full,
+	 * the {@link #decryptLock} must be held.
+	 */
+	private void decryptHeldInput()
+	{
+		try
+		{
+			while(!isFull())
+			{
+				SSLBuffer decryptedByteBuffer = sslSocketBase.getSSLEngine().isInboundDone() ? null : sslSocketBase.decryptHeldInput();
+				if(decryptedByteBuffer == null)
+				{
+					//a partial record left in the connection is completed by the next read
+					holding = false;
+					return;
+				}
+				callRequests(decryptedByteBuffer);
+			}
+		} finally
+		{
+			sslSocketBase.releaseIdleReadByteBuffer();
+		}
+	}
+	
+	/**
+	 * Queues the specified decryptedByteBuffer for the {@link #getInputStream()}.
+	 *
+	 * @param decryptedByteBuffer which contains decrypted data
+	 */
+	@Override
+	protected void callRequests(SSLBuffer decryptedByteBuffer)
+	{
+		decryptedByteBuffer.getByteBuffer().flip();
+		synchronized(decryptedBuffers)
+		{
+			if(!closed)
+			{
+				decryptedBuffers.offer(decryptedByteBuffer);
+				decryptedBuffers.notifyAll();
+				return;
+			}
+		}
+		decryptedByteBuffer.close();
+	}
+	
+	/**
+	 * Decrypts the input which the connection held while the {@link #decryptedBuffers} were full,
+	 * invoked by the {@link #inputStream} once it has taken a buffer.
+	 * This doesn't wait for another read, the peer may have nothing more to send until it gets a response,
+	 * and only decrypts what the connection holds so the socket's read byte buffer is left to the reading thread.
+	 */
+	private void resume()
+	{
+		synchronized(decryptedBuffers)
+		{
+			if(!paused || decryptedBuffers.size() >= maxQueuedBuffers)
+			{
+				return;
+			}
+			paused = false;
+		}
+		synchronized(decryptLock)
+		{
+			if(holding)
+			{
+				decryptHeldInput();
+			}
+		}
+	}
+	
+	/**
+	 * Wakes the {@link #inputStream} once the connection is closing, so it returns {@code -1} once the queued buffers have been read.
+	 */
+	private void closing()
+	{
+		synchronized(decryptedBuffers)
+		{
+			closing = true;
+			decryptedBuffers.notifyAll();
+		}
+	}
+	
+	/**
+	 * Returns the {@link InputStream} of the decrypted data.
+	 * A read blocks until decrypted data is available and returns {@code -1} once the connection is closing and all data
+	 * decrypted before it has been read.
+	 * The stream should only be read by one thread at a time, closing it closes the socket and the buffers which haven't been read.
+	 *
+	 * @return the {@link InputStream} of the decrypted data
+	 */
+	public InputStream getInputStream()
+	{
+		return inputStream;
+	}
+	
+	/**
+	 * An {@link InputStream} over the {@link #decryptedBuffers}.
+	 */
+	private class DecryptedInputStream extends InputStream
+	{
+		/**
+		 * The {@link SSLBuffer} currently being read or {@code null} if the next one should be taken from the queue
+		 */
+		private SSLBuffer current;
+	
+		/**
+		 * Blocks until there is decrypted data to read.
+		 *
+		 * @return the byte buffer to read from or {@code null} if the connection is closing and there is nothing left to read
+		 * @throws IOException if the current thread was interrupted while waiting
+		 */
+		private ByteBuffer next() throws IOException
+		{
+			while(current == null || !current.getByteBuffer().hasRemaining())
+			{
+				if(current != null)
+				{
+					current.close();
+					current = null;
+				}
+				synchronized(decryptedBuffers)
+				{
+					while(decryptedBuffers.isEmpty())
+					{
+						if(closing || closed)
+						{
+							return null;
+						}
+						try
+						{
+							decryptedBuffers.wait();
+						} catch(InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+							throw new InterruptedIOException();
+						}
+					}
+					current = decryptedBuffers.poll();
+				}
+				resume();
+			}
+			return current.getByteBuffer();
+		}
+	
+		@Override
+		public int read() throws IOException
+		{
+			ByteBuffer byteBuffer = next();
+			return byteBuffer == null ? -1 : byteBuffer.get() & 0xFF;
+		}
+	
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if(off < 0 || len < 0 || len > b.length - off)
+			{
+				throw new IndexOutOfBoundsException();
+			}
+			if(len == 0)
+			{
+				return 0;
+			}
+			ByteBuffer byteBuffer = next();
+			if(byteBuffer == null)
+			{
+				return -1;
+			}
+			int read = Math.min(len, byteBuffer.remaining());
+			byteBuffer.get(b, off, read);
+			return read;
+		}
+	
+		@Override
+		public int available()
+		{
+			return current == null ? 0 : current.getByteBuffer().remaining();
+		}
+	
+		/**
+		 * Closes the buffers which haven't been read and the socket of this reader.
+		 */
+		@Override
+		public void close()
+		{
+			if(current != null)
+			{
+				current.close();
+				current = null;
+			}
+			synchronized(decryptedBuffers)
+			{
+				closed = true;
+				SSLBuffer decryptedByteBuffer;
+				while((decryptedByteBuffer = decryptedBuffers.poll()) != null)
+				{
+					decryptedByteBuffer.close();
+				}
+				decryptedBuffers.notifyAll();
+			}
+			if(sslSocketBase != null)
+			{
+				sslSocketBase.getSocket().close();
+			}
+		}
+	}
+}
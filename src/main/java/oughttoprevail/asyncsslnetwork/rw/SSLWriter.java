@@ -15,13 +15,25 @@ limitations under the License.
 */
 package oughttoprevail.asyncsslnetwork.rw;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import oughttoprevail.asyncnetwork.Socket;
-import oughttoprevail.asyncnetwork.pool.PooledByteBuffer;
 import oughttoprevail.asyncnetwork.util.Consumer;
 import oughttoprevail.asyncnetwork.util.writer.Writer;
+import oughttoprevail.asyncsslnetwork.SSLConnectionState;
 import oughttoprevail.asyncsslnetwork.SSLSocket;
+import oughttoprevail.asyncsslnetwork.SSLSocketBase;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
 
 /**
  * A writer for {@link SSLSocket}.
@@ -32,6 +44,116 @@ public class SSLWriter implements Writer
 	 * The writer that actually writes to the socket
 	 */
 	private final Writer writer;
+	/**
+	 * Whether writes are queued and encrypted together instead of being encrypted and written one by one
+	 */
+	private volatile boolean coalescing;
+	/**
+	 * The amount of queued plaintext bytes which causes a flush
+	 */
+	private volatile int coalescingThreshold = DEFAULT_COALESCING_THRESHOLD;
+	/**
+	 * The amount of batches which haven't ended, while coalescing writes are only queued while a batch is open
+	 */
+	private final AtomicInteger batches = new AtomicInteger();
+	/**
+	 * The lock of the queued and encrypted writes, writes are encrypted while holding it so their records stay in order,
+	 * but they're handed to the {@link #writer} (which may finish them right away) without holding it
+	 */
+	private final Object writeLock = new Object();
+	/**
+	 * The queued plaintext buffers, these are either coalesced or waiting for the pending ciphertext to drop below the {@link #lowWatermark}
+	 */
+	private final ArrayDeque<ByteBuffer> queuedBuffers = new ArrayDeque<>();
+	/**
+	 * The onWriteFinished of each of the {@link #queuedBuffers}, {@link #NO_CALLBACK} if it has none
+	 */
+	private final ArrayDeque<Consumer<ByteBuffer>> queuedCallbacks = new ArrayDeque<>();
+	/**
+	 * The amount of plaintext bytes in the {@link #queuedBuffers}
+	 */
+	private int queuedBytes;
+	/**
+	 * Whether there are any {@link #queuedBuffers}, readable without holding the {@link #writeLock}
+	 */
+	private volatile boolean queued;
+	/**
+	 * Whether the {@link #queuedBuffers} are held back by the watermarks, they're flushed once the pending ciphertext drops
+	 */
+	private boolean stalled;
+	/**
+	 * The encrypted writes in the order they were encrypted, waiting to be handed to the {@link #writer}
+	 */
+	private final ArrayDeque<EncryptedWrite> encryptedWrites = new ArrayDeque<>();
+	/**
+	 * Writes which couldn't be encrypted, their onWriteFinished are invoked by the next {@link #drain(Socket)} without holding the {@link #writeLock}
+	 */
+	private final ArrayDeque<EncryptedWrite> failedWrites = new ArrayDeque<>();
+	/**
+	 * Written {@link EncryptedWrite}s which are reused by the next writes
+	 */
+	private final ArrayDeque<EncryptedWrite> spareWrites = new ArrayDeque<>();
+	/**
+	 * Whether a thread is handing the {@link #encryptedWrites} to the {@link #writer}, only one thread does so at a time
+	 */
+	private boolean draining;
+	/**
+	 * The amount of encrypted ciphertext bytes which have yet to be written, only counted while the watermarks are enabled
+	 */
+	private final AtomicLong pendingBytes = new AtomicLong();
+	/**
+	 * The amount of {@link #pendingBytes} at which this writer stops being writable, {@code 0} disables the watermarks
+	 */
+	private volatile long highWatermark = DEFAULT_HIGH_WATERMARK;
+	/**
+	 * The amount of {@link #pendingBytes} at which this writer becomes writable again
+	 */
+	private volatile long lowWatermark = DEFAULT_LOW_WATERMARK;
+	/**
+	 * The lock of the {@link #writable} changes, it keeps the {@link #onWritabilityChanged} invocations in the order of the changes
+	 */
+	private final Object writabilityLock = new Object();
+	/**
+	 * Whether the {@link #pendingBytes} are below the {@link #highWatermark} (or back below the {@link #lowWatermark})
+	 */
+	private volatile boolean writable = true;
+	/**
+	 * Invoked with the new writability whenever {@link #isWritable()} changes
+	 */
+	private volatile Consumer<Boolean> onWritabilityChanged;
+	/**
+	 * Invoked along with the {@link #onWritabilityChanged}, these are added by whoever blocks on the writability
+	 * (such as a {@link SSLOutputStream}) so they don't replace the user's {@link #onWritabilityChanged}
+	 */
+	private final List<Consumer<Boolean>> writabilityListeners = new CopyOnWriteArrayList<>();
+	/**
+	 * Whether bursts start with small records and grow to full size records once they've been streaming for a while
+	 */
+	private volatile boolean dynamicRecordSizing;
+	/**
+	 * The maximum plaintext size of records at the start of a burst
+	 */
+	private volatile int smallRecordSize = DEFAULT_SMALL_RECORD_SIZE;
+	/**
+	 * The amount of plaintext bytes a burst sends in small records before growing to full size records
+	 */
+	private volatile long recordSizeThreshold = DEFAULT_RECORD_SIZE_THRESHOLD;
+	/**
+	 * The amount of nanoseconds without writes after which the next write starts a new burst
+	 */
+	private volatile long recordSizeIdleReset = DEFAULT_RECORD_SIZE_IDLE_RESET;
+	/**
+	 * The lock of the {@link #burstBytes} and the {@link #lastBurstWrite}
+	 */
+	private final Object recordSizeLock = new Object();
+	/**
+	 * The amount of plaintext bytes sent in the current burst
+	 */
+	private long burstBytes;
+	/**
+	 * The {@link System#nanoTime()} of the latest write of the current burst
+	 */
+	private long lastBurstWrite;
 	
 	public SSLWriter(Writer writer)
 	{
@@ -39,8 +161,327 @@ public class SSLWriter implements Writer
 	}
 	
 	/**
-	 * Encrypts the specified writeBuffer then writes the encrypted buffer.
-	 * Once finished, the specified onWriteFinished will be invoked.
+	 * The maximum plaintext size of a single TLS record
+	 */
+	public static final int MAX_RECORD_SIZE = 16384;
+	/**
+	 * The default {@link #coalescingThreshold}, the maximum plaintext size of a single TLS record
+	 */
+	public static final int DEFAULT_COALESCING_THRESHOLD = MAX_RECORD_SIZE;
+	/**
+	 * The default {@link #highWatermark}, the watermarks are disabled by default
+	 */
+	public static final long DEFAULT_HIGH_WATERMARK = 0;
+	/**
+	 * The default {@link #lowWatermark}
+	 */
+	public static final long DEFAULT_LOW_WATERMARK = 0;
+	/**
+	 * The maximum amount of {@link #spareWrites}
+	 */
+	private static final int MAX_SPARE_WRITES = 4;
+	/**
+	 * Stands in for a {@code null} onWriteFinished since the {@link #queuedCallbacks} can't hold {@code null}
+	 */
+	private static final Consumer<ByteBuffer> NO_CALLBACK = byteBuffer ->
+	{
+	};
+	/**
+	 * The default {@link #smallRecordSize}, a record of this size (with its overhead) fits in a single TCP segment
+	 */
+	public static final int DEFAULT_SMALL_RECORD_SIZE = 1369;
+	/**
+	 * The default {@link #recordSizeThreshold}
+	 */
+	public static final long DEFAULT_RECORD_SIZE_THRESHOLD = 1024 * 1024;
+	/**
+	 * The default {@link #recordSizeIdleReset}
+	 */
+	public static final long DEFAULT_RECORD_SIZE_IDLE_RESET = TimeUnit.SECONDS.toNanos(1);
+	
+	/**
+	 * Sets whether writes made during a batch should be queued and encrypted together into full size records.
+	 * A batch is open while the {@link SSLReader} handles a read and between {@link #beginBatch()} and {@link #endBatch(Socket)},
+	 * queued writes are flushed once the queued plaintext reaches {@link #setCoalescingThreshold(int)} bytes
+	 * or once the last open batch ends, whichever comes first.
+	 * Writes made outside of a batch are written right away.
+	 * Queued buffers aren't copied, see {@link #write(Socket, ByteBuffer, Consumer)}.
+	 *
+	 * @param coalescing whether writes should be coalesced
+	 */
+	public void setCoalescing(boolean coalescing)
+	{
+		this.coalescing = coalescing;
+	}
+	
+	/**
+	 * @return whether writes are queued and encrypted together into full size records
+	 */
+	public boolean isCoalescing()
+	{
+		return coalescing;
+	}
+	
+	/**
+	 * Sets the amount of queued plaintext bytes which causes a flush.
+	 *
+	 * @param coalescingThreshold the amount of queued plaintext bytes which causes a flush
+	 */
+	public void setCoalescingThreshold(int coalescingThreshold)
+	{
+		if(coalescingThreshold <= 0)
+		{
+			throw new IllegalArgumentException("Coalescing threshold must be positive!");
+		}
+		this.coalescingThreshold = coalescingThreshold;
+	}
+	
+	/**
+	 * Opens a batch, while coalescing the writes made until the batch ends are queued and encrypted together.
+	 * Every invocation must be followed by {@link #endBatch(Socket)}, batches may be nested and from several threads.
+	 */
+	public void beginBatch()
+	{
+		batches.incrementAndGet();
+	}
+	
+	/**
+	 * Ends a batch opened by {@link #beginBatch()}, once no batch is open the queued writes are flushed.
+	 *
+	 * @param socket to write to
+	 */
+	public void endBatch(Socket socket)
+	{
+		if(batches.decrementAndGet() == 0)
+		{
+			//the queued writes are checked under the writeLock, a write which saw the batch open is queued before this flush
+			flush(socket, false);
+		}
+	}
+	
+	/**
+	 * Sets whether records are sized dynamically.
+	 * When enabled every burst of writes starts with small records ({@link #setSmallRecordSize(int)}) so the peer
+	 * can decrypt the first bytes as soon as they arrive, instead of waiting for the rest of a full size record.
+	 * Once a burst has sent {@link #setRecordSizeThreshold(long)} bytes its records grow to full size ({@link #MAX_RECORD_SIZE})
+	 * for throughput, and after {@link #setRecordSizeIdleReset(long, TimeUnit)} without writes the next write starts a new burst.
+	 *
+	 * @param dynamicRecordSizing whether records should be sized dynamically
+	 */
+	public void setDynamicRecordSizing(boolean dynamicRecordSizing)
+	{
+		this.dynamicRecordSizing = dynamicRecordSizing;
+	}
+	
+	/**
+	 * @return whether records are sized dynamically
+	 */
+	public boolean isDynamicRecordSizing()
+	{
+		return dynamicRecordSizing;
+	}
+	
+	/**
+	 * Sets the maximum plaintext size of records at the start of a burst.
+	 *
+	 * @param smallRecordSize the maximum plaintext size of records at the start of a burst
+	 */
+	public void setSmallRecordSize(int smallRecordSize)
+	{
+		if(smallRecordSize <= 0 || smallRecordSize > MAX_RECORD_SIZE)
+		{
+			throw new IllegalArgumentException("Small record size must be positive and at most " + MAX_RECORD_SIZE + "!");
+		}
+		this.smallRecordSize = smallRecordSize;
+	}
+	
+	/**
+	 * Sets the amount of plaintext bytes a burst sends in small records before growing to full size records.
+	 *
+	 * @param recordSizeThreshold the amount of plaintext bytes sent in small records
+	 */
+	public void setRecordSizeThreshold(long recordSizeThreshold)
+	{
+		if(recordSizeThreshold < 0)
+		{
+			throw new IllegalArgumentException("Record size threshold cannot be negative!");
+		}
+		this.recordSizeThreshold = recordSizeThreshold;
+	}
+	
+	/**
+	 * Sets the time without writes after which the next write starts a new burst with small records.
+	 *
+	 * @param idleReset the time without writes after which a new burst starts
+	 * @param unit the {@link TimeUnit} of the specified idleReset
+	 */
+	public void setRecordSizeIdleReset(long idleReset, TimeUnit unit)
+	{
+		if(idleReset < 0)
+		{
+			throw new IllegalArgumentException("Record size idle reset cannot be negative!");
+		}
+		this.recordSizeIdleReset = unit.toNanos(idleReset);
+	}
+	
+	/**
+	 * @return the maximum plaintext size of the records of the next write
+	 */
+	public int getRecordSize()
+	{
+		if(!dynamicRecordSizing)
+		{
+			return MAX_RECORD_SIZE;
+		}
+		synchronized(recordSizeLock)
+		{
+			boolean idle = System.nanoTime() - lastBurstWrite > recordSizeIdleReset;
+			return idle || burstBytes < recordSizeThreshold ? smallRecordSize : MAX_RECORD_SIZE;
+		}
+	}
+	
+	/**
+	 * Returns how many of the specified plaintext bytes of a write go in small records, and counts them towards the current burst.
+	 * The bytes which the burst sends before reaching the {@link #recordSizeThreshold} go in small records and the rest in full size records,
+	 * so a write which crosses the threshold switches to full size records part way.
+	 *
+	 * @param bytes is the amount of plaintext bytes which are about to be written
+	 * @return the amount of plaintext bytes which go in small records
+	 */
+	private long nextSmallBytes(long bytes)
+	{
+		if(!dynamicRecordSizing || bytes == 0)
+		{
+			return 0;
+		}
+		synchronized(recordSizeLock)
+		{
+			long now = System.nanoTime();
+			if(now - lastBurstWrite > recordSizeIdleReset)
+			{
+				//the connection has been idle, start a new burst
+				burstBytes = 0;
+			}
+			lastBurstWrite = now;
+			long smallBytes = Math.max(0, Math.min(bytes, recordSizeThreshold - burstBytes));
+			burstBytes += bytes;
+			return smallBytes;
+		}
+	}
+	
+	/**
+	 * Encrypts the specified count of writeBuffers with the record sizes of the current burst.
+	 *
+	 * @param socket to encrypt for
+	 * @param writeBuffers to encrypt
+	 * @param count is the amount of writeBuffers to encrypt
+	 * @param bytes is the amount of plaintext bytes in the writeBuffers
+	 * @return a encrypted temporary {@link SSLBuffer} or {@code null} if an exception occurred during encryption
+	 */
+	private SSLBuffer encrypt(Socket socket, ByteBuffer[] writeBuffers, int count, long bytes)
+	{
+		SSLSocketBase sslSocketBase = ((SSLSocket) socket).getSSLSocketBase();
+		long smallBytes = nextSmallBytes(bytes);
+		int recordSize = smallRecordSize;
+		return smallBytes > 0 && recordSize < MAX_RECORD_SIZE ?
+			   sslSocketBase.encrypt(writeBuffers, 0, count, recordSize, smallBytes) :
+			   sslSocketBase.encrypt(writeBuffers, 0, count);
+	}
+	
+	/**
+	 * Sets the watermarks of the ciphertext which has been encrypted but has yet to be written.
+	 * Once the pending ciphertext reaches the specified highWatermark this writer stops being writable, writes
+	 * are then queued unencrypted (so no encryption or ciphertext memory is spent on data which can't be sent yet)
+	 * until the pending ciphertext drops to the specified lowWatermark.
+	 * The watermarks are disabled by default.
+	 *
+	 * @param highWatermark is the amount of pending ciphertext bytes at which this writer stops being writable, {@code 0} disables the watermarks
+	 * @param lowWatermark is the amount of pending ciphertext bytes at which this writer becomes writable again
+	 */
+	public void setWriteWatermarks(long highWatermark, long lowWatermark)
+	{
+		if(highWatermark < 0 || lowWatermark < 0)
+		{
+			throw new IllegalArgumentException("Watermarks cannot be negative!");
+		}
+		if(highWatermark != 0 && lowWatermark > highWatermark)
+		{
+			throw new IllegalArgumentException("Low watermark cannot be above the high watermark!");
+		}
+		this.highWatermark = highWatermark;
+		this.lowWatermark = lowWatermark;
+	}
+	
+	/**
+	 * @return the amount of pending ciphertext bytes at which this writer stops being writable, {@code 0} if the watermarks are disabled
+	 */
+	public long getHighWatermark()
+	{
+		return highWatermark;
+	}
+	
+	/**
+	 * @return the amount of pending ciphertext bytes at which this writer becomes writable again
+	 */
+	public long getLowWatermark()
+	{
+		return lowWatermark;
+	}
+	
+	/**
+	 * @return the amount of ciphertext bytes which have been encrypted and have yet to be written, {@code 0} while the watermarks are disabled
+	 */
+	public long getPendingBytes()
+	{
+		return pendingBytes.get();
+	}
+	
+	/**
+	 * Returns whether writes are currently encrypted and written, if not they're queued unencrypted until
+	 * the pending ciphertext drops to the low watermark.
+	 *
+	 * @return whether writes are currently encrypted and written
+	 */
+	public boolean isWritable()
+	{
+		return writable;
+	}
+	
+	/**
+	 * Sets the specified onWritabilityChanged to be invoked with the new value of {@link #isWritable()} whenever it changes.
+	 *
+	 * @param onWritabilityChanged to invoke when the writability changes
+	 */
+	public void onWritabilityChanged(Consumer<Boolean> onWritabilityChanged)
+	{
+		this.onWritabilityChanged = onWritabilityChanged;
+	}
+	
+	/**
+	 * Adds the specified onWritabilityChanged to be invoked with the new value of {@link #isWritable()} whenever it changes,
+	 * in addition to the one set by {@link #onWritabilityChanged(Consumer)}.
+	 *
+	 * @param onWritabilityChanged to invoke when the writability changes
+	 */
+	public void addOnWritabilityChanged(Consumer<Boolean> onWritabilityChanged)
+	{
+		writabilityListeners.add(onWritabilityChanged);
+	}
+	
+	/**
+	 * Removes the specified onWritabilityChanged which was given to {@link #addOnWritabilityChanged(Consumer)}, so it isn't invoked.
+	 *
+	 * @param onWritabilityChanged to remove
+	 */
+	public void removeOnWritabilityChanged(Consumer<Boolean> onWritabilityChanged)
+	{
+		writabilityListeners.remove(onWritabilityChanged);
+	}
+	
+	/**
+	 * Encrypts the specified writeBuffer right away (ahead of any queued writes) then writes the encrypted buffer,
+	 * this is how handshake and post handshake messages are written.
+	 * Once finished, the specified onWriteFinished will be invoked with the specified writeBuffer.
 	 *
 	 * @param socket to write to
 	 * @param writeBuffer to encrypt
@@ -48,35 +489,499 @@ public class SSLWriter implements Writer
 	 */
 	public void encryptThenWrite(Socket socket, ByteBuffer writeBuffer, Consumer<ByteBuffer> onWriteFinished)
 	{
-		PooledByteBuffer encryptedByteBufferElement = ((SSLSocket) socket).getSSLSocketBase().encrypt(writeBuffer);
+		synchronized(writeLock)
+		{
+			EncryptedWrite write = leaseWrite(socket);
+			write.add(writeBuffer, onWriteFinished);
+			encryptWrite(write, writeBuffer.remaining());
+		}
+		drain(socket);
+	}
+	
+	/**
+	 * Encrypts the plaintext buffers of the specified write and adds it to the {@link #encryptedWrites},
+	 * the {@link #writeLock} must be held.
+	 * If the encryption failed the write is added to the {@link #failedWrites} instead, so its onWriteFinished are still invoked.
+	 *
+	 * @param write to encrypt
+	 * @param bytes is the amount of plaintext bytes of the write
+	 * @return whether the write has been encrypted, it isn't if an exception occurred during encryption
+	 */
+	private boolean encryptWrite(EncryptedWrite write, long bytes)
+	{
+		SSLBuffer encryptedByteBufferElement = encrypt(write.socket, write.buffers, write.count, bytes);
 		//it may be null if an exception occurred during encryption
 		if(encryptedByteBufferElement == null)
 		{
-			return;
+			failedWrites.add(write);
+			return false;
 		}
 		ByteBuffer encryptedByteBuffer = encryptedByteBufferElement.getByteBuffer();
 		encryptedByteBuffer.flip();
-		writer.write(socket, encryptedByteBuffer, byteBuffer ->
+		write.encrypted = encryptedByteBufferElement;
+		write.size = encryptedByteBuffer.remaining();
+		write.counted = highWatermark > 0;
+		if(write.counted)
+		{
+			pendingBytes.addAndGet(write.size);
+		}
+		encryptedWrites.add(write);
+		return true;
+	}
+	
+	/**
+	 * Returns a spare {@link EncryptedWrite} (or a new one) for the specified socket, the {@link #writeLock} must be held.
+	 *
+	 * @param socket which is written to
+	 * @return an empty {@link EncryptedWrite}
+	 */
+	private EncryptedWrite leaseWrite(Socket socket)
+	{
+		EncryptedWrite write = spareWrites.poll();
+		if(write == null)
 		{
-			encryptedByteBufferElement.close();
-			if(onWriteFinished != null)
+			write = new EncryptedWrite();
+		}
+		write.socket = socket;
+		return write;
+	}
+	
+	/**
+	 * Hands the {@link #encryptedWrites} to the {@link #writer} in order, without holding the {@link #writeLock}.
+	 * Only one thread drains at a time, a thread which finds another thread draining leaves its writes to that thread.
+	 *
+	 * @param socket to write to
+	 */
+	private void drain(Socket socket)
+	{
+		if(Thread.holdsLock(writeLock))
+		{
+			//a nested write (such as a post handshake message produced while encrypting), the outer write drains once it releases the lock
+			return;
+		}
+		finishFailedWrites();
+		updateWritability();
+		synchronized(writeLock)
+		{
+			if(draining || encryptedWrites.isEmpty())
+			{
+				return;
+			}
+			draining = true;
+		}
+		boolean drained = false;
+		try
+		{
+			while(true)
+			{
+				EncryptedWrite write;
+				synchronized(writeLock)
+				{
+					write = encryptedWrites.poll();
+					if(write == null)
+					{
+						draining = false;
+						drained = true;
+						return;
+					}
+				}
+				writer.write(socket, write.encrypted.getByteBuffer(), write);
+			}
+		} finally
+		{
+			if(!drained)
 			{
-				onWriteFinished.accept(byteBuffer);
+				synchronized(writeLock)
+				{
+					draining = false;
+				}
 			}
-		});
+		}
 	}
 	
 	/**
-	 * {@inheritDoc}
+	 * Invokes the onWriteFinished of the {@link #failedWrites}, without holding the {@link #writeLock}.
+	 * The exception which failed their encryption has already been given to the socket's exception handler, they're finished
+	 * anyway so whoever waits on them (such as a {@link FileTransfer} or a {@link SSLOutputStream}) isn't left waiting
+	 * and gets its buffers back.
+	 */
+	private void finishFailedWrites()
+	{
+		while(true)
+		{
+			EncryptedWrite write;
+			synchronized(writeLock)
+			{
+				write = failedWrites.poll();
+			}
+			if(write == null)
+			{
+				return;
+			}
+			try
+			{
+				write.finish();
+			} finally
+			{
+				write.recycle();
+			}
+		}
+	}
+	
+	/**
+	 * Subtracts the specified written bytes from the {@link #pendingBytes}, if this writer is writable the writes which were held
+	 * back by the watermarks are written.
+	 *
+	 * @param socket which was written to
+	 * @param written is the amount of ciphertext bytes which have been written
+	 */
+	private void writtenPendingBytes(Socket socket, int written)
+	{
+		pendingBytes.addAndGet(-written);
+		updateWritability();
+		if(queued && writable)
+		{
+			synchronized(writeLock)
+			{
+				if(stalled)
+				{
+					flushQueued(socket, false);
+				}
+			}
+			drain(socket);
+		}
+	}
+	
+	/**
+	 * Updates {@link #isWritable()} by the current {@link #pendingBytes}, it stops being writable at the {@link #highWatermark}
+	 * and becomes writable again at the {@link #lowWatermark}.
+	 * This mustn't be invoked while holding the {@link #writeLock} since it invokes the {@link #onWritabilityChanged}.
+	 */
+	private void updateWritability()
+	{
+		long high = highWatermark;
+		if(high == 0 && writable)
+		{
+			return;
+		}
+		synchronized(writabilityLock)
+		{
+			long pending = pendingBytes.get();
+			if(writable)
+			{
+				if(high > 0 && pending >= high)
+				{
+					writable = false;
+					writabilityChanged(false);
+				}
+			} else if(high == 0 || pending <= lowWatermark)
+			{
+				writable = true;
+				writabilityChanged(true);
+			}
+		}
+	}
+	
+	/**
+	 * Invokes the {@link #onWritabilityChanged} and the {@link #writabilityListeners} with the specified writable.
+	 *
+	 * @param writable is the new value of {@link #isWritable()}
+	 */
+	private void writabilityChanged(boolean writable)
+	{
+		Consumer<Boolean> onWritabilityChanged = this.onWritabilityChanged;
+		if(onWritabilityChanged != null)
+		{
+			onWritabilityChanged.accept(writable);
+		}
+		for(Consumer<Boolean> writabilityListener : writabilityListeners)
+		{
+			writabilityListener.accept(writable);
+		}
+	}
+	
+	/**
+	 * Encrypts the specified writeBuffer and writes it, or queues it while coalescing during a batch or while this writer isn't writable.
+	 * A queued writeBuffer isn't copied, this writer takes ownership of it until the specified onWriteFinished is invoked,
+	 * so it mustn't be modified or reused before then.
+	 * Once the records of the specified writeBuffer have been written the specified onWriteFinished is invoked with the specified writeBuffer,
+	 * it is also invoked if the writeBuffer couldn't be encrypted, in which case the exception is given to the socket's exception handler.
+	 *
+	 * @param socket to write to
+	 * @param writeBuffer to write
+	 * @param onWriteFinished to invoke when finished (possibly {@code null})
+	 * @throws IllegalStateException if the handshake has yet to complete or the connection is closing
 	 */
 	@Override
 	public void write(Socket socket, ByteBuffer writeBuffer, Consumer<ByteBuffer> onWriteFinished)
 	{
-		if(!((SSLSocket) socket).isHandshakeComplete())
+		checkEstablished(socket);
+		synchronized(writeLock)
+		{
+			boolean batched = coalescing && batches.get() > 0;
+			if(!batched && !queued && writable)
+			{
+				EncryptedWrite write = leaseWrite(socket);
+				write.add(writeBuffer, onWriteFinished);
+				encryptWrite(write, writeBuffer.remaining());
+			} else
+			{
+				queuedBuffers.add(writeBuffer);
+				queuedCallbacks.add(onWriteFinished == null ? NO_CALLBACK : onWriteFinished);
+				queuedBytes += writeBuffer.remaining();
+				queued = true;
+				if(!writable)
+				{
+					//the write stays queued unencrypted until the pending bytes drop to the low watermark
+					stalled = true;
+				} else if(!batched || queuedBytes >= coalescingThreshold)
+				{
+					//anything queued before the batch ended is written together with this write
+					flushQueued(socket, false);
+				}
+			}
+		}
+		drain(socket);
+	}
+	
+	/**
+	 * Checks that application data can be written to the specified socket.
+	 *
+	 * @param socket to check
+	 * @throws IllegalStateException if the handshake has yet to complete or the connection is closing
+	 */
+	private static void checkEstablished(Socket socket)
+	{
+		SSLConnectionState state = ((SSLSocket) socket).getConnectionState();
+		if(state.isClosing())
+		{
+			throw new IllegalStateException("You cannot write once the connection is closing!");
+		}
+		if(!state.isEstablished())
 		{
 			throw new IllegalStateException("You cannot write until handshake is complete!");
 		}
-		encryptThenWrite(socket, writeBuffer, onWriteFinished);
+	}
+	
+	/**
+	 * Transfers the specified count of bytes of the specified fileChannel starting at the specified position.
+	 * The file is read in record sized chunks into a small fixed ring of buffers, a chunk is only read once a previous chunk
+	 * has been written, so the memory used stays constant no matter how large the file is and the watermarks are respected.
+	 * Other writes shouldn't be made to the socket until the specified onTransferFinished is invoked since they would
+	 * be interleaved with the file's chunks.
+	 * If the file ends before the specified count of bytes the transfer ends at the end of the file.
+	 *
+	 * @param socket to write to
+	 * @param fileChannel to read from
+	 * @param position is the file position to start reading from
+	 * @param count is the amount of bytes to transfer
+	 * @param onTransferFinished to invoke once every chunk has been written (possibly {@code null})
+	 */
+	public void transferFrom(Socket socket, FileChannel fileChannel, long position, long count, Runnable onTransferFinished)
+	{
+		transferFrom(socket, fileChannel, position, count, onTransferFinished, null);
+	}
+	
+	/**
+	 * Same as {@link #transferFrom(Socket, FileChannel, long, long, Runnable)} but the specified onTransferFailed is invoked
+	 * if reading the file fails or the connection closes before every chunk has been written, in which case the
+	 * specified onTransferFinished isn't invoked.
+	 * If onTransferFailed is {@code null} the failure is given to the socket's exception handler.
+	 *
+	 * @param socket to write to
+	 * @param fileChannel to read from
+	 * @param position is the file position to start reading from
+	 * @param count is the amount of bytes to transfer
+	 * @param onTransferFinished to invoke once every chunk has been written (possibly {@code null})
+	 * @param onTransferFailed to invoke if the transfer failed (possibly {@code null})
+	 */
+	public void transferFrom(Socket socket, FileChannel fileChannel, long position, long count, Runnable onTransferFinished,
+							 Consumer<IOException> onTransferFailed)
+	{
+		if(position < 0 || count < 0)
+		{
+			throw new IllegalArgumentException("Position and count cannot be negative!");
+		}
+		checkEstablished(socket);
+		new FileTransfer(this, socket, fileChannel, position, count, onTransferFinished, onTransferFailed).start();
+	}
+	
+	/**
+	 * Encrypts all queued writes together then writes the encrypted buffer,
+	 * writes queued because this writer isn't writable are also written.
+	 *
+	 * @param socket to write to
+	 */
+	public void flush(Socket socket)
+	{
+		flush(socket, true);
+	}
+	
+	/**
+	 * Encrypts the queued writes together then writes the encrypted buffers.
+	 *
+	 * @param socket to write to
+	 * @param force whether to write all queued writes regardless of the watermarks
+	 */
+	private void flush(Socket socket, boolean force)
+	{
+		synchronized(writeLock)
+		{
+			flushQueued(socket, force);
+		}
+		drain(socket);
+	}
+	
+	/**
+	 * Encrypts the queued writes together and adds them to the {@link #encryptedWrites}, the {@link #writeLock} must be held.
+	 * Unless the specified force is true, writes are only encrypted while this writer is writable and at most
+	 * up to the {@link #highWatermark} at a time.
+	 *
+	 * @param socket to write to
+	 * @param force whether to write all queued writes regardless of the watermarks
+	 */
+	private void flushQueued(Socket socket, boolean force)
+	{
+		stalled = false;
+		while(!queuedBuffers.isEmpty())
+		{
+			long high = highWatermark;
+			long budget = force || high == 0 ? Long.MAX_VALUE : high - pendingBytes.get();
+			if(!force && (!writable || budget <= 0))
+			{
+				//the rest is written once the pending bytes drop
+				stalled = true;
+				return;
+			}
+			//take as many queued writes as can be written before reaching the high watermark (at least one)
+			EncryptedWrite write = leaseWrite(socket);
+			long taken = 0;
+			while(!queuedBuffers.isEmpty() && (write.count == 0 || taken < budget))
+			{
+				ByteBuffer writeBuffer = queuedBuffers.poll();
+				taken += writeBuffer.remaining();
+				write.add(writeBuffer, queuedCallbacks.poll());
+			}
+			queuedBytes -= taken;
+			queued = !queuedBuffers.isEmpty();
+			if(!encryptWrite(write, taken))
+			{
+				return;
+			}
+		}
+		queued = false;
+	}
+	
+	/**
+	 * An encrypted write of one or more plaintext buffers, it is invoked once its ciphertext has been written
+	 * and is then reused for a later write.
+	 */
+	private class EncryptedWrite implements Consumer<ByteBuffer>
+	{
+		/**
+		 * The socket which is written to
+		 */
+		private Socket socket;
+		/**
+		 * The plaintext buffers of this write, these are also the srcs of the encryption
+		 */
+		private ByteBuffer[] buffers = new ByteBuffer[1];
+		/**
+		 * The onWriteFinished of each of the {@link #buffers}
+		 */
+		private final List<Consumer<ByteBuffer>> callbacks = new ArrayList<>(1);
+		/**
+		 * The amount of {@link #buffers}
+		 */
+		private int count;
+		/**
+		 * The ciphertext of the {@link #buffers}
+		 */
+		private SSLBuffer encrypted;
+		/**
+		 * The amount of ciphertext bytes
+		 */
+		private int size;
+		/**
+		 * Whether the ciphertext bytes were counted in the {@link #pendingBytes}
+		 */
+		private boolean counted;
+		
+		/**
+		 * Adds the specified writeBuffer to this write.
+		 *
+		 * @param writeBuffer to add
+		 * @param onWriteFinished to invoke with the specified writeBuffer once it has been written (possibly {@code null})
+		 */
+		private void add(ByteBuffer writeBuffer, Consumer<ByteBuffer> onWriteFinished)
+		{
+			if(count == buffers.length)
+			{
+				buffers = Arrays.copyOf(buffers, count * 2);
+			}
+			buffers[count++] = writeBuffer;
+			callbacks.add(onWriteFinished == null ? NO_CALLBACK : onWriteFinished);
+		}
+		
+		/**
+		 * Invoked by the {@link #writer} once the ciphertext has been written, invokes the onWriteFinished of
+		 * every plaintext buffer with that buffer.
+		 *
+		 * @param byteBuffer is the written ciphertext
+		 */
+		@Override
+		public void accept(ByteBuffer byteBuffer)
+		{
+			Socket socket = this.socket;
+			boolean counted = this.counted;
+			int size = this.size;
+			encrypted.close();
+			try
+			{
+				finish();
+			} finally
+			{
+				recycle();
+				if(counted)
+				{
+					writtenPendingBytes(socket, size);
+				}
+			}
+		}
+		
+		/**
+		 * Invokes the onWriteFinished of every plaintext buffer with that buffer.
+		 */
+		private void finish()
+		{
+			for(int i = 0; i < count; i++)
+			{
+				Consumer<ByteBuffer> onWriteFinished = callbacks.get(i);
+				if(onWriteFinished != NO_CALLBACK)
+				{
+					onWriteFinished.accept(buffers[i]);
+				}
+			}
+		}
+		
+		/**
+		 * Clears this write and keeps it as one of the {@link #spareWrites}.
+		 */
+		private void recycle()
+		{
+			Arrays.fill(buffers, 0, count, null);
+			callbacks.clear();
+			count = 0;
+			encrypted = null;
+			socket = null;
+			synchronized(writeLock)
+			{
+				if(spareWrites.size() < MAX_SPARE_WRITES)
+				{
+					spareWrites.add(this);
+				}
+			}
+		}
 	}
 	
 	/**
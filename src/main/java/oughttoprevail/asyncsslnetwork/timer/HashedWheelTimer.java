@@ -0,0 +1,238 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.timer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link HashedWheelTimer} schedules many {@link Timeout}s with a single thread.
+ * Time is divided into ticks and the timeouts are hashed into a wheel of buckets by their deadline, every tick the thread
+ * expires the timeouts of one bucket, so scheduling and cancelling are constant time and cost no thread or task per
+ * timeout.
+ * Timeouts expire up to one tick late, which is fine for connection timeouts but not for precise timing.
+ */
+public class HashedWheelTimer
+{
+	/**
+	 * The default duration of a tick
+	 */
+	public static final long DEFAULT_TICK_DURATION = TimeUnit.MILLISECONDS.toNanos(100);
+	/**
+	 * The default amount of buckets in the wheel
+	 */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+	
+	/**
+	 * Holds the shared {@link HashedWheelTimer} so it is only created (and its thread started) once used.
+	 */
+	private static class SharedTimer
+	{
+		private static final HashedWheelTimer TIMER = new HashedWheelTimer("SSL Timer Thread", DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+	}
+	
+	/**
+	 * @return the {@link HashedWheelTimer} shared by all connections
+	 */
+	public static HashedWheelTimer getSharedTimer()
+	{
+		return SharedTimer.TIMER;
+	}
+	
+	/**
+	 * The duration of a tick in nanoseconds
+	 */
+	private final long tickDuration;
+	/**
+	 * The buckets of the wheel, only used by the {@link #workerThread}
+	 */
+	private final Timeout.Bucket[] wheel;
+	/**
+	 * The mask to get the bucket of a tick, the wheel size is a power of two
+	 */
+	private final int mask;
+	/**
+	 * Scheduled timeouts which have yet to be added to the {@link #wheel}
+	 */
+	private final Queue<Timeout> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+	/**
+	 * Cancelled timeouts which have yet to be removed from the {@link #wheel}
+	 */
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+	/**
+	 * The {@link System#nanoTime()} the timer has started at
+	 */
+	private final long startTime;
+	/**
+	 * The thread which runs the wheel and expires the timeouts
+	 */
+	private final Thread workerThread;
+	/**
+	 * Whether the timer was stopped
+	 */
+	private volatile boolean stopped;
+	
+	/**
+	 * Creates and starts a {@link HashedWheelTimer}.
+	 *
+	 * @param threadName is the name of the timer's thread
+	 * @param tickDuration is the duration of a tick in nanoseconds
+	 * @param wheelSize is the amount of buckets in the wheel, rounded up to a power of two
+	 */
+	public HashedWheelTimer(String threadName, long tickDuration, int wheelSize)
+	{
+		if(tickDuration <= 0)
+		{
+			throw new IllegalArgumentException("Tick duration must be positive!");
+		}
+		if(wheelSize <= 0 || wheelSize > 1 << 30)
+		{
+			throw new IllegalArgumentException("Wheel size must be between 1 and 2^30!");
+		}
+		this.tickDuration = tickDuration;
+		int size = Integer.highestOneBit(wheelSize);
+		if(size < wheelSize)
+		{
+			size <<= 1;
+		}
+		this.wheel = new Timeout.Bucket[size];
+		for(int i = 0; i < size; i++)
+		{
+			wheel[i] = new Timeout.Bucket();
+		}
+		this.mask = size - 1;
+		this.startTime = System.nanoTime();
+		this.workerThread = new Thread(this::run, threadName);
+		workerThread.setDaemon(true);
+		workerThread.start();
+	}
+	
+	/**
+	 * Schedules the specified task to run on the timer's thread once the specified delay has passed.
+	 * The task should be short since it delays every other timeout.
+	 *
+	 * @param task to run
+	 * @param delay is the time to wait before running the task
+	 * @param unit is the {@link TimeUnit} of the specified delay
+	 * @return a {@link Timeout} which can cancel the task
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit)
+	{
+		if(stopped)
+		{
+			throw new IllegalStateException("Timer was stopped!");
+		}
+		Timeout timeout = new Timeout(this, task, System.nanoTime() + Math.max(0, unit.toNanos(delay)));
+		scheduledTimeouts.offer(timeout);
+		return timeout;
+	}
+	
+	/**
+	 * Stops the timer, timeouts which have yet to expire never will.
+	 */
+	public void stop()
+	{
+		stopped = true;
+		workerThread.interrupt();
+	}
+	
+	/**
+	 * Invoked by the specified timeout once it has been cancelled so it is removed from the {@link #wheel}.
+	 *
+	 * @param timeout which was cancelled
+	 */
+	void cancelled(Timeout timeout)
+	{
+		cancelledTimeouts.offer(timeout);
+	}
+	
+	/**
+	 * Runs the wheel until the timer is stopped.
+	 */
+	private void run()
+	{
+		long tick = 0;
+		while(!stopped)
+		{
+			long now = waitForNextTick(tick);
+			if(stopped)
+			{
+				return;
+			}
+			removeCancelledTimeouts();
+			addScheduledTimeouts(tick);
+			wheel[(int) (tick & mask)].expireTimeouts(now);
+			tick++;
+		}
+	}
+	
+	/**
+	 * Waits until the specified tick has ended.
+	 *
+	 * @param tick to wait for
+	 * @return the current {@link System#nanoTime()}
+	 */
+	private long waitForNextTick(long tick)
+	{
+		long deadline = startTime + (tick + 1) * tickDuration;
+		long now;
+		while((now = System.nanoTime()) - deadline < 0 && !stopped)
+		{
+			LockSupport.parkNanos(this, deadline - now);
+		}
+		return now;
+	}
+	
+	/**
+	 * Removes the cancelled timeouts from their buckets.
+	 */
+	private void removeCancelledTimeouts()
+	{
+		Timeout timeout;
+		while((timeout = cancelledTimeouts.poll()) != null)
+		{
+			Timeout.Bucket bucket = timeout.bucket;
+			if(bucket != null)
+			{
+				bucket.remove(timeout);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the scheduled timeouts into the bucket of the tick they expire at.
+	 *
+	 * @param currentTick is the tick which is about to be processed
+	 */
+	private void addScheduledTimeouts(long currentTick)
+	{
+		Timeout timeout;
+		while((timeout = scheduledTimeouts.poll()) != null)
+		{
+			if(timeout.isCancelled())
+			{
+				continue;
+			}
+			long expiryTick = (timeout.deadline - startTime + tickDuration - 1) / tickDuration - 1;
+			//a timeout whose deadline has already passed expires in the current tick
+			long ticks = Math.max(expiryTick, currentTick);
+			timeout.remainingRounds = (ticks - currentTick) / wheel.length;
+			wheel[(int) (ticks & mask)].add(timeout);
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.timer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Timeout} is a task scheduled by a {@link HashedWheelTimer} which can be cancelled until it has expired.
+ */
+public class Timeout
+{
+	/**
+	 * The state of a scheduled {@link Timeout}
+	 */
+	private static final int SCHEDULED = 0;
+	/**
+	 * The state of a cancelled {@link Timeout}
+	 */
+	private static final int CANCELLED = 1;
+	/**
+	 * The state of an expired {@link Timeout}
+	 */
+	private static final int EXPIRED = 2;
+	/**
+	 * The {@link HashedWheelTimer} which scheduled this
+	 */
+	private final HashedWheelTimer timer;
+	/**
+	 * The task to run once this has expired
+	 */
+	private final Runnable task;
+	/**
+	 * The {@link System#nanoTime()} this expires at
+	 */
+	final long deadline;
+	/**
+	 * The amount of wheel rotations left before this expires, only used by the timer's thread
+	 */
+	long remainingRounds;
+	/**
+	 * The bucket which holds this or {@code null} if it isn't in a bucket, only used by the timer's thread
+	 */
+	Bucket bucket;
+	/**
+	 * The previous {@link Timeout} in the {@link #bucket}, only used by the timer's thread
+	 */
+	Timeout previous;
+	/**
+	 * The next {@link Timeout} in the {@link #bucket}, only used by the timer's thread
+	 */
+	Timeout next;
+	/**
+	 * The state of this, either {@link #SCHEDULED}, {@link #CANCELLED} or {@link #EXPIRED}
+	 */
+	private final AtomicInteger state = new AtomicInteger(SCHEDULED);
+	
+	Timeout(HashedWheelTimer timer, Runnable task, long deadline)
+	{
+		this.timer = timer;
+		this.task = task;
+		this.deadline = deadline;
+	}
+	
+	/**
+	 * Cancels this so it won't expire.
+	 *
+	 * @return whether this invocation has cancelled this, {@code false} if it has already expired or been cancelled
+	 */
+	public boolean cancel()
+	{
+		if(!state.compareAndSet(SCHEDULED, CANCELLED))
+		{
+			return false;
+		}
+		timer.cancelled(this);
+		return true;
+	}
+	
+	/**
+	 * @return whether this has been cancelled
+	 */
+	public boolean isCancelled()
+	{
+		return state.get() == CANCELLED;
+	}
+	
+	/**
+	 * @return whether this has expired
+	 */
+	public boolean isExpired()
+	{
+		return state.get() == EXPIRED;
+	}
+	
+	/**
+	 * Expires this and runs the task if this wasn't cancelled.
+	 */
+	void expire()
+	{
+		if(!state.compareAndSet(SCHEDULED, EXPIRED))
+		{
+			return;
+		}
+		try
+		{
+			task.run();
+		} catch(Throwable throwable)
+		{
+			Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+		}
+	}
+	
+	/**
+	 * A bucket of the wheel, a doubly linked list of {@link Timeout}s so a cancelled {@link Timeout} is removed in constant time.
+	 */
+	static class Bucket
+	{
+		/**
+		 * The first {@link Timeout} of this
+		 */
+		private Timeout head;
+		/**
+		 * The last {@link Timeout} of this
+		 */
+		private Timeout tail;
+		
+		/**
+		 * Adds the specified timeout to the end of this.
+		 *
+		 * @param timeout to add
+		 */
+		void add(Timeout timeout)
+		{
+			timeout.bucket = this;
+			if(head == null)
+			{
+				head = tail = timeout;
+			} else
+			{
+				tail.next = timeout;
+				timeout.previous = tail;
+				tail = timeout;
+			}
+		}
+		
+		/**
+		 * Removes the specified timeout from this.
+		 *
+		 * @param timeout to remove
+		 * @return the {@link Timeout} after the specified timeout
+		 */
+		Timeout remove(Timeout timeout)
+		{
+			Timeout next = timeout.next;
+			if(timeout.previous != null)
+			{
+				timeout.previous.next = next;
+			}
+			if(next != null)
+			{
+				next.previous = timeout.previous;
+			}
+			if(timeout == head)
+			{
+				head = next;
+			}
+			if(timeout == tail)
+			{
+				tail = timeout.previous;
+			}
+			timeout.previous = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+		
+		/**
+		 * Expires every {@link Timeout} of this which has no remaining rounds and whose deadline has passed,
+		 * the remaining rounds of any other {@link Timeout} are decreased.
+		 *
+		 * @param now is the current {@link System#nanoTime()}
+		 */
+		void expireTimeouts(long now)
+		{
+			Timeout timeout = head;
+			while(timeout != null)
+			{
+				if(timeout.remainingRounds <= 0 && timeout.deadline - now <= 0)
+				{
+					Timeout next = remove(timeout);
+					timeout.expire();
+					timeout = next;
+				} else
+				{
+					if(timeout.remainingRounds > 0)
+					{
+						timeout.remainingRounds--;
+					}
+					timeout = timeout.next;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates {@link ExecutorService}s for delegated {@link javax.net.ssl.SSLEngine} tasks, handshake steps and callbacks.
+ * This is the Java 21 version of the class which uses virtual threads.
+ */
+public final class SSLExecutors
+{
+	private SSLExecutors()
+	{
+	}
+	
+	/**
+	 * @return whether {@link #newThreadPerTaskExecutor(String)} starts virtual threads, which requires Java 21
+	 */
+	public static boolean isVirtualThreadsSupported()
+	{
+		return true;
+	}
+	
+	/**
+	 * @return whether the current thread is a virtual thread, which is never the case before Java 21
+	 */
+	public static boolean isVirtualThread()
+	{
+		return Thread.currentThread().isVirtual();
+	}
+	
+	/**
+	 * Creates an {@link ExecutorService} which runs every task on a new virtual thread, so tasks which block
+	 * (for example waiting with {@link SSLSocket#awaitHandshake()}) are cheap.
+	 *
+	 * @param name is the prefix of the threads' names
+	 * @return the created {@link ExecutorService}
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String name)
+	{
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+	}
+}
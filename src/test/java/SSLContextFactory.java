@@ -37,9 +37,9 @@ import java.security.cert.CertificateException;
 public class SSLContextFactory
 {
 	/**
-	 * Default protocol for {@link SSLContext}
+	 * Default protocol for {@link SSLContext}, "TLS" enables every version the JDK supports including TLSv1.3
 	 */
-	private static final String DEFAULT_PROTOCOL = "TLSv1.2";
+	private static final String DEFAULT_PROTOCOL = "TLS";
 	
 	/**
 	 * Creates a {@link SSLContext} with the {@link #DEFAULT_PROTOCOL} and stores it's keystores in the specified file location with the specified password as the password.
@@ -0,0 +1,136 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
+import oughttoprevail.asyncsslnetwork.rw.SSLReader;
+
+/**
+ * A {@link SSLReader} which collects the decrypted data instead of handing it to read requests.
+ * While not collecting (such as in benchmarks) the decrypted data is only counted and discarded.
+ */
+public class CollectingReader extends SSLReader
+{
+	/**
+	 * The decrypted data since the last {@link #take()}
+	 */
+	private final ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+	/**
+	 * The thread which handed the latest decrypted data
+	 */
+	private volatile Thread lastThread;
+	/**
+	 * Whether the decrypted data is collected, if not it is only counted
+	 */
+	private volatile boolean collecting = true;
+	/**
+	 * The amount of decrypted bytes since the last {@link #getAndResetBytes()}
+	 */
+	private long bytes;
+	
+	/**
+	 * Counts and collects the decrypted bytes then closes the specified decryptedByteBuffer.
+	 *
+	 * @param decryptedByteBuffer which contains decrypted data
+	 */
+	@Override
+	protected void callRequests(SSLBuffer decryptedByteBuffer)
+	{
+		ByteBuffer byteBuffer = decryptedByteBuffer.getByteBuffer();
+		bytes += byteBuffer.position();
+		if(!collecting)
+		{
+			decryptedByteBuffer.close();
+			return;
+		}
+		byteBuffer.flip();
+		synchronized(decrypted)
+		{
+			while(byteBuffer.hasRemaining())
+			{
+				decrypted.write(byteBuffer.get());
+			}
+			lastThread = Thread.currentThread();
+			decrypted.notifyAll();
+		}
+		decryptedByteBuffer.close();
+	}
+	
+	/**
+	 * Sets whether the decrypted data is collected, if not it is only counted by {@link #getAndResetBytes()}.
+	 *
+	 * @param collecting whether the decrypted data is collected
+	 */
+	public void setCollecting(boolean collecting)
+	{
+		this.collecting = collecting;
+	}
+	
+	/**
+	 * @return the amount of decrypted bytes since the last invocation
+	 */
+	public long getAndResetBytes()
+	{
+		long bytes = this.bytes;
+		this.bytes = 0;
+		return bytes;
+	}
+	
+	/**
+	 * @return the decrypted data since the last invocation
+	 */
+	public byte[] take()
+	{
+		synchronized(decrypted)
+		{
+			byte[] bytes = decrypted.toByteArray();
+			decrypted.reset();
+			return bytes;
+		}
+	}
+	
+	/**
+	 * Waits until at least the specified amount of bytes have been decrypted since the last {@link #take()}.
+	 *
+	 * @param amount is the amount of bytes to wait for
+	 * @param timeoutMillis is the maximum time to wait
+	 * @return whether the specified amount of bytes have been decrypted
+	 */
+	public boolean await(int amount, long timeoutMillis) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized(decrypted)
+		{
+			long remaining;
+			while(decrypted.size() < amount && (remaining = deadline - System.currentTimeMillis()) > 0)
+			{
+				decrypted.wait(remaining);
+			}
+			return decrypted.size() >= amount;
+		}
+	}
+	
+	/**
+	 * @return the thread which handed the latest decrypted data
+	 */
+	public Thread getLastThread()
+	{
+		return lastThread;
+	}
+}
@@ -0,0 +1,234 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import javax.net.ssl.SSLContext;
+import java.util.concurrent.TimeUnit;
+
+import oughttoprevail.asyncsslnetwork.buffer.SSLBufferAllocation;
+
+/**
+ * A client and a server {@link LoopbackSocket} connected to each other.
+ * It is shared by the tests and the benchmarks module (through the test jar).
+ */
+public class LoopbackPair
+{
+	/**
+	 * The self-signed {@link SSLContext} shared by all pairs
+	 */
+	private static SSLContext sslContext;
+	/**
+	 * The reader of the {@link #client}
+	 */
+	private final CollectingReader clientReader = new CollectingReader();
+	/**
+	 * The reader of the {@link #server}
+	 */
+	private final CollectingReader serverReader = new CollectingReader();
+	/**
+	 * The writer of the {@link #client}
+	 */
+	private final LoopbackWriter clientWriter = new LoopbackWriter();
+	/**
+	 * The writer of the {@link #server}
+	 */
+	private final LoopbackWriter serverWriter = new LoopbackWriter();
+	/**
+	 * The client side of the pair
+	 */
+	private final LoopbackSocket client;
+	/**
+	 * The server side of the pair
+	 */
+	private final LoopbackSocket server;
+	
+	/**
+	 * Creates a pair which only enables the specified protocol.
+	 *
+	 * @param protocol to enable, for example "TLSv1.3"
+	 */
+	public LoopbackPair(String protocol) throws Exception
+	{
+		this(getSSLContext(), protocol, null);
+	}
+	
+	/**
+	 * Creates a pair which only enables the specified protocol and cipherSuite.
+	 *
+	 * @param sslContext to create both sides with
+	 * @param protocol to enable or {@code null} to keep the defaults
+	 * @param cipherSuite to enable or {@code null} to keep the defaults
+	 */
+	public LoopbackPair(SSLContext sslContext, String protocol, String cipherSuite)
+	{
+		this(createEngineFactory(sslContext, protocol, cipherSuite));
+	}
+	
+	/**
+	 * Creates a pair whose sides are created by the specified engineFactory.
+	 *
+	 * @param engineFactory to create both sides with
+	 */
+	public LoopbackPair(SSLEngineFactory engineFactory)
+	{
+		this(engineFactory, SSLSocketBase.DEFAULT_BUFFER_ALLOCATION);
+	}
+	
+	/**
+	 * Creates a pair whose sides are created by the specified engineFactory and allocate their buffers by the specified bufferAllocation.
+	 *
+	 * @param engineFactory to create both sides with
+	 * @param bufferAllocation whether the buffers of both sides are heap or direct
+	 */
+	public LoopbackPair(SSLEngineFactory engineFactory, SSLBufferAllocation bufferAllocation)
+	{
+		this.client = new LoopbackSocket(engineFactory, true, clientReader, clientWriter, bufferAllocation);
+		this.server = new LoopbackSocket(engineFactory, false, serverReader, serverWriter, bufferAllocation);
+		LoopbackSocket.connect(client, server);
+	}
+	
+	/**
+	 * Creates a {@link SSLEngineFactory} which only enables the specified protocol and cipherSuite.
+	 *
+	 * @param sslContext to create the {@link javax.net.ssl.SSLEngine}s with
+	 * @param protocol to enable or {@code null} to keep the defaults
+	 * @param cipherSuite to enable or {@code null} to keep the defaults
+	 * @return the created {@link SSLEngineFactory}
+	 */
+	public static SSLEngineFactory createEngineFactory(SSLContext sslContext, String protocol, String cipherSuite)
+	{
+		SSLEngineFactoryBuilder builder = SSLEngineFactoryBuilder.create(sslContext);
+		if(protocol != null)
+		{
+			builder.protocols(protocol);
+		}
+		if(cipherSuite != null)
+		{
+			builder.cipherSuites(cipherSuite);
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * Returns the name of the cipher suite of the specified protocol which uses the specified cipher,
+	 * TLSv1.2 cipher suites use ECDHE key exchange with RSA authentication.
+	 *
+	 * @param protocol is either TLSv1.2 or TLSv1.3
+	 * @param cipher is the cipher and mode, for example AES_128_GCM or CHACHA20_POLY1305
+	 * @return the name of the cipher suite
+	 */
+	public static String cipherSuite(String protocol, String cipher)
+	{
+		String hash = "AES_256_GCM".equals(cipher) ? "_SHA384" : "_SHA256";
+		return ("TLSv1.3".equals(protocol) ? "TLS_" : "TLS_ECDHE_RSA_WITH_") + cipher + hash;
+	}
+	
+	/**
+	 * @return the self-signed {@link SSLContext} shared by all pairs
+	 */
+	public static synchronized SSLContext getSSLContext() throws Exception
+	{
+		if(sslContext == null)
+		{
+			sslContext = SelfSignedContexts.create("TLS");
+		}
+		return sslContext;
+	}
+	
+	/**
+	 * Runs the handshake of both sides to completion.
+	 *
+	 * @throws IllegalStateException if the handshake didn't complete
+	 */
+	public void handshake() throws InterruptedException
+	{
+		server.beginHandshake();
+		client.beginHandshake();
+		if(!client.awaitHandshake(10, TimeUnit.SECONDS) || !server.awaitHandshake(10, TimeUnit.SECONDS))
+		{
+			throw new IllegalStateException("Loopback handshake didn't complete, client: " + client.getConnectionState() + " server: " +
+											server.getConnectionState());
+		}
+		clientReader.take();
+		serverReader.take();
+		clientReader.getAndResetBytes();
+		serverReader.getAndResetBytes();
+		clientWriter.reset();
+		serverWriter.reset();
+	}
+	
+	/**
+	 * Sets whether the readers collect the decrypted data and the writers record their write sizes,
+	 * benchmarks turn it off so only the decrypted bytes are counted.
+	 *
+	 * @param recording whether the decrypted data and the write sizes are kept
+	 */
+	public void setRecording(boolean recording)
+	{
+		clientReader.setCollecting(recording);
+		serverReader.setCollecting(recording);
+		clientWriter.setRecording(recording);
+		serverWriter.setRecording(recording);
+	}
+	
+	/**
+	 * @return the client side of the pair
+	 */
+	public LoopbackSocket getClient()
+	{
+		return client;
+	}
+	
+	/**
+	 * @return the server side of the pair
+	 */
+	public LoopbackSocket getServer()
+	{
+		return server;
+	}
+	
+	/**
+	 * @return the reader of the client side
+	 */
+	public CollectingReader getClientReader()
+	{
+		return clientReader;
+	}
+	
+	/**
+	 * @return the reader of the server side
+	 */
+	public CollectingReader getServerReader()
+	{
+		return serverReader;
+	}
+	
+	/**
+	 * @return the writer of the client side
+	 */
+	public LoopbackWriter getClientWriter()
+	{
+		return clientWriter;
+	}
+	
+	/**
+	 * @return the writer of the server side
+	 */
+	public LoopbackWriter getServerWriter()
+	{
+		return serverWriter;
+	}
+}
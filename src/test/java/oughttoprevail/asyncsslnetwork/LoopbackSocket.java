@@ -0,0 +1,204 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import java.util.concurrent.Executor;
+
+import oughttoprevail.asyncnetwork.client.ClientSocket;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBufferAllocation;
+import oughttoprevail.asyncsslnetwork.rw.SSLReader;
+import oughttoprevail.asyncsslnetwork.rw.SSLWriter;
+
+/**
+ * An in-memory stand-in for a connected {@link SSLSocket}, everything written to it is delivered
+ * to its peer's {@link SSLReader} without touching the network.
+ */
+public class LoopbackSocket extends ClientSocket implements SSLSocket
+{
+	/**
+	 * The size of the in-memory read byte buffer
+	 */
+	public static final int BUFFER_SIZE = 1 << 20;
+	/**
+	 * The {@link SSLSocketBase} of this socket
+	 */
+	private final SSLSocketBase sslSocketBase;
+	/**
+	 * The {@link SSLReader} of this socket
+	 */
+	private final SSLReader reader;
+	/**
+	 * The {@link SSLWriter} of this socket
+	 */
+	private final SSLWriter writer;
+	/**
+	 * The socket everything written to this socket is delivered to
+	 */
+	private LoopbackSocket peer;
+	/**
+	 * The executor this socket reads on or {@code null} if it reads in the writing thread
+	 */
+	private volatile Executor selector;
+	
+	public LoopbackSocket(SSLEngineFactory engineFactory, boolean client, SSLReader reader, LoopbackWriter loopbackWriter)
+	{
+		this(engineFactory, client, reader, loopbackWriter, SSLSocketBase.DEFAULT_BUFFER_ALLOCATION);
+	}
+	
+	public LoopbackSocket(SSLEngineFactory engineFactory, boolean client, SSLReader reader, LoopbackWriter loopbackWriter,
+						  SSLBufferAllocation bufferAllocation)
+	{
+		this(engineFactory, client, reader, new SSLWriter(loopbackWriter), bufferAllocation);
+	}
+	
+	private LoopbackSocket(SSLEngineFactory engineFactory, boolean client, SSLReader reader, SSLWriter writer, SSLBufferAllocation bufferAllocation)
+	{
+		super(BUFFER_SIZE, reader, writer);
+		this.reader = reader;
+		this.writer = writer;
+		this.sslSocketBase = new SSLSocketBase(this, writer, engineFactory, client, null, null, -1, null, bufferAllocation);
+		reader.init(sslSocketBase);
+	}
+	
+	/**
+	 * Connects the specified sockets to each other.
+	 *
+	 * @param first to connect to the specified second
+	 * @param second to connect to the specified first
+	 */
+	public static void connect(LoopbackSocket first, LoopbackSocket second)
+	{
+		first.peer = second;
+		second.peer = first;
+	}
+	
+	/**
+	 * @return the socket everything written to this socket is delivered to
+	 */
+	public LoopbackSocket getPeer()
+	{
+		return peer;
+	}
+	
+	/**
+	 * Sets the executor this socket reads on, like the selector thread of a real socket.
+	 *
+	 * @param selector to read on or {@code null} to read in the writing thread
+	 */
+	public void setSelector(Executor selector)
+	{
+		this.selector = selector;
+	}
+	
+	/**
+	 * @return the executor this socket reads on or {@code null} if it reads in the writing thread
+	 */
+	public Executor getSelector()
+	{
+		return selector;
+	}
+	
+	/**
+	 * @return the {@link SSLReader} of this socket
+	 */
+	public SSLReader getReader()
+	{
+		return reader;
+	}
+	
+	/**
+	 * @return the {@link SSLWriter} of this socket
+	 */
+	public SSLWriter getWriter()
+	{
+		return writer;
+	}
+	
+	@Override
+	public void beginHandshake()
+	{
+		sslSocketBase.beginHandshake();
+	}
+	
+	@Override
+	public void onHandshakeComplete(Runnable onHandshakeComplete)
+	{
+		sslSocketBase.onHandshakeComplete(onHandshakeComplete);
+	}
+	
+	@Override
+	public boolean hasHandshakeBegun()
+	{
+		return sslSocketBase.hasHandshakeBegun();
+	}
+	
+	@Override
+	public boolean isHandshakeComplete()
+	{
+		return sslSocketBase.isHandshakeComplete();
+	}
+	
+	@Override
+	public boolean isHandshaking()
+	{
+		return sslSocketBase.isHandshaking();
+	}
+	
+	@Override
+	public SSLConnectionState getConnectionState()
+	{
+		return sslSocketBase.getConnectionState();
+	}
+	
+	@Override
+	public SSLMetrics getMetrics()
+	{
+		return sslSocketBase.getMetrics();
+	}
+	
+	@Override
+	public SSLEngine getSSLEngine()
+	{
+		return sslSocketBase.getSSLEngine();
+	}
+	
+	@Override
+	public SSLContext getSSLContext()
+	{
+		return sslSocketBase.getSSLContext();
+	}
+	
+	@Override
+	public SSLSocketBase getSSLSocketBase()
+	{
+		return sslSocketBase;
+	}
+	
+	@Override
+	public void forceClosure()
+	{
+		sslSocketBase.forceClosure();
+	}
+	
+	@Override
+	public boolean hasInitiatedClose()
+	{
+		return sslSocketBase.hasInitiatedClose();
+	}
+}
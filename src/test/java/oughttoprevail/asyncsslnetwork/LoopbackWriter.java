@@ -0,0 +1,252 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import oughttoprevail.asyncnetwork.Socket;
+import oughttoprevail.asyncnetwork.util.Consumer;
+import oughttoprevail.asyncnetwork.util.writer.Writer;
+
+/**
+ * A {@link Writer} which delivers the written (encrypted) bytes straight into the read byte buffer
+ * of the {@link LoopbackSocket#getPeer()} and lets its reader handle them, like a read event would.
+ * If the peer has a selector the bytes are delivered on it instead, like a read event of another thread would.
+ * While holding, writes are kept (like a slow peer would) until they're {@link #release()}d.
+ * While recording (the default) the sizes of the writes and their records are kept for assertions.
+ */
+public class LoopbackWriter implements Writer
+{
+	/**
+	 * The writes which are kept while holding
+	 */
+	private final List<HeldWrite> heldWrites = new ArrayList<>();
+	/**
+	 * The size of every write in the order they were written
+	 */
+	private final List<Integer> writeSizes = new ArrayList<>();
+	/**
+	 * The length (from the record header) of every application data record in the order they were written
+	 */
+	private final List<Integer> recordLengths = new ArrayList<>();
+	/**
+	 * Whether writes are kept instead of delivered
+	 */
+	private boolean holding;
+	/**
+	 * Whether the {@link #writeSizes} and {@link #recordLengths} are recorded
+	 */
+	private boolean recording = true;
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(Socket socket, ByteBuffer writeBuffer, Consumer<ByteBuffer> onWriteFinished)
+	{
+		HeldWrite write = new HeldWrite((LoopbackSocket) socket, writeBuffer, onWriteFinished);
+		synchronized(this)
+		{
+			if(recording)
+			{
+				writeSizes.add(writeBuffer.remaining());
+				countRecords(writeBuffer);
+			}
+			if(holding)
+			{
+				heldWrites.add(write);
+				return;
+			}
+		}
+		write.deliver();
+	}
+	
+	/**
+	 * Counts the records of the specified writeBuffer by their headers.
+	 *
+	 * @param writeBuffer which holds whole records
+	 */
+	private void countRecords(ByteBuffer writeBuffer)
+	{
+		int index = writeBuffer.position();
+		while(index + 5 <= writeBuffer.limit())
+		{
+			int length = ((writeBuffer.get(index + 3) & 0xFF) << 8) | (writeBuffer.get(index + 4) & 0xFF);
+			//application data records
+			if(writeBuffer.get(index) == 23)
+			{
+				recordLengths.add(length);
+			}
+			index += 5 + length;
+		}
+	}
+	
+	/**
+	 * Sets whether writes are kept instead of delivered.
+	 *
+	 * @param holding whether writes are kept
+	 */
+	public synchronized void setHolding(boolean holding)
+	{
+		this.holding = holding;
+	}
+	
+	/**
+	 * Sets whether the write sizes and record lengths are recorded, benchmarks turn it off so they don't grow without limit.
+	 *
+	 * @param recording whether the write sizes and record lengths are recorded
+	 */
+	public synchronized void setRecording(boolean recording)
+	{
+		this.recording = recording;
+	}
+	
+	/**
+	 * Delivers and finishes the writes which were kept while holding.
+	 */
+	public void release()
+	{
+		List<HeldWrite> released;
+		synchronized(this)
+		{
+			released = new ArrayList<>(heldWrites);
+			heldWrites.clear();
+		}
+		for(HeldWrite write : released)
+		{
+			write.deliver();
+		}
+	}
+	
+	/**
+	 * @return the amount of writes which are currently kept
+	 */
+	public synchronized int getHeldWriteCount()
+	{
+		return heldWrites.size();
+	}
+	
+	/**
+	 * @return the size of every write in the order they were written
+	 */
+	public synchronized List<Integer> getWriteSizes()
+	{
+		return new ArrayList<>(writeSizes);
+	}
+	
+	/**
+	 * @return the encrypted length of every application data record in the order they were written
+	 */
+	public synchronized List<Integer> getRecordLengths()
+	{
+		return new ArrayList<>(recordLengths);
+	}
+	
+	/**
+	 * Forgets the write sizes and record lengths written so far.
+	 */
+	public synchronized void reset()
+	{
+		writeSizes.clear();
+		recordLengths.clear();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean continueWriting()
+	{
+		return false;
+	}
+	
+	/**
+	 * A write which has yet to be delivered.
+	 */
+	private static class HeldWrite
+	{
+		/**
+		 * The socket the write was written to
+		 */
+		private final LoopbackSocket socket;
+		/**
+		 * The written buffer
+		 */
+		private final ByteBuffer writeBuffer;
+		/**
+		 * Invoked once the write has been delivered
+		 */
+		private final Consumer<ByteBuffer> onWriteFinished;
+		
+		private HeldWrite(LoopbackSocket socket, ByteBuffer writeBuffer, Consumer<ByteBuffer> onWriteFinished)
+		{
+			this.socket = socket;
+			this.writeBuffer = writeBuffer;
+			this.onWriteFinished = onWriteFinished;
+		}
+		
+		/**
+		 * Delivers the write to the peer's reader (on the peer's selector if it has one) then invokes the {@link #onWriteFinished}.
+		 */
+		private void deliver()
+		{
+			LoopbackSocket peer = socket.getPeer();
+			Executor selector = peer.getSelector();
+			if(selector == null)
+			{
+				deliver(peer);
+				return;
+			}
+			//the bytes are copied since the writeBuffer is reused once the write has finished
+			ByteBuffer copy = ByteBuffer.allocate(writeBuffer.remaining());
+			copy.put(writeBuffer);
+			copy.flip();
+			selector.execute(() ->
+			{
+				ByteBuffer input = peer.manager().getReadByteBuffer().getByteBuffer();
+				input.put(copy);
+				peer.getReader().callRequests(input);
+			});
+			if(onWriteFinished != null)
+			{
+				onWriteFinished.accept(writeBuffer);
+			}
+		}
+		
+		/**
+		 * Delivers the write to the specified peer's reader in the current thread then invokes the {@link #onWriteFinished}.
+		 *
+		 * @param peer to deliver to
+		 */
+		private void deliver(LoopbackSocket peer)
+		{
+			ByteBuffer input = peer.manager().getReadByteBuffer().getByteBuffer();
+			if(input.remaining() < writeBuffer.remaining())
+			{
+				throw new IllegalStateException("The loopback read byte buffer is full!");
+			}
+			input.put(writeBuffer);
+			peer.getReader().callRequests(input);
+			if(onWriteFinished != null)
+			{
+				onWriteFinished.accept(writeBuffer);
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PostHandshakeTest
+{
+	private LoopbackPair pair;
+	
+	@Before
+	public void handshake() throws Exception
+	{
+		pair = new LoopbackPair("TLSv1.3");
+		pair.handshake();
+	}
+	
+	@Test
+	public void keyUpdateIsRespondedToThroughTheWriter()
+	{
+		LoopbackSocket client = pair.getClient();
+		LoopbackSocket server = pair.getServer();
+		client.beginHandshake();
+		//the server's response is written through its writer, ahead of any application data
+		assertEquals(1, pair.getServerWriter().getWriteSizes().size());
+		assertTrue(client.isHandshakeComplete());
+		byte[] request = {1, 2, 3};
+		byte[] response = {4, 5, 6};
+		client.getWriter().write(client, ByteBuffer.wrap(request), null);
+		server.getWriter().write(server, ByteBuffer.wrap(response), null);
+		assertArrayEquals(request, pair.getServerReader().take());
+		assertArrayEquals(response, pair.getClientReader().take());
+	}
+}
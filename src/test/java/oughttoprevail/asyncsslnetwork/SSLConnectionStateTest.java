@@ -0,0 +1,83 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import oughttoprevail.asyncnetwork.util.DisconnectionType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SSLConnectionStateTest
+{
+	@Test
+	public void onlyEstablishedIsEstablished()
+	{
+		for(SSLConnectionState state : SSLConnectionState.values())
+		{
+			assertEquals(state.name(), state == SSLConnectionState.ESTABLISHED, state.isEstablished());
+		}
+	}
+	
+	@Test
+	public void closingStatesHaveCompletedTheHandshake()
+	{
+		assertTrue(SSLConnectionState.CLOSING.isHandshakeComplete());
+		assertTrue(SSLConnectionState.CLOSED.isHandshakeComplete());
+		assertFalse(SSLConnectionState.WAITING_UNWRAP.isHandshakeComplete());
+		assertTrue(SSLConnectionState.CLOSING.isClosing());
+		assertFalse(SSLConnectionState.ESTABLISHED.isClosing());
+	}
+	
+	@Test
+	public void connectionAdvancesThroughTheStates() throws Exception
+	{
+		LoopbackPair pair = new LoopbackPair("TLSv1.3");
+		assertEquals(SSLConnectionState.IDLE, pair.getClient().getConnectionState());
+		pair.handshake();
+		assertEquals(SSLConnectionState.ESTABLISHED, pair.getClient().getConnectionState());
+		assertEquals(SSLConnectionState.ESTABLISHED, pair.getServer().getConnectionState());
+		assertFalse(pair.getClient().getSSLSocketBase().closeSSL(DisconnectionType.LOCAL_CLOSE));
+		assertTrue(pair.getClient().hasInitiatedClose());
+		assertTrue(pair.getServer().hasInitiatedClose());
+		//a closed connection can't go back
+		pair.getClient().beginHandshake();
+		assertTrue(pair.getClient().getConnectionState().isClosing());
+	}
+	
+	@Test
+	public void forceClosureBeforeTheHandshakeReleasesWaiters() throws Exception
+	{
+		LoopbackPair pair = new LoopbackPair("TLSv1.3");
+		pair.getClient().forceClosure();
+		assertEquals(SSLConnectionState.CLOSED, pair.getClient().getConnectionState());
+		assertFalse(pair.getClient().awaitHandshake());
+	}
+	
+	@Test
+	public void handshakeCallbackDoesNotRunAfterClosureWithoutAHandshake() throws Exception
+	{
+		LoopbackPair pair = new LoopbackPair("TLSv1.3");
+		pair.getClient().forceClosure();
+		AtomicBoolean ran = new AtomicBoolean();
+		pair.getClient().onHandshakeComplete(() -> ran.set(true));
+		assertFalse(ran.get());
+	}
+}
@@ -0,0 +1,159 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.Provider;
+import java.security.Security;
+import java.util.Arrays;
+
+/**
+ * Creates {@link SSLContext}s with a self-signed RSA and a self-signed EC certificate for testing and benchmarking,
+ * the same key store is used as the trust store so both sides trust each other.
+ * <b>IMPORTANT NOTE: THIS SHOULD ONLY BE USED FOR TESTING AND BENCHMARKING!!!</b>
+ */
+public class SelfSignedContexts
+{
+	/**
+	 * The password of the generated key store and its keys
+	 */
+	private static final char[] PASSWORD = "AsyncSSLNetwork".toCharArray();
+	/**
+	 * The generated key store, it is generated once per JVM
+	 */
+	private static KeyStore keyStore;
+	
+	/**
+	 * Creates a {@link SSLContext} of the specified protocol with the self-signed certificates.
+	 *
+	 * @param protocol is the {@link SSLContext} protocol, for example "TLS"
+	 * @return the created {@link SSLContext}
+	 */
+	public static SSLContext create(String protocol) throws GeneralSecurityException, IOException, InterruptedException
+	{
+		return create(protocol, "default");
+	}
+	
+	/**
+	 * Creates a {@link SSLContext} of the specified protocol with the self-signed certificates using the specified provider.
+	 * The provider is either "default" (the JDK's providers), the name of an installed provider or the class name of a provider
+	 * on the class path which is then installed as the most preferred provider.
+	 * If the provider implements {@link SSLContext} its {@link SSLContext} is used, else the JDK's {@link SSLContext} is used
+	 * (which uses the provider's ciphers since it is the most preferred).
+	 *
+	 * @param protocol is the {@link SSLContext} protocol, for example "TLS"
+	 * @param provider is the provider to use
+	 * @return the created {@link SSLContext}
+	 */
+	public static SSLContext create(String protocol, String provider)
+			throws GeneralSecurityException, IOException, InterruptedException
+	{
+		Provider sslContextProvider = "default".equals(provider) ? null : install(provider);
+		if(sslContextProvider != null && sslContextProvider.getService("SSLContext", protocol) == null)
+		{
+			sslContextProvider = null;
+		}
+		KeyStore keyStore = getKeyStore();
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagerFactory.init(keyStore, PASSWORD);
+		TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trustManagerFactory.init(keyStore);
+		SSLContext context = sslContextProvider == null ? SSLContext.getInstance(protocol) : SSLContext.getInstance(protocol, sslContextProvider);
+		context.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+		return context;
+	}
+	
+	/**
+	 * Returns the installed provider of the specified name, if there is no such provider the specified name is
+	 * treated as a class name and the class is installed as the most preferred provider.
+	 *
+	 * @param provider is the name or class name of the provider
+	 * @return the installed provider
+	 */
+	private static Provider install(String provider) throws GeneralSecurityException
+	{
+		Provider installed = Security.getProvider(provider);
+		if(installed != null)
+		{
+			return installed;
+		}
+		try
+		{
+			installed = (Provider) Class.forName(provider).getConstructor().newInstance();
+		} catch(ReflectiveOperationException | ClassCastException e)
+		{
+			throw new GeneralSecurityException("Provider '" + provider + "' isn't installed nor a provider class on the class path!", e);
+		}
+		Security.insertProviderAt(installed, 1);
+		return installed;
+	}
+	
+	/**
+	 * @return the generated key store, generating it if it has yet to be generated
+	 */
+	private static synchronized KeyStore getKeyStore() throws GeneralSecurityException, IOException, InterruptedException
+	{
+		if(keyStore == null)
+		{
+			File file = File.createTempFile("asyncsslnetwork", ".p12");
+			file.deleteOnExit();
+			//keytool refuses to add to an empty file which isn't a key store
+			if(!file.delete())
+			{
+				throw new IOException("Failed to delete file: '" + file + "'!");
+			}
+			generateKey(file, "rsa", "RSA", "2048", "SHA256withRSA");
+			generateKey(file, "ec", "EC", "256", "SHA256withECDSA");
+			KeyStore generated = KeyStore.getInstance("PKCS12");
+			try(FileInputStream in = new FileInputStream(file))
+			{
+				generated.load(in, PASSWORD);
+			}
+			keyStore = generated;
+		}
+		return keyStore;
+	}
+	
+	/**
+	 * Generates a self-signed key pair into the specified key store file using the JDK's keytool.
+	 *
+	 * @param file is the key store file
+	 * @param alias is the alias of the key
+	 * @param keyAlgorithm is the algorithm of the key
+	 * @param keySize is the size of the key
+	 * @param signatureAlgorithm is the algorithm the certificate is signed with
+	 */
+	private static void generateKey(File file, String alias, String keyAlgorithm, String keySize, String signatureAlgorithm)
+			throws IOException, InterruptedException
+	{
+		String password = new String(PASSWORD);
+		String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+		Process process = new ProcessBuilder(Arrays.asList(keytool, "-genkeypair", "-noprompt", "-alias", alias, "-keyalg", keyAlgorithm, "-keysize",
+				keySize, "-sigalg", signatureAlgorithm, "-dname", "CN=localhost", "-validity", "3650", "-storetype", "PKCS12", "-keystore",
+				file.getAbsolutePath(), "-storepass", password, "-keypass", password)).inheritIO().start();
+		if(process.waitFor() != 0)
+		{
+			throw new IOException("keytool failed to generate the " + alias + " key!");
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ServerNameIndicationTest
+{
+	private LoopbackPair pair;
+	private SSLSocketBase client;
+	
+	@Before
+	public void createPair() throws Exception
+	{
+		pair = new LoopbackPair("TLSv1.3");
+		client = pair.getClient().getSSLSocketBase();
+	}
+	
+	/**
+	 * @return the server names the server received in the ClientHello
+	 */
+	private List<SNIServerName> requestedServerNames()
+	{
+		return ((ExtendedSSLSession) pair.getServer().getSSLSocketBase().getSSLEngine().getSession()).getRequestedServerNames();
+	}
+	
+	@Test
+	public void latestPeerHostIsSentAsTheServerName() throws Exception
+	{
+		String cipherSuite = LoopbackPair.cipherSuite("TLSv1.3", "CHACHA20_POLY1305");
+		client.getSSLEngine().setEnabledCipherSuites(new String[]{cipherSuite});
+		client.setPeer("previous.example.com", 443);
+		//the server names of the previous peer aren't kept
+		client.setPeer("peer.example.com", 443);
+		pair.handshake();
+		assertEquals(Collections.singletonList(new SNIHostName("peer.example.com")), requestedServerNames());
+		//the rest of the parameters were kept
+		assertEquals(cipherSuite, client.getSSLEngine().getSession().getCipherSuite());
+	}
+	
+	@Test
+	public void peerAddressIsNotSentAsTheServerName() throws Exception
+	{
+		client.setPeer("previous.example.com", 443);
+		client.setPeer("127.0.0.1", 443);
+		pair.handshake();
+		assertTrue(requestedServerNames().isEmpty());
+	}
+}
@@ -0,0 +1,112 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import oughttoprevail.asyncnetwork.util.DisconnectionType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeoutTest
+{
+	private LoopbackPair pair;
+	private LoopbackSocket client;
+	private SSLSocketBase clientBase;
+	
+	@Before
+	public void createPair() throws Exception
+	{
+		pair = new LoopbackPair("TLSv1.3");
+		client = pair.getClient();
+		clientBase = client.getSSLSocketBase();
+	}
+	
+	/**
+	 * Waits until the specified socket has reached the specified state.
+	 *
+	 * @return whether the state has been reached within 5 seconds
+	 */
+	private static boolean awaitState(LoopbackSocket socket, SSLConnectionState state) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		while(socket.getConnectionState() != state && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		return socket.getConnectionState() == state;
+	}
+	
+	@Test
+	public void timeoutsAreDisabledByDefault()
+	{
+		assertEquals(0, clientBase.getHandshakeTimeout(TimeUnit.NANOSECONDS));
+		assertEquals(0, clientBase.getIdleTimeout(TimeUnit.NANOSECONDS));
+		assertEquals(0, clientBase.getCloseTimeout(TimeUnit.NANOSECONDS));
+	}
+	
+	@Test
+	public void handshakeWithoutTimeoutWaitsForThePeer() throws InterruptedException
+	{
+		//the server never begins its handshake
+		client.beginHandshake();
+		Thread.sleep(300);
+		assertTrue(client.isHandshaking());
+	}
+	
+	@Test
+	public void handshakeTimeoutClosesAStalledHandshake() throws InterruptedException
+	{
+		clientBase.setHandshakeTimeout(100, TimeUnit.MILLISECONDS);
+		client.beginHandshake();
+		assertTrue(awaitState(client, SSLConnectionState.CLOSED));
+	}
+	
+	@Test
+	public void handshakeTimeoutIsCancelledOnceEstablished() throws InterruptedException
+	{
+		clientBase.setHandshakeTimeout(100, TimeUnit.MILLISECONDS);
+		pair.handshake();
+		Thread.sleep(400);
+		assertEquals(SSLConnectionState.ESTABLISHED, client.getConnectionState());
+	}
+	
+	@Test
+	public void idleTimeoutClosesAnIdleConnection() throws InterruptedException
+	{
+		clientBase.setIdleTimeout(100, TimeUnit.MILLISECONDS);
+		pair.handshake();
+		assertTrue(awaitState(client, SSLConnectionState.CLOSED));
+		assertFalse(pair.getServer().hasInitiatedClose());
+	}
+	
+	@Test
+	public void closeTimeoutClosesWithoutThePeersCloseNotify() throws InterruptedException
+	{
+		clientBase.setCloseTimeout(100, TimeUnit.MILLISECONDS);
+		pair.handshake();
+		//the server's close_notify never arrives
+		pair.getServerWriter().setHolding(true);
+		assertFalse(clientBase.closeSSL(DisconnectionType.LOCAL_CLOSE));
+		assertEquals(SSLConnectionState.CLOSING, client.getConnectionState());
+		assertTrue(awaitState(client, SSLConnectionState.CLOSED));
+	}
+}
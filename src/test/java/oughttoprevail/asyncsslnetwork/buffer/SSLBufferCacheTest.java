@@ -0,0 +1,73 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.buffer;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import oughttoprevail.asyncsslnetwork.LoopbackPair;
+import oughttoprevail.asyncsslnetwork.LoopbackSocket;
+import oughttoprevail.asyncsslnetwork.SSLSocketBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SSLBufferCacheTest
+{
+	@Test
+	public void closedBuffersBeyondTheMaxSparesAreReleased()
+	{
+		SSLBufferCache cache = new SSLBufferCache();
+		SSLBuffer[] buffers = new SSLBuffer[4];
+		for(int i = 0; i < buffers.length; i++)
+		{
+			buffers[i] = cache.lease(1024);
+		}
+		for(SSLBuffer buffer : buffers)
+		{
+			buffer.close();
+		}
+		assertEquals(SSLBufferCache.DEFAULT_MAX_SPARES, cache.getSpareCount());
+		assertTrue(cache.getSpareCapacity() < 2 * 1024 * SSLBufferCache.DEFAULT_MAX_SPARES);
+		cache.releaseSpares();
+		assertEquals(0, cache.getSpareCount());
+		assertEquals(0, cache.getSpareCapacity());
+		//the max spares are kept, so the next closed buffer is kept again
+		cache.lease(1024).close();
+		assertEquals(1, cache.getSpareCount());
+	}
+	
+	@Test
+	public void idleConnectionRetainsOnlyItsReadBuffer() throws Exception
+	{
+		LoopbackPair pair = new LoopbackPair("TLSv1.3");
+		pair.handshake();
+		LoopbackSocket client = pair.getClient();
+		SSLSocketBase server = pair.getServer().getSSLSocketBase();
+		for(int i = 0; i < 16; i++)
+		{
+			client.getWriter().write(client, ByteBuffer.wrap(new byte[32 * 1024]), null);
+		}
+		assertTrue(pair.getServerReader().await(16 * 32 * 1024, 10000));
+		//the spares were released to the pool once the reads were handled, only the readByteBuffer is retained
+		long retained = server.getHeldBufferCapacity();
+		//a spare is at least as large as a record, so anything beyond the readByteBuffer would exceed two records
+		assertTrue("Retained " + retained + " bytes", retained < 2 * server.getSSLEngine().getSession().getPacketBufferSize());
+		server.setReleaseIdleBuffers(true);
+		assertEquals(0, server.getHeldBufferCapacity());
+	}
+}
@@ -0,0 +1,66 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import oughttoprevail.asyncsslnetwork.SSLExecutors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class SSLBufferPoolTest
+{
+	@Test
+	public void buffersReleasedByAThreadAreReusedByIt()
+	{
+		SSLBufferPool pool = new SSLBufferPool(false, SSLBufferPool.DEFAULT_MAX_CACHED_PER_CLASS);
+		SSLBufferPool.ThreadCache origin = pool.currentCache();
+		pool.release(pool.lease(1024), origin);
+		pool.lease(1024);
+		assertEquals(1, pool.getMisses());
+		assertEquals(1, pool.getHits());
+	}
+	
+	@Test
+	public void buffersReleasedByAVirtualThreadAreReusedByTheNext() throws Exception
+	{
+		assumeTrue(SSLExecutors.isVirtualThreadsSupported());
+		SSLBufferPool pool = new SSLBufferPool(false, SSLBufferPool.DEFAULT_MAX_CACHED_PER_CLASS);
+		ExecutorService executor = SSLExecutors.newThreadPerTaskExecutor("SSLBufferPoolTest");
+		try
+		{
+			for(int i = 0; i < 10; i++)
+			{
+				//every task runs on a new virtual thread
+				executor.submit(() ->
+				{
+					ByteBuffer byteBuffer = pool.lease(1024);
+					pool.release(byteBuffer, pool.currentCache());
+				}).get(10, TimeUnit.SECONDS);
+			}
+		} finally
+		{
+			executor.shutdown();
+		}
+		assertEquals(1, pool.getMisses());
+		assertEquals(9, pool.getHits());
+	}
+}
@@ -0,0 +1,218 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.rw;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import oughttoprevail.asyncsslnetwork.LoopbackPair;
+import oughttoprevail.asyncsslnetwork.LoopbackSocket;
+import oughttoprevail.asyncsslnetwork.SSLSocketBase;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class SSLReaderTest
+{
+	@Parameterized.Parameters(name = "zeroCopy={0}, batched={1}")
+	public static Collection<Object[]> modes()
+	{
+		return Arrays.asList(new Object[][]{{false, false}, {false, true}, {true, false}, {true, true}});
+	}
+	
+	@Parameterized.Parameter(0)
+	public boolean zeroCopy;
+	@Parameterized.Parameter(1)
+	public boolean batched;
+	
+	/**
+	 * Creates a pair whose server reads in the mode under test and runs its handshake.
+	 */
+	private LoopbackPair handshake() throws Exception
+	{
+		LoopbackPair pair = new LoopbackPair("TLSv1.3");
+		SSLSocketBase server = pair.getServer().getSSLSocketBase();
+		server.setZeroCopyUnwrap(zeroCopy);
+		server.setBatchedUnwrap(batched);
+		pair.handshake();
+		return pair;
+	}
+	
+	/**
+	 * Returns the specified length of bytes which count up from the specified first byte.
+	 */
+	private static byte[] bytes(int first, int length)
+	{
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++)
+		{
+			bytes[i] = (byte) (first + i);
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Encrypts every one of the specified plaintexts into a record of its own with the client and returns the records.
+	 */
+	private static byte[] records(LoopbackSocket client, byte[]... plaintexts)
+	{
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		for(byte[] plaintext : plaintexts)
+		{
+			SSLBuffer encrypted = client.getSSLSocketBase().encrypt(ByteBuffer.wrap(plaintext));
+			ByteBuffer encryptedByteBuffer = encrypted.getByteBuffer();
+			encryptedByteBuffer.flip();
+			byte[] record = new byte[encryptedByteBuffer.remaining()];
+			encryptedByteBuffer.get(record);
+			records.write(record, 0, record.length);
+			encrypted.close();
+		}
+		return records.toByteArray();
+	}
+	
+	/**
+	 * Returns the client's close_notify record, produced straight by its engine.
+	 */
+	private static byte[] closeNotify(LoopbackSocket client) throws SSLException
+	{
+		SSLEngine engine = client.getSSLEngine();
+		engine.closeOutbound();
+		ByteBuffer closeNotify = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+		engine.wrap(ByteBuffer.allocate(0), closeNotify);
+		closeNotify.flip();
+		byte[] record = new byte[closeNotify.remaining()];
+		closeNotify.get(record);
+		return record;
+	}
+	
+	/**
+	 * Delivers the specified bytes to the specified socket's reader as a single read.
+	 */
+	private static void read(LoopbackSocket socket, byte[] bytes, int offset, int length)
+	{
+		ByteBuffer input = socket.manager().getReadByteBuffer().getByteBuffer();
+		input.put(bytes, offset, length);
+		socket.getReader().callRequests(input);
+	}
+	
+	/**
+	 * Concatenates the specified arrays.
+	 */
+	private static byte[] concat(byte[]... arrays)
+	{
+		ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+		for(byte[] array : arrays)
+		{
+			concatenated.write(array, 0, array.length);
+		}
+		return concatenated.toByteArray();
+	}
+	
+	@Test
+	public void recordsSplitAcrossReadsAreDecryptedOnceComplete() throws Exception
+	{
+		//1 and 3 split the record headers, the others split the record bodies and join the end of a record with the next one
+		for(int readSize : new int[]{1, 3, 7, 64, 200})
+		{
+			LoopbackPair pair = handshake();
+			byte[] first = bytes(0, 100);
+			byte[] second = bytes(100, 100);
+			byte[] third = bytes(200, 100);
+			byte[] records = records(pair.getClient(), first, second, third);
+			for(int offset = 0; offset < records.length; offset += readSize)
+			{
+				read(pair.getServer(), records, offset, Math.min(readSize, records.length - offset));
+			}
+			assertArrayEquals("read size " + readSize, concat(first, second, third), pair.getServerReader().take());
+		}
+	}
+	
+	@Test
+	public void decryptTakesOneRecordOrEveryCompleteRecord() throws Exception
+	{
+		LoopbackPair pair = handshake();
+		byte[] records = records(pair.getClient(), bytes(0, 100), bytes(100, 100), bytes(200, 100));
+		SSLSocketBase server = pair.getServer().getSSLSocketBase();
+		ByteBuffer input = pair.getServer().manager().getReadByteBuffer().getByteBuffer();
+		input.put(records);
+		SSLBuffer decrypted;
+		if(zeroCopy)
+		{
+			server.prepareDirectInput(input);
+			decrypted = server.decrypt(input);
+		} else
+		{
+			server.fillReadByteBuffer(input);
+			decrypted = server.decrypt();
+		}
+		//a batched decrypt decrypts all three records into one buffer
+		assertEquals(batched ? 300 : 100, decrypted.getByteBuffer().position());
+		decrypted.close();
+		input.clear();
+	}
+	
+	@Test
+	public void closeNotifyInTheMiddleOfARead() throws Exception
+	{
+		LoopbackPair pair = handshake();
+		LoopbackSocket client = pair.getClient();
+		byte[] first = bytes(0, 100);
+		byte[] second = bytes(100, 100);
+		byte[] before = records(client, first, second);
+		byte[] closeNotify = closeNotify(client);
+		//the engine can't encrypt once its outbound is closed, a record after the close_notify is never decrypted anyway
+		byte[] after = concat(new byte[]{23, 3, 3, 0, 100}, bytes(200, 100));
+		byte[] read = concat(before, closeNotify, after);
+		read(pair.getServer(), read, 0, read.length);
+		//the records before the close_notify are decrypted and the record after it is ignored
+		assertArrayEquals(concat(first, second), pair.getServerReader().take());
+		assertTrue(pair.getServer().getSSLEngine().isInboundDone());
+		assertTrue(pair.getServer().hasInitiatedClose());
+	}
+	
+	@Test
+	public void oversizedRecordHeaderSplitAcrossReadsIsRejected() throws Exception
+	{
+		//the header is checked when a partial record is carried over, which only zero copy unwrap does
+		Assume.assumeTrue(zeroCopy);
+		LoopbackPair pair = handshake();
+		List<Throwable> exceptions = new ArrayList<>();
+		pair.getServer().onException(exceptions::add);
+		//an application data record header claiming 65535 bytes, more than any packet buffer
+		byte[] header = {23, 3, 3, (byte) 0xFF, (byte) 0xFF, 0, 0, 0};
+		read(pair.getServer(), header, 0, 3);
+		assertTrue(exceptions.isEmpty());
+		read(pair.getServer(), header, 3, header.length - 3);
+		assertEquals(1, exceptions.size());
+		assertTrue(exceptions.get(0) instanceof SSLException);
+		//the rejected bytes were discarded instead of waiting for the rest of the record
+		assertEquals(0, pair.getServerReader().take().length);
+	}
+}
@@ -0,0 +1,220 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.rw;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import oughttoprevail.asyncsslnetwork.LoopbackPair;
+import oughttoprevail.asyncsslnetwork.LoopbackSocket;
+import oughttoprevail.asyncsslnetwork.LoopbackWriter;
+import oughttoprevail.asyncsslnetwork.SSLEngineFactory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SSLStreamTest
+{
+	private final LoopbackWriter clientWriter = new LoopbackWriter();
+	private LoopbackSocket client;
+	private LoopbackSocket server;
+	private SSLStreamReader serverReader;
+	
+	/**
+	 * Connects a client to a server which reads with a {@link SSLStreamReader} of the specified maxQueuedBuffers and runs their handshake.
+	 */
+	private void handshake(int maxQueuedBuffers) throws Exception
+	{
+		SSLEngineFactory engineFactory = LoopbackPair.createEngineFactory(LoopbackPair.getSSLContext(), "TLSv1.3", null);
+		serverReader = new SSLStreamReader(maxQueuedBuffers);
+		client = new LoopbackSocket(engineFactory, true, new SSLReader(), clientWriter);
+		server = new LoopbackSocket(engineFactory, false, serverReader, new LoopbackWriter());
+		LoopbackSocket.connect(client, server);
+		server.beginHandshake();
+		client.beginHandshake();
+		assertTrue(client.awaitHandshake(10, TimeUnit.SECONDS));
+		assertTrue(server.awaitHandshake(10, TimeUnit.SECONDS));
+	}
+	
+	/**
+	 * Returns the specified length of bytes which count up from the specified first byte.
+	 */
+	private static byte[] bytes(int first, int length)
+	{
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++)
+		{
+			bytes[i] = (byte) (first + i);
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Reads the specified length of bytes from the specified in.
+	 */
+	private static byte[] readFully(InputStream in, int length) throws IOException
+	{
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		while(offset < length)
+		{
+			int read = in.read(bytes, offset, length - offset);
+			if(read == -1)
+			{
+				throw new IOException("End of stream after " + offset + " bytes!");
+			}
+			offset += read;
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Starts a thread which writes the specified bytes to the specified out and keeps what it failed with in the specified failure.
+	 */
+	private static Thread startWrite(SSLOutputStream out, byte[] bytes, AtomicReference<Throwable> failure)
+	{
+		Thread thread = new Thread(() ->
+		{
+			try
+			{
+				out.write(bytes);
+			} catch(Throwable throwable)
+			{
+				failure.set(throwable);
+			}
+		});
+		thread.start();
+		return thread;
+	}
+	
+	@Test
+	public void writtenBytesAreReadBack() throws Exception
+	{
+		handshake(SSLStreamReader.DEFAULT_MAX_QUEUED_BUFFERS);
+		//larger than a record, so the write is split into records of its own
+		byte[] expected = bytes(0, 100 * 1024);
+		new SSLOutputStream(client).write(expected);
+		InputStream in = serverReader.getInputStream();
+		assertArrayEquals(expected, readFully(in, expected.length));
+		assertEquals(0, in.available());
+	}
+	
+	@Test
+	public void readsAreHeldWhileTheQueueIsFull() throws Exception
+	{
+		handshake(2);
+		SSLOutputStream out = new SSLOutputStream(client);
+		byte[] expected = bytes(0, 10000);
+		for(int i = 0; i < 10; i++)
+		{
+			out.write(expected, i * 1000, 1000);
+		}
+		//the writes after the queue was full were moved out of the socket's read byte buffer by the reading thread
+		assertEquals(0, server.manager().getReadByteBuffer().getByteBuffer().position());
+		//reading decrypts the held input without another read from the socket
+		assertArrayEquals(expected, readFully(serverReader.getInputStream(), expected.length));
+		//reads after the held input was decrypted are decrypted right away
+		out.write(expected);
+		assertArrayEquals(expected, readFully(serverReader.getInputStream(), expected.length));
+	}
+	
+	@Test
+	public void readReturnsEndOfStreamOnceClosingAndQueuedBytesWereRead() throws Exception
+	{
+		handshake(SSLStreamReader.DEFAULT_MAX_QUEUED_BUFFERS);
+		byte[] expected = bytes(0, 100);
+		new SSLOutputStream(client).write(expected);
+		server.forceClosure();
+		InputStream in = serverReader.getInputStream();
+		assertArrayEquals(expected, readFully(in, expected.length));
+		assertEquals(-1, in.read());
+	}
+	
+	@Test
+	public void blockedReadIsWokenOnceClosing() throws Exception
+	{
+		handshake(SSLStreamReader.DEFAULT_MAX_QUEUED_BUFFERS);
+		AtomicInteger read = new AtomicInteger(Integer.MIN_VALUE);
+		Thread thread = new Thread(() ->
+		{
+			try
+			{
+				read.set(serverReader.getInputStream().read());
+			} catch(IOException e)
+			{
+				read.set(Integer.MAX_VALUE);
+			}
+		});
+		thread.start();
+		thread.join(100);
+		assertTrue(thread.isAlive());
+		server.forceClosure();
+		thread.join(10000);
+		assertFalse(thread.isAlive());
+		assertEquals(-1, read.get());
+	}
+	
+	@Test
+	public void writeBlocksWhileNotWritable() throws Exception
+	{
+		handshake(SSLStreamReader.DEFAULT_MAX_QUEUED_BUFFERS);
+		client.getWriter().setWriteWatermarks(1500, 500);
+		clientWriter.setHolding(true);
+		SSLOutputStream out = new SSLOutputStream(client);
+		byte[] expected = bytes(0, 3000);
+		out.write(expected, 0, 1000);
+		out.write(expected, 1000, 1000);
+		assertFalse(client.getWriter().isWritable());
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread thread = startWrite(out, bytes(2000, 1000), failure);
+		thread.join(100);
+		assertTrue(thread.isAlive());
+		assertEquals(2, clientWriter.getHeldWriteCount());
+		clientWriter.setHolding(false);
+		clientWriter.release();
+		thread.join(10000);
+		assertFalse(thread.isAlive());
+		assertNull(failure.get());
+		assertArrayEquals(expected, readFully(serverReader.getInputStream(), expected.length));
+	}
+	
+	@Test
+	public void blockedWriteFailsOnceClosing() throws Exception
+	{
+		handshake(SSLStreamReader.DEFAULT_MAX_QUEUED_BUFFERS);
+		client.getWriter().setWriteWatermarks(1500, 500);
+		clientWriter.setHolding(true);
+		SSLOutputStream out = new SSLOutputStream(client);
+		out.write(bytes(0, 2000));
+		assertFalse(client.getWriter().isWritable());
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread thread = startWrite(out, bytes(0, 1000), failure);
+		thread.join(100);
+		assertTrue(thread.isAlive());
+		client.forceClosure();
+		thread.join(10000);
+		assertFalse(thread.isAlive());
+		assertTrue(failure.get() instanceof IOException);
+	}
+}
@@ -0,0 +1,371 @@
+/*
+Copyright 2019 https://github.com/OughtToPrevail
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package oughttoprevail.asyncsslnetwork.rw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import oughttoprevail.asyncnetwork.util.Consumer;
+import oughttoprevail.asyncsslnetwork.CollectingReader;
+import oughttoprevail.asyncsslnetwork.LoopbackPair;
+import oughttoprevail.asyncsslnetwork.LoopbackSocket;
+import oughttoprevail.asyncsslnetwork.LoopbackWriter;
+import oughttoprevail.asyncsslnetwork.SSLEngineFactory;
+import oughttoprevail.asyncsslnetwork.buffer.SSLBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SSLWriterTest
+{
+	private LoopbackPair pair;
+	private LoopbackSocket client;
+	private SSLWriter writer;
+	
+	@Before
+	public void handshake() throws Exception
+	{
+		pair = new LoopbackPair("TLSv1.3");
+		pair.getServer().getSSLSocketBase().setZeroCopyUnwrap(true);
+		pair.handshake();
+		client = pair.getClient();
+		writer = client.getWriter();
+	}
+	
+	/**
+	 * Returns the specified length of bytes which count up from the specified first byte.
+	 */
+	private static byte[] bytes(int first, int length)
+	{
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++)
+		{
+			bytes[i] = (byte) (first + i);
+		}
+		return bytes;
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void writesBeforeTheHandshakeAreRejected() throws Exception
+	{
+		LoopbackSocket idle = new LoopbackPair("TLSv1.3").getClient();
+		idle.getWriter().write(idle, ByteBuffer.allocate(1), null);
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void writesOnceClosedAreRejected()
+	{
+		client.forceClosure();
+		writer.write(client, ByteBuffer.wrap(bytes(0, 100)), null);
+	}
+	
+	@Test
+	public void writesWithoutCoalescingAreWrittenOneByOne()
+	{
+		AtomicInteger finished = new AtomicInteger();
+		for(int i = 0; i < 3; i++)
+		{
+			writer.write(client, ByteBuffer.wrap(bytes(i * 100, 100)), byteBuffer -> finished.incrementAndGet());
+		}
+		assertEquals(3, pair.getClientWriter().getWriteSizes().size());
+		assertEquals(3, finished.get());
+		assertEquals(300, pair.getServerReader().take().length);
+	}
+	
+	@Test
+	public void coalescedWritesAreWrittenTogetherOnFlush()
+	{
+		writer.setCoalescing(true);
+		writer.beginBatch();
+		AtomicInteger finished = new AtomicInteger();
+		byte[] expected = bytes(0, 1000);
+		for(int i = 0; i < 10; i++)
+		{
+			writer.write(client, ByteBuffer.wrap(expected, i * 100, 100), byteBuffer -> finished.incrementAndGet());
+		}
+		assertEquals(0, pair.getClientWriter().getWriteSizes().size());
+		assertEquals(0, finished.get());
+		writer.flush(client);
+		assertEquals(1, pair.getClientWriter().getWriteSizes().size());
+		//every coalesced write shares a single record
+		assertEquals(1, pair.getClientWriter().getRecordLengths().size());
+		assertEquals(10, finished.get());
+		assertArrayEquals(expected, pair.getServerReader().take());
+	}
+	
+	@Test
+	public void coalescedWritesAreWrittenOnceTheThresholdIsReached()
+	{
+		writer.setCoalescing(true);
+		writer.beginBatch();
+		writer.setCoalescingThreshold(1000);
+		byte[] expected = bytes(0, 1200);
+		for(int i = 0; i < 3; i++)
+		{
+			writer.write(client, ByteBuffer.wrap(expected, i * 300, 300), null);
+		}
+		assertEquals(0, pair.getClientWriter().getWriteSizes().size());
+		writer.write(client, ByteBuffer.wrap(expected, 900, 300), null);
+		assertEquals(1, pair.getClientWriter().getWriteSizes().size());
+		assertArrayEquals(expected, pair.getServerReader().take());
+	}
+	
+	@Test
+	public void coalescedWritesAreWrittenOnceTheBatchEnds()
+	{
+		writer.setCoalescing(true);
+		byte[] expected = bytes(0, 300);
+		writer.beginBatch();
+		writer.beginBatch();
+		writer.write(client, ByteBuffer.wrap(expected, 0, 100), null);
+		writer.write(client, ByteBuffer.wrap(expected, 100, 100), null);
+		writer.endBatch(client);
+		//a nested batch doesn't flush
+		assertEquals(0, pair.getClientWriter().getWriteSizes().size());
+		writer.endBatch(client);
+		assertEquals(1, pair.getClientWriter().getWriteSizes().size());
+		//outside of a batch writes are written right away
+		writer.write(client, ByteBuffer.wrap(expected, 200, 100), null);
+		assertEquals(2, pair.getClientWriter().getWriteSizes().size());
+		assertArrayEquals(expected, pair.getServerReader().take());
+	}
+	
+	@Test
+	public void writesMadeWhileHandlingAReadAreWrittenOnceTheReadIsHandled() throws Exception
+	{
+		SSLEngineFactory engineFactory = LoopbackPair.createEngineFactory(LoopbackPair.getSSLContext(), "TLSv1.3", null);
+		LoopbackWriter serverWriter = new LoopbackWriter();
+		CollectingReader clientReader = new CollectingReader();
+		AtomicReference<LoopbackSocket> server = new AtomicReference<>();
+		//answers every decrypted byte with a write of its own
+		SSLReader answeringReader = new SSLReader()
+		{
+			@Override
+			protected void callRequests(SSLBuffer decryptedByteBuffer)
+			{
+				ByteBuffer byteBuffer = decryptedByteBuffer.getByteBuffer();
+				byteBuffer.flip();
+				while(byteBuffer.hasRemaining())
+				{
+					server.get().getWriter().write(server.get(), ByteBuffer.wrap(new byte[]{byteBuffer.get()}), null);
+				}
+				decryptedByteBuffer.close();
+			}
+		};
+		LoopbackSocket answeringClient = new LoopbackSocket(engineFactory, true, clientReader, new LoopbackWriter());
+		server.set(new LoopbackSocket(engineFactory, false, answeringReader, serverWriter));
+		LoopbackSocket.connect(answeringClient, server.get());
+		server.get().beginHandshake();
+		answeringClient.beginHandshake();
+		assertTrue(answeringClient.awaitHandshake(10, TimeUnit.SECONDS));
+		assertTrue(server.get().awaitHandshake(10, TimeUnit.SECONDS));
+		clientReader.take();
+		serverWriter.reset();
+		server.get().getWriter().setCoalescing(true);
+		byte[] expected = bytes(0, 10);
+		answeringClient.getWriter().write(answeringClient, ByteBuffer.wrap(expected), null);
+		assertTrue(clientReader.await(expected.length, 5000));
+		//the answers were coalesced into a single write once the read was handled
+		assertEquals(1, serverWriter.getWriteSizes().size());
+		assertArrayEquals(expected, clientReader.take());
+	}
+	
+	@Test
+	public void watermarksAreDisabledByDefault()
+	{
+		assertEquals(0, writer.getHighWatermark());
+		assertEquals(0, writer.getLowWatermark());
+		pair.getClientWriter().setHolding(true);
+		for(int i = 0; i < 10; i++)
+		{
+			writer.write(client, ByteBuffer.wrap(bytes(0, 100 * 1024)), null);
+		}
+		assertTrue(writer.isWritable());
+		assertEquals(10, pair.getClientWriter().getHeldWriteCount());
+	}
+	
+	@Test
+	public void writesAreQueuedWhileNotWritable()
+	{
+		writer.setWriteWatermarks(1500, 500);
+		List<Boolean> changes = Collections.synchronizedList(new ArrayList<>());
+		writer.onWritabilityChanged(changes::add);
+		LoopbackWriter loopbackWriter = pair.getClientWriter();
+		loopbackWriter.setHolding(true);
+		byte[] expected = bytes(0, 3000);
+		for(int i = 0; i < 3; i++)
+		{
+			writer.write(client, ByteBuffer.wrap(expected, i * 1000, 1000), null);
+		}
+		assertFalse(writer.isWritable());
+		//the third write is queued unencrypted
+		assertEquals(2, loopbackWriter.getHeldWriteCount());
+		loopbackWriter.setHolding(false);
+		loopbackWriter.release();
+		assertTrue(writer.isWritable());
+		assertEquals(0, writer.getPendingBytes());
+		assertEquals(3, loopbackWriter.getWriteSizes().size());
+		assertEquals(2, changes.size());
+		assertFalse(changes.get(0));
+		assertTrue(changes.get(1));
+		assertArrayEquals(expected, pair.getServerReader().take());
+	}
+	
+	@Test
+	public void finishedWritesAreGivenTheirWriteBuffer()
+	{
+		List<ByteBuffer> finished = new ArrayList<>();
+		ByteBuffer direct = ByteBuffer.wrap(bytes(0, 100));
+		writer.write(client, direct, finished::add);
+		writer.setCoalescing(true);
+		writer.beginBatch();
+		ByteBuffer coalesced = ByteBuffer.wrap(bytes(100, 100));
+		writer.write(client, coalesced, finished::add);
+		writer.flush(client);
+		assertEquals(2, finished.size());
+		assertSame(direct, finished.get(0));
+		assertSame(coalesced, finished.get(1));
+	}
+	
+	@Test
+	public void writesFromAFinishedWriteAreWrittenInOrder()
+	{
+		byte[] expected = bytes(0, 300);
+		AtomicInteger next = new AtomicInteger(1);
+		Consumer<ByteBuffer> writeNext = new Consumer<ByteBuffer>()
+		{
+			@Override
+			public void accept(ByteBuffer byteBuffer)
+			{
+				int index = next.getAndIncrement();
+				if(index < 3)
+				{
+					writer.write(client, ByteBuffer.wrap(expected, index * 100, 100), this);
+				}
+			}
+		};
+		writer.write(client, ByteBuffer.wrap(expected, 0, 100), writeNext);
+		assertEquals(3, pair.getClientWriter().getWriteSizes().size());
+		assertArrayEquals(expected, pair.getServerReader().take());
+	}
+	
+	/**
+	 * Returns the plaintext lengths of the application data records written by the client, which hold the specified plaintext bytes in total.
+	 */
+	private List<Integer> plaintextRecordLengths(int plaintextBytes)
+	{
+		List<Integer> lengths = pair.getClientWriter().getRecordLengths();
+		int encryptedBytes = 0;
+		for(int length : lengths)
+		{
+			encryptedBytes += length;
+		}
+		//every record has the same overhead (the content type and the tag)
+		int overhead = (encryptedBytes - plaintextBytes) / lengths.size();
+		List<Integer> plaintextLengths = new ArrayList<>();
+		for(int length : lengths)
+		{
+			plaintextLengths.add(length - overhead);
+		}
+		return plaintextLengths;
+	}
+	
+	@Test
+	public void recordsGrowOnceAWriteCrossesTheThreshold()
+	{
+		writer.setDynamicRecordSizing(true);
+		writer.setSmallRecordSize(1000);
+		writer.setRecordSizeThreshold(2500);
+		byte[] expected = bytes(0, 10000);
+		writer.write(client, ByteBuffer.wrap(expected), null);
+		assertEquals(Arrays.asList(1000, 1000, 500, 7500), plaintextRecordLengths(expected.length));
+		assertEquals(SSLWriter.MAX_RECORD_SIZE, writer.getRecordSize());
+		assertArrayEquals(expected, pair.getServerReader().take());
+	}
+	
+	@Test
+	public void coalescedWritesShareSmallRecords()
+	{
+		writer.setDynamicRecordSizing(true);
+		writer.setSmallRecordSize(1000);
+		writer.setCoalescing(true);
+		writer.beginBatch();
+		byte[] expected = bytes(0, 3000);
+		for(int i = 0; i < 10; i++)
+		{
+			writer.write(client, ByteBuffer.wrap(expected, i * 300, 300), null);
+		}
+		writer.flush(client);
+		assertEquals(Arrays.asList(1000, 1000, 1000), plaintextRecordLengths(expected.length));
+		assertArrayEquals(expected, pair.getServerReader().take());
+	}
+	
+	/**
+	 * Creates a temporary file with the specified content.
+	 */
+	private static FileChannel file(byte[] content) throws IOException
+	{
+		Path path = Files.createTempFile("transfer", ".bin");
+		path.toFile().deleteOnExit();
+		Files.write(path, content);
+		return FileChannel.open(path, StandardOpenOption.READ);
+	}
+	
+	@Test
+	public void transferSendsTheRegion() throws IOException
+	{
+		byte[] content = bytes(0, 100000);
+		AtomicInteger finished = new AtomicInteger();
+		try(FileChannel fileChannel = file(content))
+		{
+			writer.transferFrom(client, fileChannel, 1000, 50000, finished::incrementAndGet);
+		}
+		assertEquals(1, finished.get());
+		assertArrayEquals(Arrays.copyOfRange(content, 1000, 51000), pair.getServerReader().take());
+	}
+	
+	@Test
+	public void transferFailsOnceTheConnectionCloses() throws IOException
+	{
+		AtomicInteger finished = new AtomicInteger();
+		List<IOException> failures = new ArrayList<>();
+		pair.getClientWriter().setHolding(true);
+		try(FileChannel fileChannel = file(bytes(0, 100000)))
+		{
+			writer.transferFrom(client, fileChannel, 0, 100000, finished::incrementAndGet, failures::add);
+			client.forceClosure();
+		}
+		assertEquals(0, finished.get());
+		assertEquals(1, failures.size());
+	}
+}